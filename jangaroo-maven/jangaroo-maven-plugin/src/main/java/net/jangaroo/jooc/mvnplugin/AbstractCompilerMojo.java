@@ -1,12 +1,16 @@
 package net.jangaroo.jooc.mvnplugin;
 
 import net.jangaroo.jooc.AbstractCompileLog;
+import net.jangaroo.jooc.DependencyCache;
 import net.jangaroo.jooc.Jooc;
+import net.jangaroo.jooc.api.CompilationMetrics;
 import net.jangaroo.jooc.api.CompilationResult;
+import net.jangaroo.jooc.api.CompileLog;
 import net.jangaroo.jooc.config.DebugMode;
 import net.jangaroo.jooc.config.JoocConfiguration;
 import net.jangaroo.jooc.config.PublicApiViolationsMode;
 import net.jangaroo.jooc.config.SemicolonInsertionMode;
+import net.jangaroo.jooc.mvnplugin.util.ClassDependencyGraph;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
@@ -33,6 +37,8 @@ import java.util.Set;
  */
 @SuppressWarnings({"UnusedDeclaration", "UnusedPrivateField"})
 public abstract class AbstractCompilerMojo extends JangarooMojo {
+  private static final String SOURCE_MAPPING_URL_PREFIX = "//# sourceMappingURL=";
+
   private Log log = getLog();
 
   /**
@@ -90,6 +96,72 @@ public abstract class AbstractCompilerMojo extends JangarooMojo {
    */
   private boolean verbose;
 
+  /**
+   * The number of threads the compiler uses to parse, analyze and generate code for compilation units in parallel.
+   * Set to "0" to use one thread per available processor. Defaults to "1", i.e. sequential compilation.
+   *
+   * @parameter expression="${maven.compiler.threads}" default-value="1"
+   */
+  private int threads;
+
+  /**
+   * If set to "true", the compiler keeps track of the dependencies and the public API of all compiled classes,
+   * so that when recompiling changed classes, all classes depending on a class whose public API changed are
+   * recompiled, too. Without dependency information from a previous build, all classes are compiled.
+   *
+   * @parameter expression="${maven.compiler.incremental}" default-value="false"
+   */
+  private boolean incremental;
+
+  /**
+   * If set to a port number, compilation is delegated to the Jangaroo compiler daemon
+   * (<code>net.jangaroo.jooc.daemon.JoocDaemon</code>) listening on that local port, which keeps the classes
+   * parsed from class path jars between builds. If no daemon is listening, the compiler runs in-process.
+   * The daemon only accepts builds of the user who started it.
+   *
+   * @parameter expression="${maven.compiler.daemonPort}" default-value="0"
+   */
+  private int daemonPort;
+
+  /**
+   * If set to "true", the compiler writes a JSON report of the time spent in each compiler phase and on each
+   * source file, the number of parsed and cached class path classes, and the peak heap usage to
+   * <code>jooc-metrics.json</code> (and <code>temp-jooc-metrics.json</code> for the concatenated output)
+   * next to the temporary output directory.
+   *
+   * @parameter expression="${maven.compiler.metricsReport}" default-value="false"
+   */
+  private boolean metricsReport;
+
+  /**
+   * If set to "true", output files whose content did not change are not rewritten, so that their timestamps are
+   * preserved and downstream steps (e.g. web application reloading) are not triggered needlessly.
+   * Note that the timestamp-based stale source detection then considers such sources stale until their output
+   * changes, so this is best combined with <code>incremental</code>.
+   *
+   * @parameter expression="${maven.compiler.skipUnchangedOutput}" default-value="false"
+   */
+  private boolean skipUnchangedOutput;
+
+  /**
+   * If set to "true", the compiler writes a source map next to each generated JavaScript file, which maps the
+   * generated code back to the ActionScript source code, so that code generated without debug information can
+   * still be debugged. The concatenated module classes file gets an index source map combining the source maps
+   * of all its classes.
+   *
+   * @parameter expression="${maven.compiler.sourceMaps}" default-value="false"
+   */
+  private boolean sourceMaps;
+
+  /**
+   * If set to "true", the concatenated module classes file is minified: unneeded whitespace is stripped, and local
+   * variables and parameters are renamed to short names. The JavaScript files of single classes, which are used
+   * for debugging, are not affected.
+   *
+   * @parameter expression="${maven.compiler.minify}" default-value="false"
+   */
+  private boolean minify;
+
   /**
    * Sets the granularity in milliseconds of the last modification
    * date for testing whether a source needs recompilation.
@@ -154,6 +226,10 @@ public abstract class AbstractCompilerMojo extends JangarooMojo {
 
   protected abstract File getApiOutputDirectory();
 
+  protected boolean isIncremental() {
+    return incremental;
+  }
+
   /**
    * Runs the compile mojo
    *
@@ -170,16 +246,74 @@ public abstract class AbstractCompilerMojo extends JangarooMojo {
     }
 
 
-    // ----------------------------------------------------------------------
-    // Create the compiler configuration
-    // ----------------------------------------------------------------------
+    HashSet<File> sources = new HashSet<File>();
+    getLog().debug("starting source inclusion scanner");
+    sources.addAll(computeStaleSources(staleMillis));
+    if (sources.isEmpty()) {
+      getLog().info("Nothing to compile - all classes are up to date");
+      return;
+    }
+    JoocConfiguration configuration = createConfiguration();
+    configuration.setSourceFiles(new ArrayList<File>(sources));
+
+    int result = compile(configuration);
+    boolean compilationError = (result != CompilationResult.RESULT_CODE_OK);
+
+    if (!compilationError) {
+      // for now, always set debug mode to "false" for concatenated file:
+      configuration.setDebugMode(null);
+      configuration.setMinify(minify);
+      configuration.setOutputDirectory(getTempClassesOutputDirectory());
+      configuration.setApiOutputDirectory(null);
+      result = compile(configuration);
+      if (result == CompilationResult.RESULT_CODE_OK) {
+        buildOutputFile(getTempClassesOutputDirectory(), getModuleClassesJsFile());
+      }
+
+      compilationError = (result != CompilationResult.RESULT_CODE_OK);
+    }
+
+    List<CompilerError> messages = Collections.emptyList();
+
+    if (compilationError && failOnError) {
+      getLog().info("-------------------------------------------------------------");
+      getLog().error("COMPILATION ERROR : ");
+      getLog().info("-------------------------------------------------------------");
+      if (messages != null) {
+        for (CompilerError message : messages) {
+          getLog().error(message.toString());
+        }
+        getLog().info(messages.size() + ((messages.size() > 1) ? " errors " : "error"));
+        getLog().info("-------------------------------------------------------------");
+      }
+      throw new MojoFailureException("Compilation failed");
+    } else {
+      for (CompilerError message : messages) {
+        getLog().warn(message.toString());
+      }
+    }
+  }
+
+  protected abstract List<File> getActionScriptClassPath();
 
+  /**
+   * Create the compiler configuration for compiling the sources of this module into the classes output directory.
+   * The source files to compile are not yet set.
+   *
+   * @return the compiler configuration
+   * @throws MojoFailureException if the source path cannot be determined
+   */
+  protected JoocConfiguration createConfiguration() throws MojoFailureException {
     JoocConfiguration configuration = new JoocConfiguration();
 
     configuration.setEnableAssertions(enableAssertions);
     configuration.setAllowDuplicateLocalVariables(allowDuplicateLocalVariables);
     configuration.setVerbose(verbose);
     configuration.setExcludeClassByDefault(excludeClassByDefault);
+    configuration.setThreads(threads);
+    configuration.setDaemonPort(daemonPort);
+    configuration.setSkipUnchangedOutput(skipUnchangedOutput);
+    configuration.setGenerateSourceMaps(sourceMaps);
 
     if (StringUtils.isNotEmpty(debuglevel)) {
       try {
@@ -208,14 +342,6 @@ public abstract class AbstractCompilerMojo extends JangarooMojo {
       }
     }
 
-    HashSet<File> sources = new HashSet<File>();
-    getLog().debug("starting source inclusion scanner");
-    sources.addAll(computeStaleSources(staleMillis));
-    if (sources.isEmpty()) {
-      getLog().info("Nothing to compile - all classes are up to date");
-      return;
-    }
-    configuration.setSourceFiles(new ArrayList<File>(sources));
     try {
       configuration.setSourcePath(getCompileSourceRoots());
     } catch (IOException e) {
@@ -233,46 +359,9 @@ public abstract class AbstractCompilerMojo extends JangarooMojo {
         log.debug("API output directory: " + configuration.getApiOutputDirectory());
       }
     }
-
-    int result = compile(configuration);
-    boolean compilationError = (result != CompilationResult.RESULT_CODE_OK);
-
-    if (!compilationError) {
-      // for now, always set debug mode to "false" for concatenated file:
-      configuration.setDebugMode(null);
-      configuration.setOutputDirectory(getTempClassesOutputDirectory());
-      configuration.setApiOutputDirectory(null);
-      result = compile(configuration);
-      if (result == CompilationResult.RESULT_CODE_OK) {
-        buildOutputFile(getTempClassesOutputDirectory(), getModuleClassesJsFile());
-      }
-
-      compilationError = (result != CompilationResult.RESULT_CODE_OK);
-    }
-
-    List<CompilerError> messages = Collections.emptyList();
-
-    if (compilationError && failOnError) {
-      getLog().info("-------------------------------------------------------------");
-      getLog().error("COMPILATION ERROR : ");
-      getLog().info("-------------------------------------------------------------");
-      if (messages != null) {
-        for (CompilerError message : messages) {
-          getLog().error(message.toString());
-        }
-        getLog().info(messages.size() + ((messages.size() > 1) ? " errors " : "error"));
-        getLog().info("-------------------------------------------------------------");
-      }
-      throw new MojoFailureException("Compilation failed");
-    } else {
-      for (CompilerError message : messages) {
-        getLog().warn(message.toString());
-      }
-    }
+    return configuration;
   }
 
-  protected abstract List<File> getActionScriptClassPath();
-
   private void buildOutputFile(File tempOutputDir, File outputFile) throws MojoExecutionException {
     if (getLog().isDebugEnabled()) {
       log.debug("Output file: " + outputFile);
@@ -295,23 +384,95 @@ public abstract class AbstractCompilerMojo extends JangarooMojo {
               List<File> files = FileUtils.getFiles(tempOutputDir, "**/*.js", "**/*_properties_*.js");
       // We should now have all the files we want to concat so let's do it.
       Writer fos = new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8");
-      int tempOutputDirPathLength = tempOutputDir.getAbsolutePath().length() + 1;
-      for (File file : files) {
-        String className = file.getAbsolutePath();
-        className = className.substring(tempOutputDirPathLength, className.length() - ".js".length());
-        className = className.replace(File.separatorChar, '.');
-        fos.write("// class " + className + "\n");
-        IOUtil.copy(new FileInputStream(file), fos, "UTF-8");
-        fos.write('\n');
+      Writer sourceMapWriter = null;
+      try {
+        if (sourceMaps) {
+          sourceMapWriter = new OutputStreamWriter(new FileOutputStream(outputFile.getPath() + ".map"), "UTF-8");
+          sourceMapWriter.write("{\"version\":3,\"file\":\"" + outputFile.getName() + "\",\"sections\":[");
+        }
+        int tempOutputDirPathLength = tempOutputDir.getAbsolutePath().length() + 1;
+        int lineCount = 0;
+        boolean firstSection = true;
+        for (File file : files) {
+          String className = file.getAbsolutePath();
+          className = className.substring(tempOutputDirPathLength, className.length() - ".js".length());
+          className = className.replace(File.separatorChar, '.');
+          fos.write(ClassDependencyGraph.CLASS_HEADER_PREFIX + className + "\n");
+          lineCount++;
+          if (sourceMapWriter == null) {
+            IOUtil.copy(new FileInputStream(file), fos, "UTF-8");
+          } else {
+            String code = FileUtils.fileRead(file, "UTF-8");
+            File classSourceMapFile = new File(file.getPath() + ".map");
+            int sourceMappingUrlPos = code.lastIndexOf(SOURCE_MAPPING_URL_PREFIX);
+            if (sourceMappingUrlPos != -1 && classSourceMapFile.exists()) {
+              // the source map of the class is embedded into the source map of the concatenated file instead:
+              code = code.substring(0, sourceMappingUrlPos);
+              sourceMapWriter.write((firstSection ? "" : ",") + "{\"offset\":{\"line\":" + lineCount + ",\"column\":0},\"map\":"
+                      + FileUtils.fileRead(classSourceMapFile, "UTF-8").trim() + "}");
+              firstSection = false;
+            }
+            fos.write(code);
+            lineCount += countLines(code);
+          }
+          fos.write('\n');
+          lineCount++;
+        }
+        if (sourceMapWriter != null) {
+          sourceMapWriter.write("]}\n");
+          fos.write(SOURCE_MAPPING_URL_PREFIX + outputFile.getName() + ".map\n");
+        }
+      } finally {
+        fos.close();
+        if (sourceMapWriter != null) {
+          sourceMapWriter.close();
+        }
       }
-      fos.close();
     } catch (IOException e) {
       throw new MojoExecutionException("could not build output file " + outputFile + ": " + e.toString(), e);
     }
   }
 
+  private static int countLines(String code) {
+    int lineCount = 0;
+    for (int i = code.indexOf('\n'); i != -1; i = code.indexOf('\n', i + 1)) {
+      lineCount++;
+    }
+    return lineCount;
+  }
+
   private int compile(JoocConfiguration config) throws MojoExecutionException {
     File outputDirectory = config.getOutputDirectory();
+    createOutputDirectories(config);
+
+    if (isIncremental()) {
+      config.setDependencyCacheFile(getDependencyCacheFile(outputDirectory));
+    }
+    if (metricsReport) {
+      config.setMetricsReportFile(getMetricsReportFile(outputDirectory));
+    }
+
+    final List<File> sources = config.getSourceFiles();
+
+    log.info("Compiling " + sources.size() +
+            " joo source file"
+            + (sources.size() == 1 ? "" : "s")
+            + " to " + outputDirectory);
+
+    Jooc jooc = new Jooc(config, createCompileLog());
+    CompilationResult result = jooc.run();
+    if (result.getMetrics() != null && getLog().isDebugEnabled()) {
+      CompilationMetrics metrics = result.getMetrics();
+      log.debug("Compiled " + metrics.getCompiledUnitCount() + " classes (" + metrics.getRecompiledDependentUnitCount()
+              + " of them because of changed dependencies) in " + metrics.getTotalTime() / 1000000 + " ms, phase times (ns): "
+              + metrics.getPhaseTimes() + ", class path classes parsed: " + metrics.getParsedClassPathUnitCount()
+              + ", reused: " + metrics.getCachedClassPathUnitCount());
+    }
+    return result.getResultCode();
+  }
+
+  protected void createOutputDirectories(JoocConfiguration config) throws MojoExecutionException {
+    File outputDirectory = config.getOutputDirectory();
 
     // create output directory if it does not exist
     if (!outputDirectory.exists()) {
@@ -327,15 +488,10 @@ public abstract class AbstractCompilerMojo extends JangarooMojo {
         throw new MojoExecutionException("Failed to create api output directory " + apiOutputDirectory.getAbsolutePath());
       }
     }
+  }
 
-    final List<File> sources = config.getSourceFiles();
-
-    log.info("Compiling " + sources.size() +
-            " joo source file"
-            + (sources.size() == 1 ? "" : "s")
-            + " to " + outputDirectory);
-
-    Jooc jooc = new Jooc(config, new AbstractCompileLog() {
+  protected CompileLog createCompileLog() {
+    return new AbstractCompileLog() {
       @Override
       protected void doLogError(String msg) {
         log.error(msg);
@@ -345,16 +501,61 @@ public abstract class AbstractCompilerMojo extends JangarooMojo {
       public void warning(String msg) {
         log.warn(msg);
       }
-    });
-    return jooc.run().getResultCode();
+    };
   }
 
-  private List<File> computeStaleSources(int staleMillis) throws MojoExecutionException {
+  /**
+   * The dependency cache of each output directory is kept next to the temporary output directory, so that it
+   * is not packaged.
+   */
+  protected File getDependencyCacheFile(File outputDirectory) {
+    String prefix = outputDirectory.equals(getTempClassesOutputDirectory()) ? "temp-" : "";
+    return new File(getTempClassesOutputDirectory().getParentFile(), prefix + "jooc-dependencies.txt");
+  }
+
+  private File getMetricsReportFile(File outputDirectory) {
+    String prefix = outputDirectory.equals(getTempClassesOutputDirectory()) ? "temp-" : "";
+    return new File(getTempClassesOutputDirectory().getParentFile(), prefix + "jooc-metrics.json");
+  }
+
+  protected List<File> computeStaleSources(int staleMillis) throws MojoExecutionException {
     File outputDirectory = getClassesOutputDirectory();
+    File dependencyCacheFile = getDependencyCacheFile(outputDirectory);
+    if (isIncremental() && !dependencyCacheFile.exists()) {
+      // Without dependency information, dependents of stale classes cannot be determined, so consider all
+      // sources stale by checking them against the (non-existent) cache file instead of the output directory:
+      outputDirectory = dependencyCacheFile;
+    }
     List<File> compileSourceRoots = getCompileSourceRoots();
 
 
-    return getMavenPluginHelper().computeStaleSources(compileSourceRoots, getIncludes(), getExcludes(), outputDirectory, Jooc.INPUT_FILE_SUFFIX, Jooc.OUTPUT_FILE_SUFFIX, staleMillis);
+    List<File> staleSources = getMavenPluginHelper().computeStaleSources(compileSourceRoots, getIncludes(), getExcludes(), outputDirectory, Jooc.INPUT_FILE_SUFFIX, Jooc.OUTPUT_FILE_SUFFIX, staleMillis);
+    if (isIncremental() && dependencyCacheFile.exists()) {
+      staleSources = addInvalidSources(staleSources, dependencyCacheFile);
+    }
+    return staleSources;
+  }
+
+  /**
+   * Add the sources that a failed incremental compilation did not get to recompile, although their output is
+   * up to date.
+   */
+  private List<File> addInvalidSources(List<File> staleSources, File dependencyCacheFile) throws MojoExecutionException {
+    try {
+      Set<File> canonicalSources = new HashSet<File>();
+      for (File staleSource : staleSources) {
+        canonicalSources.add(staleSource.getCanonicalFile());
+      }
+      List<File> sources = new ArrayList<File>(staleSources);
+      for (File invalidSource : DependencyCache.load(dependencyCacheFile).getInvalidSources().values()) {
+        if (invalidSource.exists() && canonicalSources.add(invalidSource)) {
+          sources.add(invalidSource);
+        }
+      }
+      return sources;
+    } catch (IOException e) {
+      throw new MojoExecutionException("could not read dependency cache " + dependencyCacheFile + ": " + e.toString(), e);
+    }
   }
 
   protected abstract Set<String> getIncludes();
@@ -1,11 +1,16 @@
 package net.jangaroo.jooc.mvnplugin;
 
+import net.jangaroo.jooc.mvnplugin.util.ArtifactDependencyCache;
+import net.jangaroo.jooc.mvnplugin.util.ClassDependencyGraph;
+import net.jangaroo.jooc.mvnplugin.util.ScriptBundle;
+import net.jangaroo.jooc.mvnplugin.util.ScriptManifest;
 import net.jangaroo.utils.BOMStripperInputStream;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
@@ -19,16 +24,24 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -40,6 +53,8 @@ import java.util.regex.Pattern;
  * <li>optionally add Jangaroo compiler output from the current module</li>
  * <li>concatenate <artifactId>.js from all dependent jangaroo artifacts into jangaroo-application.js in the correct order</li>
  * </ul>
+ * If entry classes are configured, jangaroo-application-all.js only contains the classes reachable from these
+ * classes.
  *
  * @requiresDependencyResolution runtime
  */
@@ -75,6 +90,48 @@ public abstract class PackageApplicationMojo extends AbstractMojo {
   @SuppressWarnings("UnusedDeclaration")
   private List remoteRepositories;
 
+  /**
+   * The file to keep the dependencies of all dependent artifacts in, so that the POM of a dependent artifact only
+   * has to be built from the repository again when it changes. The file may be shared by all builds using the same
+   * local repository. Only the artifact's own POM is checked for changes, not its parent POMs.
+   *
+   * @parameter expression="${jangaroo.artifactDependencyCacheFile}" default-value="${settings.localRepository}/.cache/jangaroo/artifact-dependencies.txt"
+   */
+  @SuppressWarnings("UnusedDeclaration")
+  private File artifactDependencyCacheFile;
+
+  private ArtifactDependencyCache artifactDependencyCache;
+
+  /**
+   * The fully qualified names of the classes the application starts with. If set, jangaroo-application-all.js only
+   * contains the code of these classes and of all classes they depend on at run time, directly or indirectly,
+   * across all modules. Classes that are only loaded dynamically, by name, have to be added to the entry classes.
+   * The classes of the Jangaroo runtime and code of modules compiled without class headers are always included.
+   *
+   * @parameter
+   */
+  @SuppressWarnings("UnusedDeclaration")
+  private String[] entryClasses;
+
+  private Set<String> reachableClasses;
+
+  /**
+   * If true, a copy of each script loaded through <code>joo.loadModule()</code> or <code>joo.loadScript()</code>,
+   * as well as of jangaroo-application.js and jangaroo-application-all.js, is created whose name contains a hash
+   * of its content, so that all these scripts can be served with far-future cache headers.
+   * jangaroo-application.js then starts with a manifest mapping script names to hash-named scripts, which the
+   * Jangaroo runtime consults before loading a script. The same manifest, plus the entry for jangaroo-application.js
+   * itself, whose hash cannot be part of its own content, is written to <code>joo/jangaroo-manifest.json</code>,
+   * so that the hash-named jangaroo-application[-all].js can be referenced from generated HTML pages.
+   * Hash-named copies of previous builds are not removed.
+   *
+   * @parameter expression="${jangaroo.hashScriptNames}" default-value="false"
+   */
+  @SuppressWarnings("UnusedDeclaration")
+  private boolean hashScriptNames;
+
+  private ScriptManifest scriptManifest;
+
   public abstract File getPackageSourceDirectory();
 
   /**
@@ -102,14 +159,16 @@ public abstract class PackageApplicationMojo extends AbstractMojo {
    *
    * @return linearized dependency list of artifacts
    */
-  private List<Artifact> getLinearizedDependencies() throws ProjectBuildingException {
+  private List<Artifact> getLinearizedDependencies() throws IOException, ProjectBuildingException {
     final Map<String, Artifact> internalId2Artifact = artifactByInternalId();
 
+    artifactDependencyCache = loadArtifactDependencyCache();
     List<String> depthFirstArtifactIds = new ArrayList<String>();
     Set<String> openArtifacts = new HashSet<String>(internalId2Artifact.keySet());
     while (!openArtifacts.isEmpty()) {
       depthFirst(internalId2Artifact, depthFirstArtifactIds, openArtifacts, openArtifacts.iterator().next());
     }
+    saveArtifactDependencyCache();
 
     getLog().debug("linearized dependencies: " + depthFirstArtifactIds);
 
@@ -122,7 +181,7 @@ public abstract class PackageApplicationMojo extends AbstractMojo {
   }
 
   private void depthFirst(Map<String, Artifact> internalId2Artifact, List<String> depthFirstArtifactIds,
-                          Set<String> openArtifacts, String artifactId) throws ProjectBuildingException {
+                          Set<String> openArtifacts, String artifactId) throws IOException, ProjectBuildingException {
     if (openArtifacts.remove(artifactId)) {
       // first, my dependencies:
       List<String> dependencies = getDependencies(internalId2Artifact.get(artifactId));
@@ -143,59 +202,205 @@ public abstract class PackageApplicationMojo extends AbstractMojo {
   }
 
   private void concatModuleScripts(File scriptDirectory) throws IOException, ProjectBuildingException {
-    Writer jangarooApplicationWriter = createJangarooModulesFile(scriptDirectory, "jangaroo-application.js");
-    Writer jangarooApplicationAllWriter = createJangarooModulesFile(scriptDirectory, "jangaroo-application-all.js");
-    try {
-      jangarooApplicationWriter.write("// This file loads all collected JavaScript code from dependent Jangaroo modules.\n\n");
-      jangarooApplicationAllWriter.write("// This file contains all collected JavaScript code from dependent Jangaroo modules.\n\n");
+    reachableClasses = computeReachableClasses(scriptDirectory);
+    scriptManifest = hashScriptNames ? new ScriptManifest(scriptDirectory.getAbsoluteFile().getParentFile()) : null;
+    List<Callable<ModuleScript>> moduleScripts = new ArrayList<Callable<ModuleScript>>();
+    for (Artifact artifact : getLinearizedDependencies()) {
+      moduleScripts.add(createJangarooModuleScript(scriptDirectory, artifact));
+    }
+    addThisJangarooModuleScript(scriptDirectory, moduleScripts);
+    writeModuleScripts(scriptDirectory, moduleScripts);
+  }
 
-      for (Artifact artifact : getLinearizedDependencies()) {
-        includeJangarooModuleScript(scriptDirectory, artifact, jangarooApplicationWriter, jangarooApplicationAllWriter);
+  /**
+   * Prepare the scripts of all modules concurrently, and write them to jangaroo-application.js and
+   * jangaroo-application-all.js in the given order, each as soon as it and all its predecessors are ready.
+   */
+  private void writeModuleScripts(File scriptDirectory, List<Callable<ModuleScript>> moduleScripts) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    FileOutputStream jangarooApplicationStream = null;
+    FileOutputStream jangarooApplicationAllStream = null;
+    try {
+      List<Future<ModuleScript>> futureModuleScripts = new ArrayList<Future<ModuleScript>>(moduleScripts.size());
+      for (Callable<ModuleScript> moduleScript : moduleScripts) {
+        futureModuleScripts.add(executor.submit(moduleScript));
+      }
+      jangarooApplicationAllStream = createJangarooModulesFile(scriptDirectory, "jangaroo-application-all.js");
+      FileChannel jangarooApplicationAllChannel = jangarooApplicationAllStream.getChannel();
+      ScriptBundle.writeText("// This file contains all collected JavaScript code from dependent Jangaroo modules.\n\n", jangarooApplicationAllChannel);
+
+      // jangaroo-application.js is small, but has to start with the manifest of all scripts it loads,
+      // so it is written after all module scripts are ready:
+      List<ModuleScript> readyModuleScripts = new ArrayList<ModuleScript>(futureModuleScripts.size());
+      for (Future<ModuleScript> futureModuleScript : futureModuleScripts) {
+        ModuleScript moduleScript = getModuleScript(futureModuleScript);
+        moduleScript.log(getLog());
+        moduleScript.applicationAllScript.writeTo(jangarooApplicationAllChannel);
+        readyModuleScripts.add(moduleScript);
+      }
+      jangarooApplicationAllStream.close();
+      jangarooApplicationAllStream = null;
+      // all scripts but jangaroo-application.js itself are complete now, so the manifest embedded into
+      // jangaroo-application.js is the same as the JSON manifest, except for the entry of jangaroo-application.js:
+      addApplicationScriptToManifest(scriptDirectory, "jangaroo-application-all.js");
+
+      jangarooApplicationStream = createJangarooModulesFile(scriptDirectory, "jangaroo-application.js");
+      FileChannel jangarooApplicationChannel = jangarooApplicationStream.getChannel();
+      ScriptBundle.writeText("// This file loads all collected JavaScript code from dependent Jangaroo modules.\n\n", jangarooApplicationChannel);
+      if (scriptManifest != null) {
+        ScriptBundle.writeText(scriptManifest.toJavaScript(), jangarooApplicationChannel);
+      }
+      for (ModuleScript moduleScript : readyModuleScripts) {
+        moduleScript.applicationScript.writeTo(jangarooApplicationChannel);
       }
-      writeThisJangarooModuleScript(scriptDirectory, jangarooApplicationWriter, jangarooApplicationAllWriter);
     } finally {
+      executor.shutdownNow();
+      close(jangarooApplicationStream);
+      close(jangarooApplicationAllStream);
+    }
+    if (scriptManifest != null) {
+      addApplicationScriptToManifest(scriptDirectory, "jangaroo-application.js");
+      writeScriptManifest(scriptDirectory);
+    }
+  }
+
+  /**
+   * If script names are to be hashed, add the given complete application script to the script manifest.
+   */
+  private void addApplicationScriptToManifest(File scriptDirectory, String fileName) throws IOException {
+    if (scriptManifest != null) {
+      String hashedName = scriptManifest.addScript(scriptDirectory.getName() + "/" + fileName, new File(scriptDirectory, fileName));
+      getLog().info("Created hash-named Jangaroo application script '" + hashedName + "'.");
+    }
+  }
+
+  private void writeScriptManifest(File scriptDirectory) throws IOException {
+    File manifestFile = new File(scriptDirectory, ScriptManifest.FILE_NAME);
+    getLog().info("Creating Jangaroo script manifest '" + manifestFile.getAbsolutePath() + "'.");
+    scriptManifest.writeJson(manifestFile);
+  }
+
+  /**
+   * If script names are to be hashed, add the given script to the script manifest.
+   */
+  private void addToScriptManifest(ModuleScript moduleScript, String scriptFilename, File scriptFile) throws IOException {
+    if (scriptManifest != null) {
+      String hashedName = scriptManifest.addScript(scriptFilename, scriptFile);
+      moduleScript.debug("Created hash-named script " + hashedName + " for " + scriptFilename + ".");
+    }
+  }
+
+  private static ModuleScript getModuleScript(Future<ModuleScript> futureModuleScript) throws IOException {
+    try {
+      return futureModuleScript.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while preparing module scripts.");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException("Failed to prepare module script.", cause);
+    }
+  }
+
+  private void close(FileOutputStream stream) {
+    if (stream != null) {
       try {
-        jangarooApplicationWriter.close();
-        jangarooApplicationAllWriter.close();
+        stream.close();
       } catch (IOException e) {
         getLog().warn("IOException on close ignored.", e);
       }
     }
   }
 
+  /**
+   * Compute all classes reachable from the entry classes, using the module classes files in the given directory.
+   *
+   * @return the fully qualified names of all reachable classes, or null if all classes are to be included
+   */
+  private Set<String> computeReachableClasses(File scriptDirectory) throws IOException {
+    if (entryClasses == null || entryClasses.length == 0) {
+      return null;
+    }
+    ClassDependencyGraph classDependencyGraph = new ClassDependencyGraph(getLog());
+    File[] classesJsFiles = scriptDirectory.listFiles();
+    if (classesJsFiles != null) {
+      for (File classesJsFile : classesJsFiles) {
+        if (classesJsFile.getName().endsWith(CLASSES_JS_SUFFIX) && !RUNTIME_CLASSES_JS_FILE_NAME.equals(classesJsFile.getName())) {
+          classDependencyGraph.addClassesJsFile(classesJsFile);
+        }
+      }
+    }
+    Set<String> reachableClasses = classDependencyGraph.computeReachableClasses(Arrays.asList(entryClasses));
+    getLog().info("Including " + reachableClasses.size() + " classes reachable from entry classes " + Arrays.toString(entryClasses) + ".");
+    return reachableClasses;
+  }
+
+  /**
+   * Add the script of the module being built to the given module scripts.
+   *
+   * @param scriptDirectory the directory containing the module classes files
+   * @param moduleScripts the scripts of all modules, in the order in which they are to be loaded
+   */
+  protected void addThisJangarooModuleScript(final File scriptDirectory, List<Callable<ModuleScript>> moduleScripts) {
+    moduleScripts.add(new Callable<ModuleScript>() {
+      @Override
+      public ModuleScript call() throws IOException {
+        ModuleScript moduleScript = new ModuleScript();
+        writeThisJangarooModuleScript(scriptDirectory, new ScriptBundleWriter(moduleScript, moduleScript.applicationScript),
+                new ScriptBundleWriter(moduleScript, moduleScript.applicationAllScript));
+        return moduleScript;
+      }
+    });
+  }
+
+  /**
+   * Write the script of the module being built. The default implementation of
+   * {@link #addThisJangarooModuleScript(File, List)} still calls this method, but from a worker thread.
+   *
+   * @deprecated override {@link #addThisJangarooModuleScript(File, List)} instead
+   */
+  @Deprecated
   protected void writeThisJangarooModuleScript(File scriptDirectory, Writer jangarooApplicationWriter, Writer jangarooApplicationAllWriter) throws IOException {
     ModuleSource jooModuleSource = null;
     File packageSourceDirectory = getPackageSourceDirectory();
     if (packageSourceDirectory != null) {
-      File jangarooModuleFile = new File(packageSourceDirectory, computeModuleJsFileName(project.getArtifactId()));
-      if (jangarooModuleFile.exists()) {
-        jooModuleSource = new FileModuleSource(jangarooModuleFile);
-      }
+      jooModuleSource = new FileModuleSource(new File(packageSourceDirectory, computeModuleJsFileName(project.getArtifactId())));
     }
-    writeJangarooModuleScript(scriptDirectory, project.getArtifact(), jooModuleSource, jangarooApplicationWriter, jangarooApplicationAllWriter);
+    String jooModuleCode = jooModuleSource == null ? null : jooModuleSource.read();
+    writeModuleScript(buildJangarooModuleScript(scriptDirectory, project.getArtifact(), jooModuleCode),
+            jangarooApplicationWriter, jangarooApplicationAllWriter);
   }
 
   private static String computeModuleJsFileName(String artifactId) {
     return "META-INF/resources/joo/" + artifactId + ".module.js";
   }
 
-  private Writer createJangarooModulesFile(File scriptDirectory, String fileName) throws IOException {
+  private FileOutputStream createJangarooModulesFile(File scriptDirectory, String fileName) throws IOException {
     //noinspection ResultOfMethodCallIgnored
     if (scriptDirectory.mkdirs()) {
       getLog().debug("created script output directory " + scriptDirectory);
     }
     File f = new File(scriptDirectory, fileName);
     getLog().info("Creating Jangaroo application script '" + f.getAbsolutePath() + "'.");
-    return new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+    return new FileOutputStream(f);
   }
 
-  private void includeJangarooModuleScript(File scriptDirectory, Artifact artifact, Writer jangarooApplicationWriter, Writer jangarooApplicationAllWriter) throws IOException {
-    ZipFile zipFile = new ZipFile(artifact.getFile());
-    ZipEntry zipEntry = zipFile.getEntry(computeModuleJsFileName(artifact.getArtifactId()));
-    ModuleSource jooModuleSource = zipEntry != null ? new ZipEntryModuleSource(zipFile, zipEntry) : null;
-    writeJangarooModuleScript(scriptDirectory, artifact, jooModuleSource, jangarooApplicationWriter, jangarooApplicationAllWriter);
+  private Callable<ModuleScript> createJangarooModuleScript(File scriptDirectory, Artifact artifact) {
+    ModuleSource jooModuleSource = new ZipEntryModuleSource(artifact.getFile(), computeModuleJsFileName(artifact.getArtifactId()));
+    return createJangarooModuleScript(scriptDirectory, artifact, jooModuleSource);
   }
 
+  private static final String CLASSES_JS_SUFFIX = ".classes.js";
+  private static final String RUNTIME_CLASSES_JS_FILE_NAME = "net.jangaroo.jangaroo-runtime" + CLASSES_JS_SUFFIX;
   private static final Pattern LOAD_SCRIPT_CODE_PATTERN = Pattern.compile("\\s*joo\\.loadScript\\(['\"]([^'\"]+)['\"]\\s*[,)].*");
   private static final Pattern LOAD_MODULE_CODE_PATTERN = Pattern.compile("\\s*joo\\.loadModule\\(['\"]([^'\"]+)['\"]\\s*,\\s*['\"]([^'\"]+)['\"].*");
 
@@ -215,23 +420,38 @@ public abstract class PackageApplicationMojo extends AbstractMojo {
     return String.format("%s:%s:%s", groupId, artifactId, version);
   }
 
-  private void writeJangarooModuleScript(File scriptDirectory, Artifact artifact, ModuleSource jooModuleSource, Writer jangarooApplicationWriter, Writer jangarooApplicationAllWriter) throws IOException {
+  private Callable<ModuleScript> createJangarooModuleScript(final File scriptDirectory, final Artifact artifact, final ModuleSource jooModuleSource) {
+    return new Callable<ModuleScript>() {
+      @Override
+      public ModuleScript call() throws IOException {
+        return buildJangarooModuleScript(scriptDirectory, artifact, jooModuleSource == null ? null : jooModuleSource.read());
+      }
+    };
+  }
+
+  private ModuleScript buildJangarooModuleScript(File scriptDirectory, Artifact artifact, String jooModuleCode) throws IOException {
     String fullArtifactName = fullArtifactName(artifact);
-    if (jooModuleSource == null) {
-      getLog().debug("No " + artifact.getArtifactId() + ".module.js in " + fullArtifactName + ".");
-      writeModule(scriptDirectory, artifact, jangarooApplicationWriter, jangarooApplicationAllWriter);
-    } else {
-      getLog().info("Appending " + artifact.getArtifactId() + ".module.js from " + fullArtifactName);
-      String fromMessage = fromArtifactMessage(artifact);
-      jangarooApplicationWriter.write(fromMessage);
-      appendFromInputStream(jangarooApplicationWriter, jooModuleSource.getInputStream());
-      jangarooApplicationAllWriter.write(fromMessage);
-      writeModuleWithInlineScripts(scriptDirectory, jooModuleSource, jangarooApplicationAllWriter);
+    ModuleScript moduleScript = new ModuleScript();
+    if (jooModuleCode == null) {
+      moduleScript.debug("No " + artifact.getArtifactId() + ".module.js in " + fullArtifactName + ".");
+      writeModule(scriptDirectory, artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(),
+              new ScriptBundleWriter(moduleScript, moduleScript.applicationScript),
+              new ScriptBundleWriter(moduleScript, moduleScript.applicationAllScript));
+      return moduleScript;
     }
+    moduleScript.info("Appending " + artifact.getArtifactId() + ".module.js from " + fullArtifactName);
+    String fromMessage = fromArtifactMessage(artifact);
+    moduleScript.applicationScript.appendText(fromMessage);
+    moduleScript.applicationScript.appendText(jooModuleCode);
+    moduleScript.applicationScript.appendText("\n"); // file might not end with new-line, better insert one
+    moduleScript.applicationAllScript.appendText(fromMessage);
+    appendModuleWithInlineScripts(scriptDirectory, jooModuleCode, moduleScript);
+    return moduleScript;
   }
 
-  private void writeModuleWithInlineScripts(File scriptDirectory, ModuleSource jooModuleSource, Writer jangarooApplicationAllWriter) throws IOException {
-    BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(jooModuleSource.getInputStream(), "UTF-8"));
+  private void appendModuleWithInlineScripts(File scriptDirectory, String jooModuleCode, ModuleScript moduleScript) throws IOException {
+    ScriptBundle applicationAllScript = moduleScript.applicationAllScript;
+    BufferedReader bufferedReader = new BufferedReader(new StringReader(jooModuleCode));
     while (true) {
       String line = bufferedReader.readLine();
       if (line == null) {
@@ -242,55 +462,114 @@ public abstract class PackageApplicationMojo extends AbstractMojo {
       if (loadModuleMatcher.matches()) {
         String groupId = loadModuleMatcher.group(1);
         String artifactId = loadModuleMatcher.group(2);
-        scriptFilename = "joo/" + groupId + "." + artifactId + ".classes.js";
-        getLog().debug(" found loadModule: " + groupId + " / " + artifactId);
+        scriptFilename = "joo/" + groupId + "." + artifactId + CLASSES_JS_SUFFIX;
+        moduleScript.debug(" found loadModule: " + groupId + " / " + artifactId);
       } else {
         Matcher loadScriptMatcher = LOAD_SCRIPT_CODE_PATTERN.matcher(line);
         if (loadScriptMatcher.matches()) {
           scriptFilename = loadScriptMatcher.group(1);
-          getLog().debug(" found loadScript: " + scriptFilename);
+          moduleScript.debug(" found loadScript: " + scriptFilename);
         }
       }
       File scriptFile = null;
       if (scriptFilename != null) {
         scriptFile = new File(scriptDirectory.getParent(), scriptFilename);
-        if (!scriptFile.exists()) {
+        if (scriptFile.exists()) {
+          addToScriptManifest(moduleScript, scriptFilename, scriptFile);
+        } else {
           scriptFile = null;
         }
       }
       if (scriptFile == null) {
-        jangarooApplicationAllWriter.write(line + '\n');
+        applicationAllScript.appendText(line);
+        applicationAllScript.appendText("\n");
+      } else if (loadModuleMatcher.matches()) {
+        appendClassesJsFile(moduleScript, scriptFile);
       } else {
-        appendFile(jangarooApplicationAllWriter, scriptFile);
+        appendFile(applicationAllScript, scriptFile);
       }
     }
   }
 
-  private void writeModule(File scriptDirectory, Artifact artifact, Writer jangarooApplicationWriter, Writer jangarooApplicationAllWriter) throws IOException {
-    writeModule(scriptDirectory, artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(),
-      jangarooApplicationWriter, jangarooApplicationAllWriter);
+  /**
+   * Create the script of a module without module script, which consists of its module classes file, if any.
+   *
+   * @param scriptDirectory the directory containing the module classes file
+   * @param groupId the group ID of the module
+   * @param artifactId the artifact ID of the module
+   * @param version the version of the module
+   * @return the task preparing the module script
+   */
+  protected Callable<ModuleScript> createModuleScript(final File scriptDirectory, final String groupId, final String artifactId, final String version) {
+    return new Callable<ModuleScript>() {
+      @Override
+      public ModuleScript call() throws IOException {
+        return buildModuleScript(scriptDirectory, groupId, artifactId, version);
+      }
+    };
   }
 
-  protected void writeModule(File scriptDirectory, String groupId, String artifactId, String version, Writer jangarooApplicationWriter, Writer jangarooApplicationAllWriter) throws IOException {
-    File classesJsFile = new File(scriptDirectory, groupId + "." + artifactId + ".classes.js");
+  private ModuleScript buildModuleScript(File scriptDirectory, String groupId, String artifactId, String version) throws IOException {
+    ModuleScript moduleScript = new ModuleScript();
+    File classesJsFile = new File(scriptDirectory, groupId + "." + artifactId + CLASSES_JS_SUFFIX);
     if (classesJsFile.exists()) {
-      getLog().debug("Creating joo.loadModule(...) code for / appending .classes.js of " + fullArtifactName(groupId, artifactId, version) + ".");
-      jangarooApplicationWriter.write(fromArtifactMessage(groupId, artifactId, version));
-      jangarooApplicationWriter.write("joo.loadModule(\"" + groupId + "\",\"" + artifactId + "\");\n");
-      jangarooApplicationAllWriter.write(fromArtifactMessage(groupId, artifactId, version));
-      appendFile(jangarooApplicationAllWriter, classesJsFile);
+      moduleScript.debug("Creating joo.loadModule(...) code for / appending .classes.js of " + fullArtifactName(groupId, artifactId, version) + ".");
+      addToScriptManifest(moduleScript, "joo/" + classesJsFile.getName(), classesJsFile);
+      moduleScript.applicationScript.appendText(fromArtifactMessage(groupId, artifactId, version));
+      moduleScript.applicationScript.appendText("joo.loadModule(\"" + groupId + "\",\"" + artifactId + "\");\n");
+      moduleScript.applicationAllScript.appendText(fromArtifactMessage(groupId, artifactId, version));
+      appendClassesJsFile(moduleScript, classesJsFile);
     } else {
-      getLog().debug("No file " + classesJsFile.getAbsolutePath() + " in module " + fullArtifactName(groupId, artifactId, version) +".");
+      moduleScript.debug("No file " + classesJsFile.getAbsolutePath() + " in module " + fullArtifactName(groupId, artifactId, version) +".");
     }
+    return moduleScript;
   }
 
-  private void appendFile(Writer writer, File file) throws IOException {
-    appendFromInputStream(writer, new BOMStripperInputStream(new FileInputStream(file)));
+  /**
+   * Write the script of a module without module script, which consists of its module classes file, if any.
+   * Modules without module script, including the dependencies of the module being built, are still written by
+   * this method, but from worker threads.
+   *
+   * @deprecated override {@link #addThisJangarooModuleScript(File, List)} and use
+   * {@link #createModuleScript(File, String, String, String)} instead
+   */
+  @Deprecated
+  protected void writeModule(File scriptDirectory, String groupId, String artifactId, String version, Writer jangarooApplicationWriter, Writer jangarooApplicationAllWriter) throws IOException {
+    writeModuleScript(buildModuleScript(scriptDirectory, groupId, artifactId, version),
+            jangarooApplicationWriter, jangarooApplicationAllWriter);
   }
 
-  private void appendFromInputStream(Writer writer, InputStream inputStream) throws IOException {
-    IOUtil.copy(inputStream, writer, "UTF-8");
-    writer.write('\n'); // file might not end with new-line, better insert one
+  /**
+   * Write a prepared module script to the writers passed to a deprecated hook. If these write to another module
+   * script, the script files are appended without reading them and the log messages are passed on.
+   */
+  private void writeModuleScript(ModuleScript moduleScript, Writer jangarooApplicationWriter, Writer jangarooApplicationAllWriter) throws IOException {
+    if (jangarooApplicationWriter instanceof ScriptBundleWriter && jangarooApplicationAllWriter instanceof ScriptBundleWriter) {
+      ((ScriptBundleWriter) jangarooApplicationWriter).append(moduleScript.applicationScript);
+      ((ScriptBundleWriter) jangarooApplicationAllWriter).append(moduleScript.applicationAllScript);
+      ((ScriptBundleWriter) jangarooApplicationWriter).moduleScript.logMessages.addAll(moduleScript.logMessages);
+    } else {
+      moduleScript.log(getLog());
+      moduleScript.applicationScript.writeTo(jangarooApplicationWriter);
+      moduleScript.applicationAllScript.writeTo(jangarooApplicationAllWriter);
+    }
+  }
+
+  private void appendClassesJsFile(ModuleScript moduleScript, File classesJsFile) throws IOException {
+    ScriptBundle scriptBundle = moduleScript.applicationAllScript;
+    if (reachableClasses == null || RUNTIME_CLASSES_JS_FILE_NAME.equals(classesJsFile.getName())) {
+      appendFile(scriptBundle, classesJsFile);
+    } else {
+      StringWriter reachableClassesCode = new StringWriter();
+      int removedClassCount = ClassDependencyGraph.copyReachableClasses(classesJsFile, reachableClasses, reachableClassesCode);
+      scriptBundle.appendText(reachableClassesCode.getBuffer());
+      moduleScript.debug("Left out " + removedClassCount + " unreachable classes of " + classesJsFile.getName() + ".");
+    }
+  }
+
+  private static void appendFile(ScriptBundle scriptBundle, File file) {
+    scriptBundle.appendFile(file);
+    scriptBundle.appendText("\n"); // file might not end with new-line, better insert one
   }
 
   private Map<String, Artifact> artifactByInternalId() {
@@ -304,7 +583,53 @@ public abstract class PackageApplicationMojo extends AbstractMojo {
     return internalId2Artifact;
   }
 
-  private List<String> getDependencies(Artifact artifact) throws ProjectBuildingException {
+  private ArtifactDependencyCache loadArtifactDependencyCache() {
+    if (artifactDependencyCacheFile == null) {
+      return null;
+    }
+    try {
+      return ArtifactDependencyCache.load(artifactDependencyCacheFile);
+    } catch (IOException e) {
+      getLog().warn("Ignoring unreadable artifact dependency cache " + artifactDependencyCacheFile + ".", e);
+      return null;
+    }
+  }
+
+  private void saveArtifactDependencyCache() {
+    if (artifactDependencyCache != null) {
+      try {
+        artifactDependencyCache.save();
+      } catch (IOException e) {
+        getLog().warn("Failed to save artifact dependency cache " + artifactDependencyCacheFile + ".", e);
+      }
+    }
+  }
+
+  /**
+   * The POM of an artifact in a repository is stored next to the artifact file. Artifacts of other modules
+   * of the same reactor build have no such POM and thus are never cached.
+   */
+  private static File getPomFile(Artifact artifact) {
+    File file = artifact.getFile();
+    if (file == null || !file.getName().endsWith(".jar") || artifact.getClassifier() != null) {
+      return null;
+    }
+    String fileName = file.getName();
+    File pomFile = new File(file.getParentFile(), fileName.substring(0, fileName.length() - ".jar".length()) + ".pom");
+    return pomFile.isFile() ? pomFile : null;
+  }
+
+  private List<String> getDependencies(Artifact artifact) throws IOException, ProjectBuildingException {
+    String fullArtifactName = fullArtifactName(artifact);
+    File pomFile = artifactDependencyCache == null ? null : getPomFile(artifact);
+    String pomChecksum = pomFile == null ? null : ArtifactDependencyCache.computeChecksum(pomFile);
+    if (pomChecksum != null) {
+      List<String> cachedDependencies = artifactDependencyCache.getDependencies(fullArtifactName, pomChecksum);
+      if (cachedDependencies != null) {
+        getLog().debug("Using cached dependencies of " + fullArtifactName + ": " + cachedDependencies);
+        return cachedDependencies;
+      }
+    }
     MavenProject mp = mavenProjectBuilder.buildFromRepository(artifact, remoteRepositories, localRepository, true);
     List<String> deps = new LinkedList<String>();
     for (Dependency dep : getDependencies(mp)) {
@@ -313,6 +638,9 @@ public abstract class PackageApplicationMojo extends AbstractMojo {
         deps.add(getInternalId(dep));
       }
     }
+    if (pomChecksum != null) {
+      artifactDependencyCache.putDependencies(fullArtifactName, pomChecksum, deps);
+    }
     return deps;
   }
 
@@ -326,8 +654,91 @@ public abstract class PackageApplicationMojo extends AbstractMojo {
     return (Set<Artifact>)project.getArtifacts();
   }
 
+  /**
+   * The code a module contributes to jangaroo-application.js and to jangaroo-application-all.js.
+   * Module scripts are prepared by worker threads, which must not use the mojo's log, so the messages
+   * are collected and logged by the mojo thread when the module script is written.
+   */
+  protected static final class ModuleScript {
+    private final ScriptBundle applicationScript = new ScriptBundle();
+    private final ScriptBundle applicationAllScript = new ScriptBundle();
+    private final List<LogMessage> logMessages = new ArrayList<LogMessage>();
+
+    private void debug(String message) {
+      logMessages.add(new LogMessage(false, message));
+    }
+
+    private void info(String message) {
+      logMessages.add(new LogMessage(true, message));
+    }
+
+    private void log(Log log) {
+      for (LogMessage logMessage : logMessages) {
+        if (logMessage.info) {
+          log.info(logMessage.message);
+        } else {
+          log.debug(logMessage.message);
+        }
+      }
+      logMessages.clear();
+    }
+  }
+
+  private static class LogMessage {
+    private final boolean info;
+    private final String message;
+
+    private LogMessage(boolean info, String message) {
+      this.info = info;
+      this.message = message;
+    }
+  }
+
+  /**
+   * Passes the code written by a deprecated hook on to a script bundle of a module script.
+   */
+  private static class ScriptBundleWriter extends Writer {
+    private final ModuleScript moduleScript;
+    private final ScriptBundle scriptBundle;
+
+    private ScriptBundleWriter(ModuleScript moduleScript, ScriptBundle scriptBundle) {
+      this.moduleScript = moduleScript;
+      this.scriptBundle = scriptBundle;
+    }
+
+    private void append(ScriptBundle scriptBundle) {
+      this.scriptBundle.append(scriptBundle);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      scriptBundle.appendText(new String(cbuf, off, len));
+    }
+
+    @Override
+    public void flush() {
+      // the code is kept until the module script is written
+    }
+
+    @Override
+    public void close() {
+      // the code is kept until the module script is written
+    }
+  }
+
   private static interface ModuleSource {
-    InputStream getInputStream() throws IOException;
+    /**
+     * @return the code of the module script, or null if there is no module script
+     */
+    String read() throws IOException;
+  }
+
+  private static String readModuleCode(InputStream inputStream) throws IOException {
+    try {
+      return IOUtil.toString(new BOMStripperInputStream(inputStream), "UTF-8");
+    } finally {
+      inputStream.close();
+    }
   }
 
   private static class FileModuleSource implements ModuleSource {
@@ -338,23 +749,29 @@ public abstract class PackageApplicationMojo extends AbstractMojo {
     }
 
     @Override
-    public InputStream getInputStream() throws IOException {
-      return new BOMStripperInputStream(new FileInputStream(file));
+    public String read() throws IOException {
+      return file.exists() ? readModuleCode(new FileInputStream(file)) : null;
     }
   }
 
   private static class ZipEntryModuleSource implements ModuleSource {
-    private final ZipFile zipFile;
-    private final ZipEntry zipEntry;
+    private final File zipFile;
+    private final String zipEntryName;
 
-    private ZipEntryModuleSource(ZipFile zipFile, ZipEntry zipEntry) {
+    private ZipEntryModuleSource(File zipFile, String zipEntryName) {
       this.zipFile = zipFile;
-      this.zipEntry = zipEntry;
+      this.zipEntryName = zipEntryName;
     }
 
     @Override
-    public InputStream getInputStream() throws IOException {
-      return new BOMStripperInputStream(zipFile.getInputStream(zipEntry));
+    public String read() throws IOException {
+      ZipFile zip = new ZipFile(zipFile);
+      try {
+        ZipEntry zipEntry = zip.getEntry(zipEntryName);
+        return zipEntry == null ? null : readModuleCode(zip.getInputStream(zipEntry));
+      } finally {
+        zip.close();
+      }
     }
   }
 }
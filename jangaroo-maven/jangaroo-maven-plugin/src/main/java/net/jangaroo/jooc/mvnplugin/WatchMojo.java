@@ -0,0 +1,56 @@
+package net.jangaroo.jooc.mvnplugin;
+
+import net.jangaroo.jooc.config.JoocConfiguration;
+import net.jangaroo.jooc.daemon.JoocWatcher;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Mojo that compiles Jangaroo sources like the compile goal, but then keeps running and recompiles source files
+ * as soon as they change, as well as all source files depending on their public API. Only the class files in
+ * <code>joo/classes</code> are updated, the module's concatenated classes file is not. Compilation is always
+ * incremental, and classes parsed from class path jars are kept between compilations.
+ * Stop watching by interrupting Maven (Ctrl-C).
+ *
+ * @goal watch
+ * @requiresDependencyResolution compile
+ */
+@SuppressWarnings({"UnusedDeclaration", "UnusedPrivateField"})
+public class WatchMojo extends CompilerMojo {
+
+  /**
+   * The time in milliseconds to wait between two checks for changed source files.
+   *
+   * @parameter expression="${jooc.watch.pollInterval}" default-value="250"
+   */
+  private long pollInterval;
+
+  @Override
+  protected boolean isIncremental() {
+    return true;
+  }
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    if (getCompileSourceRoots().isEmpty()) {
+      getLog().info("No sources to compile");
+      return;
+    }
+    JoocConfiguration configuration = createConfiguration();
+    configuration.setSourceFiles(new ArrayList<File>(computeStaleSources(0)));
+    configuration.setDependencyCacheFile(getDependencyCacheFile(getClassesOutputDirectory()));
+    createOutputDirectories(configuration);
+    try {
+      new JoocWatcher(configuration, createCompileLog()).run(pollInterval);
+    } catch (IOException e) {
+      throw new MojoExecutionException("cannot start watching source files", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      getLog().info("Stopped watching source files.");
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package net.jangaroo.jooc.mvnplugin.test;
+
+import net.jangaroo.utils.BOMStripperInputStream;
+import org.codehaus.plexus.util.IOUtil;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.regex.Pattern;
+
+/**
+ * Delivers the compiled code of several classes in one response, so that a test page can load many classes
+ * with a single script element instead of letting the Jangaroo runtime request each class separately.
+ * The fully qualified names of the requested classes are given as the comma-separated value of the
+ * <code>classes</code> request parameter. The code of each class is read from the same location it would be
+ * loaded from separately (<code>joo/classes/&lt;package path&gt;/&lt;class name&gt;.js</code>), and all
+ * code is concatenated in request order.
+ * For a class that is not found, a call of the runtime's class load error handler is sent instead.
+ * <p>Classes loaded this way are prepared like classes loaded by the runtime, so a page can include e.g.
+ * <code>&lt;script src="joo/classes.js?classes=a.B,c.D">&lt;/script></code> after
+ * <code>jangaroo-application.js</code>.</p>
+ */
+public class ClassBatchServlet extends HttpServlet {
+
+  /**
+   * The path this servlet is mapped to.
+   */
+  public static final String PATH = "/joo/classes.js";
+
+  private static final String CLASSES_PARAMETER = "classes";
+  private static final Pattern CLASS_NAME_PATTERN = Pattern.compile("[\\w$]+(\\.[\\w$]+)*");
+
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+    String classes = request.getParameter(CLASSES_PARAMETER);
+    if (classes == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing parameter '" + CLASSES_PARAMETER + "'.");
+      return;
+    }
+    response.setContentType("text/javascript");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-store, no-cache, must-revalidate, max-age=0");
+    OutputStream out = response.getOutputStream();
+    for (String className : classes.split(",")) {
+      String classUrl = getRelativeClassUrl(className.trim());
+      InputStream classCode = classUrl == null ? null : getServletContext().getResourceAsStream("/" + classUrl);
+      if (classCode == null) {
+        out.write(("joo.classLoader.classLoadErrorHandler(\"" + escape(className) + "\", \"" + escape(String.valueOf(classUrl)) + "\");").getBytes("UTF-8"));
+      } else {
+        try {
+          IOUtil.copy(new BOMStripperInputStream(classCode), out);
+        } finally {
+          classCode.close();
+        }
+      }
+      out.write('\n');
+    }
+  }
+
+  private static String getRelativeClassUrl(String className) {
+    return CLASS_NAME_PATTERN.matcher(className).matches() ? "joo/classes/" + className.replace('.', '/') + ".js" : null;
+  }
+
+  private static String escape(String value) {
+    // requested names are not trusted, so keep only characters that are harmless in a string literal:
+    return value.replaceAll("[^\\w$./-]", "_");
+  }
+}
@@ -8,6 +8,8 @@ import java.io.File;
 /**
  * Starts a Jetty server that serves the application to run JooUnit tests.
  * This is intended to be used for interactive debugging in the browser.
+ * To load many classes with one request instead of one request per class, the tests page can include a script
+ * element for the {@link ClassBatchServlet}.
  * <p></p>Usage: <code>mvn jangaroo:jetty-run-test</code></p>
  *
  * @goal jetty-run-tests
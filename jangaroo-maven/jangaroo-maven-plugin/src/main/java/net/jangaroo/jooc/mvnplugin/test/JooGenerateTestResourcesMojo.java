@@ -5,8 +5,8 @@ import org.apache.maven.plugin.MojoExecutionException;
 import net.jangaroo.jooc.mvnplugin.Types;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * Prepares the Javascript Testenvironment including generation of the HTML page and decompression of jangaroo
@@ -81,9 +81,8 @@ public class JooGenerateTestResourcesMojo extends PackageApplicationMojo {
   }
 
   @Override
-  protected void writeThisJangarooModuleScript(File scriptDirectory, Writer jangarooApplicationWriter, Writer jangarooApplicationAllWriter) throws IOException {
-    super.writeThisJangarooModuleScript(new File(outputDirectory, "META-INF/resources/joo"), jangarooApplicationWriter, jangarooApplicationAllWriter);
-    writeModule(scriptDirectory, project.getGroupId(), project.getArtifactId() + "-test", project.getVersion(),
-      jangarooApplicationWriter, jangarooApplicationAllWriter);
+  protected void addThisJangarooModuleScript(File scriptDirectory, List<Callable<ModuleScript>> moduleScripts) {
+    super.addThisJangarooModuleScript(new File(outputDirectory, "META-INF/resources/joo"), moduleScripts);
+    moduleScripts.add(createModuleScript(scriptDirectory, project.getGroupId(), project.getArtifactId() + "-test", project.getVersion()));
   }
 }
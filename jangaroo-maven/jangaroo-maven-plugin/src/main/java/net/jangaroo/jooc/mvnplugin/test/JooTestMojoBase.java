@@ -126,6 +126,8 @@ public abstract class JooTestMojoBase extends AbstractMojo {
       servletHolder.setInitParameter("cacheControl", "no-store, no-cache, must-revalidate, max-age=0");
       handler.addServlet(servletHolder, "/");
       getLog().info("Set servlet cache control to 'do not cache'.");
+      handler.addServlet(new ServletHolder("classBatch", ClassBatchServlet.class), ClassBatchServlet.PATH);
+      getLog().info("Serving class batches at " + ClassBatchServlet.PATH + ".");
     } catch (Exception e) {
       throw wrap(e);
     }
@@ -0,0 +1,170 @@
+package net.jangaroo.jooc.mvnplugin.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent record of the dependencies of artifacts, so that the POM of a dependent artifact only has to be built
+ * from the repository again when it changes.
+ * For each artifact, given by its coordinates, the cache keeps a checksum of its POM file and the internal IDs
+ * (<code>groupId:artifactId</code>) of the artifacts it depends on.
+ * The cache file may be shared by several builds. It is replaced as a whole when saved, so that a concurrent
+ * build may lose some entries, which are then simply computed again, but never reads a half-written file.
+ */
+public class ArtifactDependencyCache {
+
+  private static final String HEADER = "# jangaroo artifact dependency cache, version 1";
+  private static final String FIELD_SEPARATOR = "\t";
+  private static final String LIST_SEPARATOR = ",";
+
+  private final File file;
+  private final Map<String, Entry> entriesByArtifact = new LinkedHashMap<String, Entry>();
+  private boolean modified;
+
+  private ArtifactDependencyCache(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Load the artifact dependency cache from the given file. If the file does not exist or has an incompatible
+   * format, the resulting cache is empty.
+   *
+   * @param file the artifact dependency cache file
+   * @return the artifact dependency cache
+   * @throws IOException if the cache file cannot be read
+   */
+  public static ArtifactDependencyCache load(File file) throws IOException {
+    ArtifactDependencyCache artifactDependencyCache = new ArtifactDependencyCache(file);
+    if (file.exists()) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        if (HEADER.equals(reader.readLine())) {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            String[] fields = line.split(FIELD_SEPARATOR, -1);
+            // ignore lines truncated by a build that was killed while saving:
+            if (fields.length == 3) {
+              artifactDependencyCache.entriesByArtifact.put(fields[0], new Entry(fields[1], splitList(fields[2])));
+            }
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return artifactDependencyCache;
+  }
+
+  /**
+   * Save the cache, if any entry has been added or changed since it has been loaded.
+   *
+   * @throws IOException if the cache file cannot be written
+   */
+  public void save() throws IOException {
+    if (!modified) {
+      return;
+    }
+    File parentDir = file.getAbsoluteFile().getParentFile();
+    if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
+      throw new IOException("cannot create directory " + parentDir);
+    }
+    File tempFile = File.createTempFile(file.getName(), ".tmp", parentDir);
+    PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+    try {
+      writer.println(HEADER);
+      for (Map.Entry<String, Entry> artifactAndEntry : entriesByArtifact.entrySet()) {
+        Entry entry = artifactAndEntry.getValue();
+        writer.println(artifactAndEntry.getKey() + FIELD_SEPARATOR + entry.pomChecksum
+                + FIELD_SEPARATOR + joinList(entry.dependencies));
+      }
+    } finally {
+      writer.close();
+    }
+    if (writer.checkError()) {
+      //noinspection ResultOfMethodCallIgnored
+      tempFile.delete(); // NOSONAR
+      throw new IOException("cannot write artifact dependency cache file " + file);
+    }
+    // some platforms do not rename over existing files:
+    if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+      //noinspection ResultOfMethodCallIgnored
+      tempFile.delete(); // NOSONAR
+      throw new IOException("cannot rename " + tempFile + " to " + file);
+    }
+    modified = false;
+  }
+
+  /**
+   * Look up the dependencies of the given artifact.
+   *
+   * @param artifact the coordinates of the artifact
+   * @param pomChecksum the checksum of the artifact's current POM file
+   * @return the internal IDs of the artifacts the given artifact depends on, or null if they are not cached for
+   *   the given POM checksum
+   */
+  public List<String> getDependencies(String artifact, String pomChecksum) {
+    Entry entry = entriesByArtifact.get(artifact);
+    return entry == null || !entry.pomChecksum.equals(pomChecksum) ? null : entry.dependencies;
+  }
+
+  /**
+   * Record the dependencies of the given artifact.
+   *
+   * @param artifact the coordinates of the artifact
+   * @param pomChecksum the checksum of the artifact's POM file the dependencies were read from
+   * @param dependencies the internal IDs of the artifacts the given artifact depends on
+   */
+  public void putDependencies(String artifact, String pomChecksum, List<String> dependencies) {
+    entriesByArtifact.put(artifact, new Entry(pomChecksum, new ArrayList<String>(dependencies)));
+    modified = true;
+  }
+
+  /**
+   * Compute the checksum of the given POM file.
+   *
+   * @param pomFile the POM file
+   * @return the hexadecimal MD5 digest of the file's content
+   * @throws IOException if the file cannot be read
+   */
+  public static String computeChecksum(File pomFile) throws IOException {
+    return Checksums.md5(pomFile);
+  }
+
+  private static List<String> splitList(String list) {
+    return list.length() == 0 ? Collections.<String>emptyList() : Arrays.asList(list.split(LIST_SEPARATOR));
+  }
+
+  private static String joinList(Collection<String> list) {
+    StringBuilder builder = new StringBuilder();
+    for (String element : list) {
+      if (builder.length() > 0) {
+        builder.append(LIST_SEPARATOR);
+      }
+      builder.append(element);
+    }
+    return builder.toString();
+  }
+
+  private static class Entry {
+    private final String pomChecksum;
+    private final List<String> dependencies;
+
+    private Entry(String pomChecksum, List<String> dependencies) {
+      this.pomChecksum = pomChecksum;
+      this.dependencies = dependencies;
+    }
+  }
+}
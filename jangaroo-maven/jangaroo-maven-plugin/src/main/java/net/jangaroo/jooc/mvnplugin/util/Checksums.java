@@ -0,0 +1,50 @@
+package net.jangaroo.jooc.mvnplugin.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Checksums of file contents.
+ */
+public final class Checksums {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private Checksums() {
+  }
+
+  /**
+   * Compute the MD5 digest of the content of the given file.
+   *
+   * @param file the file
+   * @return the hexadecimal MD5 digest of the file's content
+   * @throws IOException if the file cannot be read
+   */
+  public static String md5(File file) throws IOException {
+    MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 message digest not supported by this JVM", e);
+    }
+    InputStream inputStream = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      for (int count = inputStream.read(buffer); count != -1; count = inputStream.read(buffer)) {
+        messageDigest.update(buffer, 0, count);
+      }
+    } finally {
+      inputStream.close();
+    }
+    byte[] digest = messageDigest.digest();
+    StringBuilder hex = new StringBuilder(digest.length * 2);
+    for (byte b : digest) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+}
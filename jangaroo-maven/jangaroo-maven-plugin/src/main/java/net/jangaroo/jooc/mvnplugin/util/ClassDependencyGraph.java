@@ -0,0 +1,158 @@
+package net.jangaroo.jooc.mvnplugin.util;
+
+import net.jangaroo.utils.BOMStripperInputStream;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The graph of run time dependencies between the classes of concatenated module classes files
+ * (<code>&lt;groupId&gt;.&lt;artifactId&gt;.classes.js</code>), used to leave out all classes that an application
+ * cannot reach from its entry classes.
+ * In a module classes file, the code of each class is preceded by a {@link #CLASS_HEADER_PREFIX class header}
+ * line, and ends with the <code>joo.classLoader.prepare()</code> call, whose last array argument lists the
+ * classes the class depends on at run time. The array is followed by the runtime and compiler version strings and,
+ * possibly, by comments the compiler copied from the end of the class source.
+ */
+public class ClassDependencyGraph {
+
+  /**
+   * The prefix of the comment line preceding the code of each class in a module classes file.
+   */
+  public static final String CLASS_HEADER_PREFIX = "// class ";
+
+  // white space and JavaScript comments:
+  private static final String GAP = "(?:\\s|//[^\\n]*|/\\*(?:[^*]|\\*(?!/))*\\*/)*";
+  private static final Pattern DEPENDENCIES_PATTERN =
+          Pattern.compile("\\[([^\\[\\]]*)\\]\\s*,\\s*\"[^\"]*\"\\s*,\\s*\"[^\"]*\"" + GAP + "\\)" + GAP + "(?:;" + GAP + ")*$");
+  private static final Pattern QUOTED_NAME_PATTERN = Pattern.compile("\"([^\"]+)\"");
+
+  private final Log log;
+  private final Map<String, List<String>> dependenciesByClass = new HashMap<String, List<String>>();
+
+  /**
+   * Create an empty class dependency graph.
+   *
+   * @param log the log to warn about classes whose dependencies cannot be determined
+   */
+  public ClassDependencyGraph(Log log) {
+    this.log = log;
+  }
+
+  /**
+   * Add all classes of the given module classes file and their dependencies to this graph.
+   *
+   * @param classesJsFile the module classes file
+   * @throws IOException if the file cannot be read
+   */
+  public void addClassesJsFile(File classesJsFile) throws IOException {
+    BufferedReader reader = createReader(classesJsFile);
+    try {
+      String className = null;
+      StringBuilder classCode = new StringBuilder();
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (line.startsWith(CLASS_HEADER_PREFIX)) {
+          addClass(classesJsFile, className, classCode);
+          className = line.substring(CLASS_HEADER_PREFIX.length()).trim();
+          classCode.setLength(0);
+        } else if (className != null) {
+          classCode.append(line).append('\n');
+        }
+      }
+      addClass(classesJsFile, className, classCode);
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void addClass(File classesJsFile, String className, CharSequence classCode) {
+    if (className == null) {
+      return;
+    }
+    List<String> dependencies = new ArrayList<String>();
+    Matcher dependenciesMatcher = DEPENDENCIES_PATTERN.matcher(classCode);
+    if (dependenciesMatcher.find()) {
+      Matcher nameMatcher = QUOTED_NAME_PATTERN.matcher(dependenciesMatcher.group(1));
+      while (nameMatcher.find()) {
+        dependencies.add(nameMatcher.group(1));
+      }
+    } else {
+      log.warn("Cannot determine the dependencies of class " + className + " in " + classesJsFile
+              + ", as its code does not end with a joo.classLoader.prepare() call. Classes only reachable through "
+              + className + " will be left out.");
+    }
+    dependenciesByClass.put(className, dependencies);
+  }
+
+  /**
+   * Compute all classes reachable from the given entry classes by following run time dependencies.
+   *
+   * @param entryClasses the fully qualified names of the classes to start with
+   * @return the fully qualified names of all reachable classes, including the entry classes
+   */
+  public Set<String> computeReachableClasses(Collection<String> entryClasses) {
+    Set<String> reachableClasses = new HashSet<String>();
+    LinkedList<String> openClasses = new LinkedList<String>(entryClasses);
+    while (!openClasses.isEmpty()) {
+      String className = openClasses.removeFirst();
+      if (reachableClasses.add(className)) {
+        List<String> dependencies = dependenciesByClass.get(className);
+        openClasses.addAll(dependencies == null ? Collections.<String>emptyList() : dependencies);
+      }
+    }
+    return reachableClasses;
+  }
+
+  /**
+   * Copy the given module classes file, leaving out the code of all classes that are not in the given set.
+   * Code not preceded by any class header is always copied.
+   *
+   * @param classesJsFile the module classes file
+   * @param reachableClasses the fully qualified names of all classes to copy
+   * @param writer the writer to copy the code to
+   * @return the number of classes left out
+   * @throws IOException if reading or writing fails
+   */
+  public static int copyReachableClasses(File classesJsFile, Set<String> reachableClasses, Writer writer) throws IOException {
+    int removedClassCount = 0;
+    BufferedReader reader = createReader(classesJsFile);
+    try {
+      boolean reachable = true;
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (line.startsWith(CLASS_HEADER_PREFIX)) {
+          reachable = reachableClasses.contains(line.substring(CLASS_HEADER_PREFIX.length()).trim());
+          if (!reachable) {
+            removedClassCount++;
+          }
+        }
+        if (reachable) {
+          writer.write(line);
+          writer.write('\n');
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return removedClassCount;
+  }
+
+  private static BufferedReader createReader(File classesJsFile) throws IOException {
+    return new BufferedReader(new InputStreamReader(new BOMStripperInputStream(new FileInputStream(classesJsFile)), "UTF-8"));
+  }
+}
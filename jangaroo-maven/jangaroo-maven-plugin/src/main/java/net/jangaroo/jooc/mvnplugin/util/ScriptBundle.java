@@ -0,0 +1,155 @@
+package net.jangaroo.jooc.mvnplugin.util;
+
+import net.jangaroo.utils.BOMStripperInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sequence of JavaScript code fragments and script files to be written to a bundle file, in order.
+ * Script files are not read before the bundle is written, and are then transferred byte by byte without
+ * decoding, only skipping a leading byte order mark. Like all Jangaroo output, script files and code fragments
+ * are written in UTF-8.
+ */
+public class ScriptBundle {
+
+  private static final int MAX_BOM_LENGTH = 4;
+
+  private final List<Object> parts = new ArrayList<Object>();
+  private final StringBuilder text = new StringBuilder();
+
+  /**
+   * Append the given code fragment.
+   *
+   * @param code the code to append
+   */
+  public void appendText(CharSequence code) {
+    text.append(code);
+  }
+
+  /**
+   * Append the content of the given script file.
+   *
+   * @param scriptFile the UTF-8 encoded script file, optionally starting with a byte order mark
+   */
+  public void appendFile(File scriptFile) {
+    flushText();
+    parts.add(scriptFile);
+  }
+
+  /**
+   * Append all code fragments and script files of the given bundle. Its script files are still not read.
+   *
+   * @param scriptBundle the bundle to append
+   */
+  public void append(ScriptBundle scriptBundle) {
+    flushText();
+    scriptBundle.flushText();
+    parts.addAll(scriptBundle.parts);
+  }
+
+  /**
+   * Write all code fragments and script files to the given channel.
+   *
+   * @param out the channel of the bundle file
+   * @throws IOException if reading a script file or writing fails
+   */
+  public void writeTo(FileChannel out) throws IOException {
+    flushText();
+    for (Object part : parts) {
+      if (part instanceof File) {
+        transferFile((File) part, out);
+      } else {
+        writeText(part.toString(), out);
+      }
+    }
+  }
+
+  /**
+   * Write all code fragments and script files to the given writer. Other than writing to a channel, this
+   * decodes all script files.
+   *
+   * @param out the writer to write to
+   * @throws IOException if reading a script file or writing fails
+   */
+  public void writeTo(Writer out) throws IOException {
+    flushText();
+    for (Object part : parts) {
+      if (part instanceof File) {
+        copyFile((File) part, out);
+      } else {
+        out.write(part.toString());
+      }
+    }
+  }
+
+  private void flushText() {
+    if (text.length() > 0) {
+      parts.add(text.toString());
+      text.setLength(0);
+    }
+  }
+
+  /**
+   * Write the given code to the given channel, encoded in UTF-8.
+   *
+   * @param code the code to write
+   * @param out the channel to write to
+   * @throws IOException if writing fails
+   */
+  public static void writeText(String code, FileChannel out) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(code.getBytes("UTF-8"));
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+
+  private static void transferFile(File file, FileChannel out) throws IOException {
+    FileInputStream inputStream = new FileInputStream(file);
+    try {
+      FileChannel in = inputStream.getChannel();
+      long size = in.size();
+      for (long position = getBomLength(in); position < size; ) {
+        long count = in.transferTo(position, size - position, out);
+        if (count <= 0) {
+          throw new IOException("cannot transfer " + file + " at position " + position);
+        }
+        position += count;
+      }
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  private static void copyFile(File file, Writer out) throws IOException {
+    Reader in = new InputStreamReader(new BOMStripperInputStream(new FileInputStream(file)), "UTF-8");
+    try {
+      char[] buffer = new char[8192];
+      for (int count; (count = in.read(buffer)) != -1; ) {
+        out.write(buffer, 0, count);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private static int getBomLength(FileChannel in) throws IOException {
+    ByteBuffer head = ByteBuffer.allocate(MAX_BOM_LENGTH);
+    while (head.hasRemaining() && in.read(head, head.position()) > 0) {
+      // keep reading until the head is full or the file ends
+    }
+    // let BOMStripperInputStream decide, so that exactly the same byte order marks are recognized:
+    BOMStripperInputStream headWithoutBom =
+            new BOMStripperInputStream(new ByteArrayInputStream(head.array(), 0, head.position()));
+    return head.position() - headWithoutBom.available();
+  }
+}
@@ -0,0 +1,120 @@
+package net.jangaroo.jooc.mvnplugin.util;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maps the logical names of the scripts of a Jangaroo Web app, like <code>joo/jangaroo-application.js</code>, to
+ * the names of copies of these scripts that contain a hash of their content, like
+ * <code>joo/jangaroo-application.0123456789abcdef.js</code>.
+ * As the content of a hash-named script never changes, it can be served with far-future cache headers.
+ * The manifest is written as a JSON object to {@link #FILE_NAME} for server-side use, and as JavaScript code
+ * that sets <code>joo.scriptManifest</code>, which <code>joo.loadScript()</code> and <code>joo.loadModule()</code>
+ * consult before loading a script.
+ */
+public class ScriptManifest {
+
+  /**
+   * The name of the JSON manifest file, written to the <code>joo</code> directory of the Web app.
+   */
+  public static final String FILE_NAME = "jangaroo-manifest.json";
+
+  private static final int HASH_LENGTH = 16;
+
+  private final File webappDirectory;
+  private final Map<String, String> hashedNameByName = new TreeMap<String, String>();
+
+  /**
+   * Create an empty manifest for the given Web app directory.
+   *
+   * @param webappDirectory the directory relative to which script names are resolved
+   */
+  public ScriptManifest(File webappDirectory) {
+    this.webappDirectory = webappDirectory;
+  }
+
+  /**
+   * Create a hash-named copy of the given script in the Web app directory and add it to this manifest.
+   * This method may be called concurrently.
+   *
+   * @param name the logical name of the script, relative to the Web app directory
+   * @param scriptFile the script file, which may be located outside of the Web app directory
+   * @return the name of the hash-named copy of the script, relative to the Web app directory
+   * @throws IOException if the script cannot be read or copied
+   */
+  public String addScript(String name, File scriptFile) throws IOException {
+    String hashedName = computeHashedName(name, Checksums.md5(scriptFile).substring(0, HASH_LENGTH));
+    synchronized (hashedNameByName) {
+      if (hashedName.equals(hashedNameByName.get(name))) {
+        return hashedName;
+      }
+      hashedNameByName.put(name, hashedName);
+    }
+    File hashedFile = new File(webappDirectory, hashedName);
+    // an existing complete copy has the same content, as its name says:
+    if (hashedFile.length() != scriptFile.length()) {
+      FileUtils.copyFile(scriptFile, hashedFile);
+    }
+    return hashedName;
+  }
+
+  static String computeHashedName(String name, String hash) {
+    int extensionPos = name.lastIndexOf('.');
+    return extensionPos > name.lastIndexOf('/')
+            ? name.substring(0, extensionPos) + "." + hash + name.substring(extensionPos)
+            : name + "." + hash;
+  }
+
+
+  /**
+   * Render JavaScript code that makes this manifest known to the Jangaroo runtime. The code has to be executed
+   * before the Jangaroo runtime loads any script.
+   *
+   * @return the code setting <code>joo.scriptManifest</code>
+   */
+  public String toJavaScript() {
+    return "if (typeof joo !== \"object\") {\n  joo = {};\n}\njoo.scriptManifest = " + toJson() + ";\n";
+  }
+
+  /**
+   * Write this manifest as a JSON object to the given file.
+   *
+   * @param file the manifest file
+   * @throws IOException if writing fails
+   */
+  public void writeJson(File file) throws IOException {
+    FileUtils.fileWrite(file, "UTF-8", toJson() + "\n");
+  }
+
+  private String toJson() {
+    StringBuilder json = new StringBuilder("{");
+    synchronized (hashedNameByName) {
+      for (Map.Entry<String, String> nameAndHashedName : hashedNameByName.entrySet()) {
+        if (json.length() > 1) {
+          json.append(',');
+        }
+        json.append("\n  ").append(toJsonString(nameAndHashedName.getKey()))
+                .append(": ").append(toJsonString(nameAndHashedName.getValue()));
+      }
+    }
+    return json.append("\n}").toString();
+  }
+
+  static String toJsonString(String value) {
+    StringBuilder json = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < ' ' || c == '<') {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    return json.append('"').toString();
+  }
+}
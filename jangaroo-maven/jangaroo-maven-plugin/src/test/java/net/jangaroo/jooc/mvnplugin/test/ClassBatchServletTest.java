@@ -0,0 +1,115 @@
+package net.jangaroo.jooc.mvnplugin.test;
+
+import junit.framework.TestCase;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ClassBatchServletTest extends TestCase {
+
+  private final Map<String, byte[]> resources = new HashMap<String, byte[]>();
+  private final List<String> requestedResources = new ArrayList<String>();
+  private final ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+  private int errorStatus;
+  private ClassBatchServlet classBatchServlet;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    resources.put("/joo/classes/a/A.js", "// A\n".getBytes("UTF-8"));
+    resources.put("/joo/classes/b/B.js", new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '/', '/', ' ', 'B', '\n'});
+    final ServletContext servletContext = createProxy(ServletContext.class, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if ("getResourceAsStream".equals(method.getName())) {
+          String path = (String) args[0];
+          requestedResources.add(path);
+          byte[] resource = resources.get(path);
+          return resource == null ? null : new ByteArrayInputStream(resource);
+        }
+        return null;
+      }
+    });
+    classBatchServlet = new ClassBatchServlet() {
+      @Override
+      public ServletContext getServletContext() {
+        return servletContext;
+      }
+    };
+  }
+
+  public void testConcatenateClassesInRequestOrder() throws Exception {
+    get("b.B,a.A");
+    // the byte order mark of b/B.js is skipped:
+    assertEquals("// B\n\n// A\n\n", responseBody.toString("UTF-8"));
+    assertEquals(0, errorStatus);
+  }
+
+  public void testMissingClass() throws Exception {
+    get("a.A,x.Missing");
+    assertEquals("// A\n\njoo.classLoader.classLoadErrorHandler(\"x.Missing\", \"joo/classes/x/Missing.js\");\n",
+            responseBody.toString("UTF-8"));
+  }
+
+  public void testRejectInvalidClassName() throws Exception {
+    get("../x,a.A,a/../../WEB-INF/web");
+    assertEquals("joo.classLoader.classLoadErrorHandler(\"../x\", \"null\");\n" +
+            "// A\n\n" +
+            "joo.classLoader.classLoadErrorHandler(\"a/../../WEB-INF/web\", \"null\");\n",
+            responseBody.toString("UTF-8"));
+    // invalid class names must not even be looked up:
+    assertEquals(1, requestedResources.size());
+    assertEquals("/joo/classes/a/A.js", requestedResources.get(0));
+  }
+
+  public void testEscapeClassNameInErrorHandlerCall() throws Exception {
+    get("x\");alert(\"");
+    assertEquals("joo.classLoader.classLoadErrorHandler(\"x___alert__\", \"null\");\n", responseBody.toString("UTF-8"));
+  }
+
+  public void testMissingParameter() throws Exception {
+    get(null);
+    assertEquals(HttpServletResponse.SC_BAD_REQUEST, errorStatus);
+    assertEquals(0, responseBody.size());
+  }
+
+  private void get(final String classes) throws Exception {
+    HttpServletRequest request = createProxy(HttpServletRequest.class, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        return "getParameter".equals(method.getName()) && "classes".equals(args[0]) ? classes : null;
+      }
+    });
+    final ServletOutputStream outputStream = new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        responseBody.write(b);
+      }
+    };
+    HttpServletResponse response = createProxy(HttpServletResponse.class, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if ("getOutputStream".equals(method.getName())) {
+          return outputStream;
+        }
+        if ("sendError".equals(method.getName())) {
+          errorStatus = (Integer) args[0];
+        }
+        return null;
+      }
+    });
+    classBatchServlet.doGet(request, response);
+  }
+
+  private static <T> T createProxy(Class<T> type, InvocationHandler invocationHandler) {
+    return type.cast(Proxy.newProxyInstance(ClassBatchServletTest.class.getClassLoader(), new Class[]{type}, invocationHandler));
+  }
+}
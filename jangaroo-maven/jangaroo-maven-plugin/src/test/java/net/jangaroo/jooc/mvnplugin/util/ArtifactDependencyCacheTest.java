@@ -0,0 +1,98 @@
+package net.jangaroo.jooc.mvnplugin.util;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ArtifactDependencyCacheTest extends TestCase {
+
+  private File tempDir;
+  private File cacheFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    tempDir = File.createTempFile("ArtifactDependencyCacheTest", "");
+    assertTrue(tempDir.delete());
+    assertTrue(tempDir.mkdirs());
+    cacheFile = new File(new File(tempDir, "cache"), "artifact-dependencies.txt");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    deleteRecursively(tempDir);
+    super.tearDown();
+  }
+
+  public void testLoadMissingFile() throws IOException {
+    ArtifactDependencyCache artifactDependencyCache = ArtifactDependencyCache.load(cacheFile);
+    assertNull(artifactDependencyCache.getDependencies("g:a:1", "checksum"));
+    // nothing has been added, so nothing is written:
+    artifactDependencyCache.save();
+    assertFalse(cacheFile.exists());
+  }
+
+  public void testSaveAndLoad() throws IOException {
+    ArtifactDependencyCache artifactDependencyCache = ArtifactDependencyCache.load(cacheFile);
+    artifactDependencyCache.putDependencies("g:a:1", "checksum-a", Arrays.asList("g:b", "g:c"));
+    artifactDependencyCache.putDependencies("g:b:1", "checksum-b", Collections.<String>emptyList());
+    artifactDependencyCache.save();
+    assertTrue(cacheFile.exists());
+
+    ArtifactDependencyCache loadedArtifactDependencyCache = ArtifactDependencyCache.load(cacheFile);
+    assertEquals(Arrays.asList("g:b", "g:c"), loadedArtifactDependencyCache.getDependencies("g:a:1", "checksum-a"));
+    assertEquals(Collections.<String>emptyList(), loadedArtifactDependencyCache.getDependencies("g:b:1", "checksum-b"));
+    assertNull(loadedArtifactDependencyCache.getDependencies("g:c:1", "checksum-c"));
+  }
+
+  public void testInvalidateOnPomChange() throws IOException {
+    File pomFile = new File(tempDir, "a-1.pom");
+    FileUtils.fileWrite(pomFile, "UTF-8", "<project><artifactId>a</artifactId></project>");
+    String checksum = ArtifactDependencyCache.computeChecksum(pomFile);
+    ArtifactDependencyCache artifactDependencyCache = ArtifactDependencyCache.load(cacheFile);
+    artifactDependencyCache.putDependencies("g:a:1", checksum, Collections.singletonList("g:b"));
+    artifactDependencyCache.save();
+
+    FileUtils.fileWrite(pomFile, "UTF-8", "<project><artifactId>a</artifactId><dependencies/></project>");
+    String changedChecksum = ArtifactDependencyCache.computeChecksum(pomFile);
+    assertFalse(checksum.equals(changedChecksum));
+    artifactDependencyCache = ArtifactDependencyCache.load(cacheFile);
+    assertNull(artifactDependencyCache.getDependencies("g:a:1", changedChecksum));
+
+    // recording the dependencies for the changed POM replaces the outdated entry:
+    artifactDependencyCache.putDependencies("g:a:1", changedChecksum, Collections.<String>emptyList());
+    artifactDependencyCache.save();
+    artifactDependencyCache = ArtifactDependencyCache.load(cacheFile);
+    assertEquals(Collections.<String>emptyList(), artifactDependencyCache.getDependencies("g:a:1", changedChecksum));
+    assertNull(artifactDependencyCache.getDependencies("g:a:1", checksum));
+  }
+
+  public void testIgnoreIncompatibleOrTruncatedFile() throws IOException {
+    assertTrue(cacheFile.getParentFile().mkdirs());
+    FileUtils.fileWrite(cacheFile, "UTF-8", "# some other cache\ng:a:1\tchecksum-a\tg:b\n");
+    assertNull(ArtifactDependencyCache.load(cacheFile).getDependencies("g:a:1", "checksum-a"));
+
+    ArtifactDependencyCache artifactDependencyCache = ArtifactDependencyCache.load(cacheFile);
+    artifactDependencyCache.putDependencies("g:a:1", "checksum-a", Collections.singletonList("g:b"));
+    artifactDependencyCache.save();
+    // simulate a build killed while writing the last line:
+    FileUtils.fileWrite(cacheFile, "UTF-8", FileUtils.fileRead(cacheFile, "UTF-8") + "g:b:1\tchecksum-b");
+    artifactDependencyCache = ArtifactDependencyCache.load(cacheFile);
+    assertEquals(Collections.singletonList("g:b"), artifactDependencyCache.getDependencies("g:a:1", "checksum-a"));
+    assertNull(artifactDependencyCache.getDependencies("g:b:1", "checksum-b"));
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    assertTrue(file.delete());
+  }
+}
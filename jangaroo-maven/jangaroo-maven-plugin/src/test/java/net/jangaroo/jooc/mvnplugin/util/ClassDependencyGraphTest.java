@@ -0,0 +1,117 @@
+package net.jangaroo.jooc.mvnplugin.util;
+
+import junit.framework.TestCase;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ClassDependencyGraphTest extends TestCase {
+
+  private static final String CLASSES_JS =
+          "// runtime code before the first class\n" +
+          "// class a.Main\n" +
+          "joo.classLoader.prepare(\"package a\",\n" +
+          "  \"public class Main\",function($$private){return[];},[],[\"a.Helper\",\"b.Util\"], \"0.9\", \"0.9.1\");\n" +
+          "// class a.Helper\n" +
+          "joo.classLoader.prepare(\"package a\",\n" +
+          "  \"public class Helper\",function($$private){return[\n" +
+          "    function foo(){return [1, 2];}];},[],[\"b.Util\"], \"0.9\", \"0.9.1\"\n" +
+          "  // a trailing comment of the class source\n" +
+          "  /* and another one */);\n" +
+          "// class a.Unused\n" +
+          "joo.classLoader.prepare(\"package a\",\n" +
+          "  \"public class Unused\",function($$private){return[];},[],[\"c.Other\"], \"0.9\", \"0.9.1\");\n";
+  private static final String OTHER_CLASSES_JS =
+          "// class b.Util\n" +
+          "joo.classLoader.prepare(\"package b\",\n" +
+          "  \"public class Util\",function($$private){return[];},[],[], \"0.9\", \"0.9.1\");\n" +
+          "// class c.Other\n" +
+          "joo.classLoader.prepare(\"package c\",\n" +
+          "  \"public class Other\",function($$private){return[];},[],[], \"0.9\", \"0.9.1\");\n";
+
+  private RecordingLog log;
+  private ClassDependencyGraph classDependencyGraph;
+  private List<File> tempFiles = new ArrayList<File>();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    log = new RecordingLog();
+    classDependencyGraph = new ClassDependencyGraph(log);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File tempFile : tempFiles) {
+      assertTrue(tempFile.delete());
+    }
+    super.tearDown();
+  }
+
+  public void testAddClassesJsFile() throws IOException {
+    classDependencyGraph.addClassesJsFile(createClassesJsFile(CLASSES_JS));
+    assertEquals(new HashSet<String>(Arrays.asList("a.Helper", "b.Util")),
+            classDependencyGraph.computeReachableClasses(Collections.singletonList("a.Helper")));
+    assertTrue(log.warnings.isEmpty());
+  }
+
+  public void testComputeReachableClasses() throws IOException {
+    classDependencyGraph.addClassesJsFile(createClassesJsFile(CLASSES_JS));
+    classDependencyGraph.addClassesJsFile(createClassesJsFile(OTHER_CLASSES_JS));
+    assertEquals(new HashSet<String>(Arrays.asList("a.Main", "a.Helper", "b.Util")),
+            classDependencyGraph.computeReachableClasses(Collections.singletonList("a.Main")));
+    assertEquals(new HashSet<String>(Arrays.asList("a.Unused", "c.Other")),
+            classDependencyGraph.computeReachableClasses(Collections.singletonList("a.Unused")));
+    // unknown classes are reachable, but have no dependencies:
+    assertEquals(Collections.singleton("x.Unknown"),
+            classDependencyGraph.computeReachableClasses(Collections.singletonList("x.Unknown")));
+  }
+
+  public void testWarnAboutUnparsableClass() throws IOException {
+    classDependencyGraph.addClassesJsFile(createClassesJsFile(
+            "// class a.Broken\n" +
+            "joo.classLoader.prepare(\"package a\", \"public class Broken\",function($$private){return[];},[],[\"b.Util\"]);\n"));
+    assertEquals(Collections.singleton("a.Broken"),
+            classDependencyGraph.computeReachableClasses(Collections.singletonList("a.Broken")));
+    assertEquals(1, log.warnings.size());
+    assertTrue(log.warnings.get(0).contains("a.Broken"));
+  }
+
+  public void testCopyReachableClasses() throws IOException {
+    File classesJsFile = createClassesJsFile(CLASSES_JS);
+    Set<String> reachableClasses = new HashSet<String>(Arrays.asList("a.Main", "b.Util"));
+    StringWriter writer = new StringWriter();
+    assertEquals(2, ClassDependencyGraph.copyReachableClasses(classesJsFile, reachableClasses, writer));
+    String code = writer.toString();
+    assertTrue(code.startsWith("// runtime code before the first class\n// class a.Main\n"));
+    assertTrue(code.contains("\"public class Main\""));
+    assertFalse(code.contains("// class a.Helper"));
+    assertFalse(code.contains("function foo()"));
+    assertFalse(code.contains("\"public class Unused\""));
+  }
+
+  private File createClassesJsFile(String code) throws IOException {
+    File classesJsFile = File.createTempFile("ClassDependencyGraphTest", ".classes.js");
+    tempFiles.add(classesJsFile);
+    FileUtils.fileWrite(classesJsFile, "UTF-8", code);
+    return classesJsFile;
+  }
+
+  private static class RecordingLog extends SystemStreamLog {
+    private final List<String> warnings = new ArrayList<String>();
+
+    @Override
+    public void warn(CharSequence content) {
+      warnings.add(content.toString());
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package net.jangaroo.jooc.mvnplugin.util;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ScriptBundleTest extends TestCase {
+
+  private static final String BYTE_ORDER_MARK = "\uFEFF";
+
+  private List<File> tempFiles = new ArrayList<File>();
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File tempFile : tempFiles) {
+      assertTrue(tempFile.delete());
+    }
+    super.tearDown();
+  }
+
+  public void testWriteScriptsWithoutByteOrderMark() throws IOException {
+    ScriptBundle scriptBundle = new ScriptBundle();
+    scriptBundle.appendText("// bundle\n");
+    scriptBundle.appendFile(createFile("var a = '\u00e4';\n"));
+    scriptBundle.appendText("// ");
+    scriptBundle.appendText("between\n");
+    scriptBundle.appendFile(createFile("var b = '\u20ac';\n"));
+    assertEquals("// bundle\nvar a = '\u00e4';\n// between\nvar b = '\u20ac';\n", write(scriptBundle));
+  }
+
+  public void testSkipByteOrderMark() throws IOException {
+    ScriptBundle scriptBundle = new ScriptBundle();
+    scriptBundle.appendFile(createFile(BYTE_ORDER_MARK + "var a = '\u00e4';\n"));
+    scriptBundle.appendText("// between\n");
+    scriptBundle.appendFile(createFile(BYTE_ORDER_MARK + "var b;\n"));
+    assertEquals("var a = '\u00e4';\n// between\nvar b;\n", write(scriptBundle));
+  }
+
+  public void testWriteShortScripts() throws IOException {
+    ScriptBundle scriptBundle = new ScriptBundle();
+    scriptBundle.appendFile(createFile(""));
+    scriptBundle.appendFile(createFile(BYTE_ORDER_MARK));
+    scriptBundle.appendFile(createFile("x"));
+    scriptBundle.appendFile(createFile(BYTE_ORDER_MARK + "y"));
+    scriptBundle.appendText(";\n");
+    assertEquals("xy;\n", write(scriptBundle));
+  }
+
+  public void testAppendScriptBundle() throws IOException {
+    ScriptBundle moduleBundle = new ScriptBundle();
+    moduleBundle.appendText("// module\n");
+    moduleBundle.appendFile(createFile(BYTE_ORDER_MARK + "var a;\n"));
+    moduleBundle.appendText("// end of module\n");
+    ScriptBundle scriptBundle = new ScriptBundle();
+    scriptBundle.appendText("// bundle\n");
+    scriptBundle.append(moduleBundle);
+    scriptBundle.appendText("// end of bundle\n");
+    assertEquals("// bundle\n// module\nvar a;\n// end of module\n// end of bundle\n", write(scriptBundle));
+  }
+
+  public void testWriteToWriter() throws IOException {
+    ScriptBundle scriptBundle = new ScriptBundle();
+    scriptBundle.appendText("// bundle\n");
+    scriptBundle.appendFile(createFile(BYTE_ORDER_MARK + "var a = '\u00e4';\n"));
+    scriptBundle.appendFile(createFile("var b = '\u20ac';\n"));
+    StringWriter writer = new StringWriter();
+    scriptBundle.writeTo(writer);
+    assertEquals("// bundle\nvar a = '\u00e4';\nvar b = '\u20ac';\n", writer.toString());
+  }
+
+  private File createFile(String content) throws IOException {
+    File file = File.createTempFile("ScriptBundleTest", ".js");
+    tempFiles.add(file);
+    FileUtils.fileWrite(file, "UTF-8", content);
+    return file;
+  }
+
+  private String write(ScriptBundle scriptBundle) throws IOException {
+    File bundleFile = File.createTempFile("ScriptBundleTest", ".bundle.js");
+    tempFiles.add(bundleFile);
+    FileOutputStream outputStream = new FileOutputStream(bundleFile);
+    try {
+      scriptBundle.writeTo(outputStream.getChannel());
+    } finally {
+      outputStream.close();
+    }
+    return FileUtils.fileRead(bundleFile, "UTF-8");
+  }
+}
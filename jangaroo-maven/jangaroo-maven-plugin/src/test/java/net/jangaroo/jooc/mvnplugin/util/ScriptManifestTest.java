@@ -0,0 +1,85 @@
+package net.jangaroo.jooc.mvnplugin.util;
+
+import junit.framework.TestCase;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ScriptManifestTest extends TestCase {
+
+  private File webappDirectory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    webappDirectory = File.createTempFile("ScriptManifestTest", "");
+    assertTrue(webappDirectory.delete());
+    assertTrue(new File(webappDirectory, "joo").mkdirs());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    deleteRecursively(webappDirectory);
+    super.tearDown();
+  }
+
+  public void testComputeHashedName() {
+    assertEquals("joo/jangaroo-application.0123456789abcdef.js",
+            ScriptManifest.computeHashedName("joo/jangaroo-application.js", "0123456789abcdef"));
+    assertEquals("joo/jangaroo-application.module.0123.js",
+            ScriptManifest.computeHashedName("joo/jangaroo-application.module.js", "0123"));
+    assertEquals("joo/script.0123", ScriptManifest.computeHashedName("joo/script", "0123"));
+    // a dot in a directory name does not start an extension:
+    assertEquals("joo.d/script.0123", ScriptManifest.computeHashedName("joo.d/script", "0123"));
+  }
+
+  public void testToJsonString() {
+    assertEquals("\"joo/a.js\"", ScriptManifest.toJsonString("joo/a.js"));
+    assertEquals("\"a\\\"b\\\\c\"", ScriptManifest.toJsonString("a\"b\\c"));
+    assertEquals("\"a\\u000ab\\u0009c\"", ScriptManifest.toJsonString("a\nb\tc"));
+    // the manifest is embedded into scripts, which must not contain a closing script tag:
+    assertEquals("\"\\u003c/script>\"", ScriptManifest.toJsonString("</script>"));
+    assertEquals("\"\u00e4\u20ac\"", ScriptManifest.toJsonString("\u00e4\u20ac"));
+  }
+
+  public void testAddScript() throws IOException {
+    File scriptFile = new File(webappDirectory, "joo/jangaroo-application.js");
+    FileUtils.fileWrite(scriptFile, "UTF-8", "var app;\n");
+    ScriptManifest scriptManifest = new ScriptManifest(webappDirectory);
+    String hashedName = scriptManifest.addScript("joo/jangaroo-application.js", scriptFile);
+    assertTrue(hashedName, hashedName.matches("joo/jangaroo-application\\.[0-9a-f]{16}\\.js"));
+    assertEquals("var app;\n", FileUtils.fileRead(new File(webappDirectory, hashedName), "UTF-8"));
+    assertEquals(hashedName, scriptManifest.addScript("joo/jangaroo-application.js", scriptFile));
+
+    // the hash changes with the content:
+    FileUtils.fileWrite(scriptFile, "UTF-8", "var app2;\n");
+    String changedHashedName = scriptManifest.addScript("joo/jangaroo-application.js", scriptFile);
+    assertFalse(hashedName.equals(changedHashedName));
+    assertEquals("var app2;\n", FileUtils.fileRead(new File(webappDirectory, changedHashedName), "UTF-8"));
+  }
+
+  public void testWriteManifest() throws IOException {
+    File scriptFile = new File(webappDirectory, "joo/b.js");
+    FileUtils.fileWrite(scriptFile, "UTF-8", "var b;\n");
+    ScriptManifest scriptManifest = new ScriptManifest(webappDirectory);
+    String hashedNameB = scriptManifest.addScript("joo/b.js", scriptFile);
+    String hashedNameA = scriptManifest.addScript("joo/a.js", scriptFile);
+    String json = "{\n  \"joo/a.js\": \"" + hashedNameA + "\",\n  \"joo/b.js\": \"" + hashedNameB + "\"\n}";
+
+    File manifestFile = new File(webappDirectory, "joo/" + ScriptManifest.FILE_NAME);
+    scriptManifest.writeJson(manifestFile);
+    assertEquals(json + "\n", FileUtils.fileRead(manifestFile, "UTF-8"));
+    assertTrue(scriptManifest.toJavaScript().endsWith("joo.scriptManifest = " + json + ";\n"));
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    assertTrue(file.delete());
+  }
+}
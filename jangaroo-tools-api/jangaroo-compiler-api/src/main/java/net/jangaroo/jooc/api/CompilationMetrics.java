@@ -0,0 +1,84 @@
+package net.jangaroo.jooc.api;
+
+import java.util.Map;
+
+/**
+ * Where a Jooc compilation run spent its time and memory.
+ * All times are in nanoseconds. Phases of a compilation unit that trigger phases of other compilation units
+ * (e.g. analyzing a class imports and thus parses another class) are only charged for their own work.
+ * When compiling with several threads, the times of all threads add up, so that phase times may exceed the
+ * total (wall clock) time.
+ */
+public interface CompilationMetrics {
+
+  /**
+   * Reading and decoding source files and API stubs.
+   */
+  String PHASE_READ = "read";
+  /**
+   * Scanning and parsing, which cannot be measured separately, as the parser drives the scanner token by token.
+   */
+  String PHASE_PARSE = "parse";
+  String PHASE_SCOPE = "scope";
+  String PHASE_ANALYZE = "analyze";
+  /**
+   * Generating JavaScript code and source maps, not including writing them to files.
+   */
+  String PHASE_GENERATE_CODE = "generateCode";
+  /**
+   * Generating ActionScript API stubs and API declaration indexes, not including writing them to files.
+   */
+  String PHASE_GENERATE_API = "generateApi";
+  /**
+   * Writing generated JavaScript code, source maps, API stubs and API declaration indexes to files.
+   */
+  String PHASE_WRITE = "write";
+
+  /**
+   * @return the wall clock time of the whole compilation run
+   */
+  long getTotalTime();
+
+  /**
+   * @return the time spent in each phase, by phase name (one of the <code>PHASE_</code>... constants)
+   */
+  Map<String, Long> getPhaseTimes();
+
+  /**
+   * @return the time spent in all phases on each source file or API stub, by path
+   */
+  Map<String, Long> getFileTimes();
+
+  /**
+   * @return the number of compilation units compiled from source
+   */
+  int getCompiledUnitCount();
+
+  /**
+   * @return the number of compilation units that were not requested to be compiled, but had to be recompiled
+   *   because a class they depend on changed its public API, was deleted, or failed to compile before
+   */
+  int getRecompiledDependentUnitCount();
+
+  /**
+   * @return the number of compilation units parsed from class path API stubs
+   */
+  int getParsedClassPathUnitCount();
+
+  /**
+   * @return the number of class path compilation units reused from a previous compilation
+   */
+  int getCachedClassPathUnitCount();
+
+  /**
+   * @return the number of source path compilation units imported from declarations parsed by a previous
+   * compilation, because their source file has not changed since
+   */
+  int getCachedSourceUnitCount();
+
+  /**
+   * @return the maximum heap usage in bytes sampled at the start and at the end of each phase of the compilation
+   *   run; as the heap is shared by the whole JVM, this includes memory used by concurrent activities
+   */
+  long getPeakHeapUsage();
+}
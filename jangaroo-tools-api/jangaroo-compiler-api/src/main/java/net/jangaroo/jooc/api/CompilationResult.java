@@ -27,4 +27,10 @@ public interface CompilationResult {
    * @return the output file map
    */
   Map<File, File> getOutputFileMap();
+
+  /**
+   * Return timing and memory metrics of the compilation run.
+   * @return the compilation metrics, or null if the compilation did not get to compile anything
+   */
+  CompilationMetrics getMetrics();
 }
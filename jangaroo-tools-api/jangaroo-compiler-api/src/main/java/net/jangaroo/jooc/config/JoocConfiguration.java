@@ -17,14 +17,59 @@ public class JoocConfiguration extends FileLocations implements JoocOptions, Par
   private boolean help, version, verbose, enableAssertions;
   private PublicApiViolationsMode publicApiViolationsMode = PublicApiViolationsMode.WARN;
   private boolean excludeClassByDefault = false;
+  private boolean skipUnchangedOutput = false;
+  private boolean generateSourceMaps = false;
+  private boolean minify = false;
 
   private boolean allowDuplicateLocalVariables;
 
   private File apiOutputDirectory;
 
+  private File dependencyCacheFile;
+
+  private File metricsReportFile;
+
   private boolean mergeOutput = false;
   private String outputFileName;
 
+  private int threads = 1;
+
+  private int daemonPort;
+
+  private boolean watch;
+
+  public JoocConfiguration() {
+  }
+
+  /**
+   * Create a copy of the given configuration, so that the copy can be changed without affecting the original.
+   *
+   * @param config the configuration to copy
+   */
+  public JoocConfiguration(JoocConfiguration config) {
+    super(config);
+    semicolonInsertionMode = config.semicolonInsertionMode;
+    debugMode = config.debugMode;
+    help = config.help;
+    version = config.version;
+    verbose = config.verbose;
+    enableAssertions = config.enableAssertions;
+    publicApiViolationsMode = config.publicApiViolationsMode;
+    excludeClassByDefault = config.excludeClassByDefault;
+    skipUnchangedOutput = config.skipUnchangedOutput;
+    generateSourceMaps = config.generateSourceMaps;
+    minify = config.minify;
+    allowDuplicateLocalVariables = config.allowDuplicateLocalVariables;
+    apiOutputDirectory = config.apiOutputDirectory;
+    dependencyCacheFile = config.dependencyCacheFile;
+    metricsReportFile = config.metricsReportFile;
+    mergeOutput = config.mergeOutput;
+    outputFileName = config.outputFileName;
+    threads = config.threads;
+    daemonPort = config.daemonPort;
+    watch = config.watch;
+  }
+
   public SemicolonInsertionMode getSemicolonInsertionMode() {
     return semicolonInsertionMode;
   }
@@ -54,6 +99,35 @@ public class JoocConfiguration extends FileLocations implements JoocOptions, Par
     return new File(outputFileName);
   }
 
+  public int getThreads() {
+    return threads;
+  }
+
+  @Option(name="-threads", usage = "number of threads used to parse, analyze and generate code for compilation units in parallel; 0 means one thread per available processor, defaults to 1 (sequential)")
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  public int getDaemonPort() {
+    return daemonPort;
+  }
+
+  @Option(name="-daemon", metaVar = "PORT", usage = "delegate compilation to the compiler daemon listening on the given local port, which keeps " +
+    "parsed class path classes between compilations; compiles in-process if no daemon is running")
+  public void setDaemonPort(int daemonPort) {
+    this.daemonPort = daemonPort;
+  }
+
+  public boolean isWatch() {
+    return watch;
+  }
+
+  @Option(name="-w", aliases = "--watch", usage = "keep running and recompile source files of the source path as soon as they change, " +
+    "as well as source files depending on them; implies incremental compilation")
+  public void setWatch(boolean watch) {
+    this.watch = watch;
+  }
+
   public DebugMode getDebugMode() {
     return debugMode;
   }
@@ -77,6 +151,10 @@ public class JoocConfiguration extends FileLocations implements JoocOptions, Par
     return apiOutputDirectory != null;
   }
 
+  public boolean isIncremental() {
+    return dependencyCacheFile != null;
+  }
+
   @Override
   public PublicApiViolationsMode getPublicApiViolationsMode() {
     return publicApiViolationsMode;
@@ -96,6 +174,35 @@ public class JoocConfiguration extends FileLocations implements JoocOptions, Par
     this.excludeClassByDefault = excludeClassByDefault;
   }
 
+  public boolean isSkipUnchangedOutput() {
+    return skipUnchangedOutput;
+  }
+
+  @Option(name="-su", aliases = "--skipUnchangedOutput", usage = "Whether to leave output files untouched if their content did not change, preserving their timestamps; defaults to false")
+  public void setSkipUnchangedOutput(boolean skipUnchangedOutput) {
+    this.skipUnchangedOutput = skipUnchangedOutput;
+  }
+
+  public boolean isGenerateSourceMaps() {
+    return generateSourceMaps;
+  }
+
+  @Option(name="-sourcemap", aliases = "--generateSourceMaps", usage = "Whether to write a source map next to each generated JavaScript file, " +
+    "mapping generated code to the ActionScript source code; defaults to false")
+  public void setGenerateSourceMaps(boolean generateSourceMaps) {
+    this.generateSourceMaps = generateSourceMaps;
+  }
+
+  public boolean isMinify() {
+    return minify;
+  }
+
+  @Option(name="-minify", aliases = "--minify", usage = "Whether to generate minified production code, without unneeded " +
+    "whitespace and with short names for local variables and parameters; defaults to false")
+  public void setMinify(boolean minify) {
+    this.minify = minify;
+  }
+
   public boolean isHelp() {
     return help;
   }
@@ -141,4 +248,24 @@ public class JoocConfiguration extends FileLocations implements JoocOptions, Par
     this.apiOutputDirectory = apiOutputDirectory;
   }
 
+  public File getDependencyCacheFile() {
+    return dependencyCacheFile;
+  }
+
+  @Option(name="-dc", aliases = "--dependencyCache", usage = "file where to keep the dependencies and public API fingerprints of all compiled classes; " +
+    "if set, all classes depending on a class whose public API changed are recompiled, too")
+  public void setDependencyCacheFile(final File dependencyCacheFile) {
+    this.dependencyCacheFile = dependencyCacheFile;
+  }
+
+  public File getMetricsReportFile() {
+    return metricsReportFile;
+  }
+
+  @Option(name="-metrics", aliases = "--metricsReport", usage = "file where to write a JSON report of the time spent in each compiler phase " +
+    "and on each source file, the number of parsed and cached class path classes, and the peak heap usage")
+  public void setMetricsReportFile(final File metricsReportFile) {
+    this.metricsReportFile = metricsReportFile;
+  }
+
 }
@@ -18,4 +18,23 @@ public interface JoocOptions {
    * annotation.
    */
   boolean isExcludeClassByDefault();
+
+  /**
+   * If true, the compiler does not rewrite output files whose content did not change,
+   * so that their timestamps are preserved.
+   */
+  boolean isSkipUnchangedOutput();
+
+  /**
+   * If true, the compiler writes a source map next to each generated JavaScript file, mapping the generated code
+   * back to the ActionScript source code, so that even code generated without debug mode can be debugged.
+   */
+  boolean isGenerateSourceMaps();
+
+  /**
+   * If true, the compiler generates production code that is as small as possible: all whitespace and comments that
+   * are not needed are stripped, and local variables and parameters are renamed to short names.
+   * Debug modes that keep source code or line numbers are ignored.
+   */
+  boolean isMinify();
  }
@@ -5,6 +5,7 @@ import org.kohsuke.args4j.Option;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -12,7 +13,7 @@ import java.util.List;
 /**
  * A description of various file paths in the build environment.
  */
-public class FileLocations {
+public class FileLocations implements Serializable {
 
   // all paths from which source files are read; used to resolve the package of each file
   private List<File> sourcePath = new ArrayList<File>(); // may contain directories which are source roots
@@ -23,6 +24,21 @@ public class FileLocations {
   // the directory into which output files are generated
   private File outputDirectory;
 
+  public FileLocations() {
+  }
+
+  /**
+   * Create a copy of the given file locations, so that the copy can be changed without affecting the original.
+   *
+   * @param fileLocations the file locations to copy
+   */
+  public FileLocations(FileLocations fileLocations) {
+    sourcePath = Collections.unmodifiableList(new ArrayList<File>(fileLocations.sourcePath));
+    sourceFiles = new ArrayList<File>(fileLocations.sourceFiles);
+    classPath = Collections.unmodifiableList(new ArrayList<File>(fileLocations.classPath));
+    outputDirectory = fileLocations.outputDirectory;
+  }
+
   public File findSourceDir(final File file) throws IOException {
     File canonicalFile = file.getCanonicalFile();
     for (File sourceDir : getSourcePath()) {
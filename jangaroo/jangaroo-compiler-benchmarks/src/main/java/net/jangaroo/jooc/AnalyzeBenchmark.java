@@ -0,0 +1,57 @@
+package net.jangaroo.jooc;
+
+import net.jangaroo.jooc.ast.CompilationUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link CompilationUnit#analyze} of the whole corpus. As analysis annotates the AST, every invocation
+ * needs freshly parsed and scoped compilation units, which are created outside of the measurement.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class AnalyzeBenchmark {
+
+  @State(Scope.Thread)
+  public static class ScopedCorpus {
+    private Jooc jooc;
+    private List<CompilationUnit> units;
+
+    @Setup(Level.Invocation)
+    public void scope(CorpusState state) throws IOException {
+      SyntheticCorpus corpus = state.getCorpus();
+      jooc = corpus.createCompiler(corpus.createConfiguration(state.createOutputDirectory()));
+      units = corpus.importAll(jooc);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+      jooc.tearDown();
+    }
+  }
+
+  @Benchmark
+  public List<CompilationUnit> analyze(ScopedCorpus scopedCorpus) {
+    for (CompilationUnit unit : scopedCorpus.units) {
+      unit.analyze(null);
+    }
+    return scopedCorpus.units;
+  }
+}
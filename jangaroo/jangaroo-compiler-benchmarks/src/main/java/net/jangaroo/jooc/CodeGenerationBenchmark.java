@@ -0,0 +1,89 @@
+package net.jangaroo.jooc;
+
+import net.jangaroo.jooc.ast.CompilationUnit;
+import net.jangaroo.jooc.backend.ActionScriptCodeGeneratingModelVisitor;
+import net.jangaroo.jooc.backend.ApiModelGenerator;
+import net.jangaroo.jooc.backend.JsCodeGenerator;
+import net.jangaroo.jooc.config.DebugMode;
+import net.jangaroo.jooc.config.JoocConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures generating JavaScript code (JsCodeGenerator and JsWriter) and ActionScript API stubs
+ * (ApiModelGenerator) for the whole corpus, written to memory. JavaScript code is generated in all debug modes,
+ * as each of them takes a different path through JsWriter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CodeGenerationBenchmark {
+
+  @State(Scope.Thread)
+  public static class AnalyzedCorpus {
+    @Param({"SOURCE", "LINES", "NONE"})
+    public DebugMode debugMode;
+
+    private JoocConfiguration config;
+    private Jooc jooc;
+    private List<CompilationUnit> units;
+
+    @Setup(Level.Trial)
+    public void analyze(CorpusState state) throws IOException {
+      SyntheticCorpus corpus = state.getCorpus();
+      config = corpus.createConfiguration(state.createOutputDirectory());
+      config.setDebugMode(debugMode);
+      jooc = corpus.createCompiler(config);
+      units = corpus.importAll(jooc);
+      for (CompilationUnit unit : units) {
+        unit.analyze(null);
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      jooc.tearDown();
+    }
+  }
+
+  @Benchmark
+  public void generateJavaScript(AnalyzedCorpus analyzedCorpus, Blackhole blackhole) throws IOException {
+    for (CompilationUnit unit : analyzedCorpus.units) {
+      StringWriter code = new StringWriter();
+      JsWriter out = new JsWriter(code);
+      out.setOptions(analyzedCorpus.config);
+      unit.visit(new JsCodeGenerator(out));
+      out.close();
+      blackhole.consume(code.getBuffer());
+    }
+  }
+
+  @Benchmark
+  public void generateApiStubs(AnalyzedCorpus analyzedCorpus, Blackhole blackhole) throws IOException {
+    ApiModelGenerator apiModelGenerator = new ApiModelGenerator(false);
+    for (CompilationUnit unit : analyzedCorpus.units) {
+      StringWriter apiStub = new StringWriter();
+      apiModelGenerator.generateModel(unit).visit(new ActionScriptCodeGeneratingModelVisitor(apiStub));
+      blackhole.consume(apiStub.getBuffer());
+    }
+  }
+}
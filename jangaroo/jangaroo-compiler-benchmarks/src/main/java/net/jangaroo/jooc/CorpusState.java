@@ -0,0 +1,59 @@
+package net.jangaroo.jooc;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The synthetic corpus shared by all benchmarks, generated once per trial into a temporary directory.
+ * Its size can be set on the JMH command line, e.g. <code>-p classCount=5000</code>.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+
+  @Param({"100", "1000"})
+  public int classCount;
+
+  private File tempDir;
+  private SyntheticCorpus corpus;
+
+  @Setup(Level.Trial)
+  public void generateCorpus() throws IOException {
+    tempDir = createTempDir("jooc-benchmark");
+    corpus = new SyntheticCorpus(new File(tempDir, "src"), classCount);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteCorpus() {
+    SyntheticCorpus.delete(tempDir);
+  }
+
+  public SyntheticCorpus getCorpus() {
+    return corpus;
+  }
+
+  /**
+   * @return a new, empty directory inside the temporary directory of this trial
+   */
+  public File createOutputDirectory() throws IOException {
+    return createTempDir(tempDir, "out");
+  }
+
+  private static File createTempDir(String prefix) throws IOException {
+    return createTempDir(null, prefix);
+  }
+
+  private static File createTempDir(File parentDir, String prefix) throws IOException {
+    File dir = File.createTempFile(prefix, "", parentDir);
+    if (!dir.delete() || !dir.mkdirs()) {
+      throw new IOException("cannot create temporary directory " + dir);
+    }
+    return dir;
+  }
+}
@@ -0,0 +1,58 @@
+package net.jangaroo.jooc;
+
+import net.jangaroo.jooc.api.CompilationResult;
+import net.jangaroo.jooc.config.JoocConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a complete compilation of the corpus, including class path loading, output files and API stubs,
+ * as done by the Maven plugin and the Ant task.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class JoocRunBenchmark {
+
+  /**
+   * The number of compiler threads, where 0 means one thread per available processor.
+   */
+  @Param({"1", "0"})
+  public int threads;
+
+  private JoocConfiguration config;
+
+  @Setup(Level.Invocation)
+  public void configure(CorpusState state) throws IOException {
+    File outputDirectory = state.createOutputDirectory();
+    config = state.getCorpus().createConfiguration(new File(outputDirectory, "js"));
+    config.setApiOutputDirectory(new File(outputDirectory, "joo-api"));
+    config.setThreads(threads);
+  }
+
+  @Benchmark
+  public CompilationResult run() {
+    CompilationResult result = new Jooc(config, new SyntheticCorpus.FailingCompileLog()).run();
+    if (result.getResultCode() != CompilationResult.RESULT_CODE_OK) {
+      throw new IllegalStateException("Compilation of benchmark corpus failed: " + Jooc.getResultCodeDescription(result.getResultCode()));
+    }
+    return result;
+  }
+}
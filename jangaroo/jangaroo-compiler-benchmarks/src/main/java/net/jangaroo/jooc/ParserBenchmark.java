@@ -0,0 +1,35 @@
+package net.jangaroo.jooc;
+
+import net.jangaroo.jooc.config.SemicolonInsertionMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scanning and parsing the whole corpus from memory into ASTs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ParserBenchmark {
+
+  @Benchmark
+  public void parse(CorpusState state, Blackhole blackhole) throws Exception {
+    for (String source : state.getCorpus().getSources()) {
+      JooParser parser = new JooParser(new Scanner(new StringReader(source)));
+      parser.setCompileLog(new SyntheticCorpus.FailingCompileLog());
+      parser.setSemicolonInsertionMode(SemicolonInsertionMode.QUIRKS);
+      blackhole.consume(parser.parse().value);
+    }
+  }
+}
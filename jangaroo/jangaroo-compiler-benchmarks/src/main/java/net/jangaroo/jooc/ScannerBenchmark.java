@@ -0,0 +1,36 @@
+package net.jangaroo.jooc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures tokenizing the whole corpus from memory, without parsing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ScannerBenchmark {
+
+  @Benchmark
+  public void scan(CorpusState state, Blackhole blackhole) throws Exception {
+    for (String source : state.getCorpus().getSources()) {
+      Scanner scanner = new Scanner(new StringReader(source));
+      java_cup.runtime.Symbol token;
+      do {
+        token = scanner.next_token();
+        blackhole.consume(token);
+      } while (token.sym != sym.EOF);
+    }
+  }
+}
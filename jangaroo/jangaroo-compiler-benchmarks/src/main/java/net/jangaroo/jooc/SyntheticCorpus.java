@@ -0,0 +1,236 @@
+package net.jangaroo.jooc;
+
+import net.jangaroo.jooc.ast.CompilationUnit;
+import net.jangaroo.jooc.config.DebugMode;
+import net.jangaroo.jooc.config.JoocConfiguration;
+import net.jangaroo.jooc.input.FileInputSource;
+import net.jangaroo.jooc.input.PathInputSource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A generated ActionScript code base the compiler benchmarks operate on. Classes are spread over packages of
+ * {@link #CLASSES_PER_PACKAGE} classes each and form inheritance chains of the same length, so that the corpus
+ * exercises imports, member lookup along super classes, and typical statements and expressions.
+ */
+public class SyntheticCorpus {
+
+  public static final int CLASSES_PER_PACKAGE = 10;
+
+  private final File sourceDir;
+  private final List<File> sourceFiles = new ArrayList<File>();
+  private final List<String> sources = new ArrayList<String>();
+
+  /**
+   * Generate a corpus of the given number of classes into the given directory.
+   *
+   * @param sourceDir the source directory to generate the classes into
+   * @param classCount the number of classes to generate
+   * @throws IOException if a source file cannot be written
+   */
+  public SyntheticCorpus(File sourceDir, int classCount) throws IOException {
+    this.sourceDir = sourceDir;
+    for (int i = 0; i < classCount; i++) {
+      File sourceFile = new File(sourceDir, getPackageName(i).replace('.', File.separatorChar)
+              + File.separator + getClassName(i) + Jooc.AS_SUFFIX);
+      String source = generateClass(i);
+      write(sourceFile, source);
+      sourceFiles.add(sourceFile);
+      sources.add(source);
+    }
+  }
+
+  public File getSourceDir() {
+    return sourceDir;
+  }
+
+  public List<File> getSourceFiles() {
+    return Collections.unmodifiableList(sourceFiles);
+  }
+
+  /**
+   * @return the source code of all classes, in the order of {@link #getSourceFiles()}
+   */
+  public List<String> getSources() {
+    return Collections.unmodifiableList(sources);
+  }
+
+  /**
+   * Create a compiler configuration that compiles the whole corpus against the Jangaroo runtime.
+   *
+   * @param outputDirectory the directory to write JavaScript code to
+   * @return the configuration
+   * @throws IOException if the source directory cannot be resolved
+   */
+  public JoocConfiguration createConfiguration(File outputDirectory) throws IOException {
+    JoocConfiguration config = new JoocConfiguration();
+    config.setSourcePath(Collections.singletonList(sourceDir));
+    config.setClassPath(Collections.singletonList(findRuntimeApi()));
+    config.setDebugMode(DebugMode.SOURCE);
+    config.setOutputDirectory(outputDirectory);
+    for (File sourceFile : sourceFiles) {
+      config.addSourceFile(sourceFile);
+    }
+    return config;
+  }
+
+  /**
+   * Create a compiler that is set up to parse and scope the corpus, but has not compiled anything yet.
+   */
+  public Jooc createCompiler(JoocConfiguration config) throws IOException {
+    Jooc jooc = new Jooc(config, new FailingCompileLog());
+    jooc.setUp(PathInputSource.fromFiles(config.getSourcePath(), new String[]{""}, true),
+            PathInputSource.fromFiles(config.getClassPath(), new String[]{"", JangarooParser.JOO_API_IN_JAR_DIRECTORY_PREFIX}, false));
+    return jooc;
+  }
+
+  /**
+   * Parse and scope all classes of the corpus with the given compiler.
+   *
+   * @return the scoped compilation units, in the order of {@link #getSourceFiles()}
+   */
+  public List<CompilationUnit> importAll(Jooc jooc) {
+    List<CompilationUnit> units = new ArrayList<CompilationUnit>(sourceFiles.size());
+    for (File sourceFile : sourceFiles) {
+      units.add(jooc.importSource(new FileInputSource(sourceDir, sourceFile, true)));
+    }
+    return units;
+  }
+
+  /**
+   * The API stubs of the ActionScript built-in classes are provided by the Jangaroo runtime, either as a jar
+   * or, when running from an IDE, as a directory.
+   */
+  static File findRuntimeApi() {
+    URL objectApi = SyntheticCorpus.class.getClassLoader().getResource(JangarooParser.JOO_API_IN_JAR_DIRECTORY_PREFIX + "Object.as");
+    if (objectApi == null) {
+      throw new IllegalStateException("Jangaroo runtime not found in class path.");
+    }
+    try {
+      String path = URLDecoder.decode(objectApi.getPath(), "UTF-8");
+      if ("jar".equals(objectApi.getProtocol())) {
+        return new File(path.substring("file:".length(), path.indexOf('!')));
+      }
+      return new File(path).getParentFile();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String getPackageName(int index) {
+    return "benchmark.p" + index / CLASSES_PER_PACKAGE;
+  }
+
+  private static String getClassName(int index) {
+    return "C" + index;
+  }
+
+  private static String generateClass(int index) {
+    boolean hasSuperClass = index % CLASSES_PER_PACKAGE > 0;
+    String className = getClassName(index);
+    String superClassName = getClassName(index - 1);
+    // the last class of the previous package is used, but not extended:
+    boolean usesOtherPackage = index >= CLASSES_PER_PACKAGE;
+    int usedIndex = usesOtherPackage ? index - index % CLASSES_PER_PACKAGE - 1 : index;
+    String usedClassName = getClassName(usedIndex);
+    StringBuilder code = new StringBuilder();
+    code.append("package ").append(getPackageName(index)).append(" {\n\n");
+    if (usesOtherPackage) {
+      code.append("import ").append(getPackageName(usedIndex)).append('.').append(usedClassName).append(";\n\n");
+    }
+    code.append("/**\n")
+        .append(" * Synthetic class #").append(index).append(" of the compiler benchmark corpus.\n")
+        .append(" */\n")
+        .append("public class ").append(className);
+    if (hasSuperClass) {
+      code.append(" extends ").append(superClassName);
+    }
+    code.append(" {\n\n")
+        .append("  public static const NAME").append(index).append(":String = \"").append(className).append("\";\n\n")
+        .append("  private var count").append(index).append(":int = 0;\n")
+        .append("  private var items").append(index).append(":Array = [];\n")
+        .append("  protected var label").append(index).append(":String;\n\n")
+        .append("  public function ").append(className).append("(label:String = \"").append(className).append("\") {\n");
+    if (hasSuperClass) {
+      code.append("    super(label);\n");
+    }
+    code.append("    label").append(index).append(" = label;\n")
+        .append("  }\n\n")
+        .append("  public function add").append(index).append("(value:int):int {\n")
+        .append("    for (var i:int = 0; i < value; i++) {\n")
+        .append("      count").append(index).append(" += i % 3 == 0 ? i : -1;\n")
+        .append("      items").append(index).append(".push({index: i, name: NAME").append(index).append(" + i});\n")
+        .append("    }\n")
+        .append("    return count").append(index).append(";\n")
+        .append("  }\n\n")
+        .append("  public function describe").append(index).append("(other:").append(usedClassName).append("):String {\n")
+        .append("    var result:String = label").append(index).append(" + \":\" + count").append(index).append(";\n")
+        .append("    if (other != null && other !== this) {\n")
+        .append("      result += \"/\" + other.describe").append(usedIndex).append("(null);\n")
+        .append("    }\n");
+    if (hasSuperClass) {
+      code.append("    result += \"<\" + describe").append(index - 1).append("(null) + add").append(index - 1).append("(2);\n");
+    }
+    code.append("    return result.toUpperCase();\n")
+        .append("  }\n\n")
+        .append("  public static function create(labels:Array):Array {\n")
+        .append("    return labels.map(function(label:String, index:int, all:Array):").append(className).append(" {\n")
+        .append("      return new ").append(className).append("(label + index);\n")
+        .append("    });\n")
+        .append("  }\n")
+        .append("}\n")
+        .append("}\n");
+    return code.toString();
+  }
+
+  private static void write(File file, String content) throws IOException {
+    File dir = file.getParentFile();
+    if (!dir.exists() && !dir.mkdirs()) {
+      throw new IOException("cannot create directory " + dir);
+    }
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write(content);
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Delete the given directory including all of its contents.
+   */
+  static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  /**
+   * Benchmarks must not run into compile errors, as this would distort the results.
+   */
+  static class FailingCompileLog extends AbstractCompileLog {
+    @Override
+    protected void doLogError(String msg) {
+      throw new IllegalStateException("Compile error in benchmark corpus: " + msg);
+    }
+
+    @Override
+    public void warning(String msg) {
+      // ignore
+    }
+  }
+}
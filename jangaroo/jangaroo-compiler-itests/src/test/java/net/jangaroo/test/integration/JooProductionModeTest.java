@@ -0,0 +1,26 @@
+package net.jangaroo.test.integration;
+
+/**
+ * Runs all {@link JooTest} test cases against code compiled without keeping the source, which uses compact
+ * member declarations, and loads the Jangaroo runtime in production mode, so that the bootstrap class loader
+ * has to cope with the system classes as they are shipped in the runtime module's classes script.
+ */
+public class JooProductionModeTest extends JooTest {
+
+  private static final String DESTINATION_PROPERTY = "net.jangaroo.jooc.test.destination";
+  private static final String LINES_DESTINATION_PROPERTY = "net.jangaroo.jooc.test.destination.lines";
+
+  public JooProductionModeTest(String name) throws Exception {
+    super(name);
+  }
+
+  @Override
+  protected String getProperty(String name, String defaultValue) {
+    return super.getProperty(DESTINATION_PROPERTY.equals(name) ? LINES_DESTINATION_PROPERTY : name, defaultValue);
+  }
+
+  @Override
+  protected boolean isRuntimeDebugMode() {
+    return false;
+  }
+}
@@ -170,6 +170,16 @@ public abstract class JooRuntimeTestCase extends JooTestCase {
     return builder.toString();
   }
 
+  /**
+   * Whether to load the Jangaroo runtime in debug mode, i.e. each system class from its own script, or in
+   * production mode, i.e. all system classes from the runtime module's classes script.
+   *
+   * @return true to load the runtime in debug mode
+   */
+  protected boolean isRuntimeDebugMode() {
+    return true;
+  }
+
   protected void setUp() throws Exception {
     super.setUp();
     global = new Global();
@@ -179,7 +189,7 @@ public abstract class JooRuntimeTestCase extends JooTestCase {
     global.defineFunctionProperties(new String[]{"setTimeout"},  Global.class, ScriptableObject.EMPTY);
     global.defineProperty("window", global, ScriptableObject.EMPTY);
     global.defineProperty("joo", Global.class, ScriptableObject.EMPTY);
-    global.joo.defineProperty("debug", true, ScriptableObject.EMPTY);
+    global.joo.defineProperty("debug", isRuntimeDebugMode(), ScriptableObject.EMPTY);
     global.joo.defineProperty("baseUrl", "", ScriptableObject.EMPTY);
     global.joo.defineFunctionProperties(new String[]{"trace", "_loadScript", "loadScriptAsync"},  Joo.class, ScriptableObject.EMPTY);
     global.joo.setJsDir(destinationDir);
@@ -0,0 +1,685 @@
+package net.jangaroo.jooc;
+
+import net.jangaroo.jooc.ast.Annotation;
+import net.jangaroo.jooc.ast.AnnotationParameter;
+import net.jangaroo.jooc.ast.AstNode;
+import net.jangaroo.jooc.ast.BlockStatement;
+import net.jangaroo.jooc.ast.ClassBody;
+import net.jangaroo.jooc.ast.ClassDeclaration;
+import net.jangaroo.jooc.ast.CommaSeparatedList;
+import net.jangaroo.jooc.ast.CompilationUnit;
+import net.jangaroo.jooc.ast.Directive;
+import net.jangaroo.jooc.ast.Expr;
+import net.jangaroo.jooc.ast.Extends;
+import net.jangaroo.jooc.ast.FunctionDeclaration;
+import net.jangaroo.jooc.ast.Ide;
+import net.jangaroo.jooc.ast.IdeDeclaration;
+import net.jangaroo.jooc.ast.IdeExpr;
+import net.jangaroo.jooc.ast.IdeWithTypeParam;
+import net.jangaroo.jooc.ast.Implements;
+import net.jangaroo.jooc.ast.ImportDirective;
+import net.jangaroo.jooc.ast.Initializer;
+import net.jangaroo.jooc.ast.LiteralExpr;
+import net.jangaroo.jooc.ast.NamespaceDeclaration;
+import net.jangaroo.jooc.ast.PackageDeclaration;
+import net.jangaroo.jooc.ast.Parameter;
+import net.jangaroo.jooc.ast.Parameters;
+import net.jangaroo.jooc.ast.PrefixOpExpr;
+import net.jangaroo.jooc.ast.QualifiedIde;
+import net.jangaroo.jooc.ast.Type;
+import net.jangaroo.jooc.ast.TypeRelation;
+import net.jangaroo.jooc.ast.VariableDeclaration;
+import net.jangaroo.jooc.input.ZipEntryInputSource;
+import net.jangaroo.jooc.model.AnnotatedModel;
+import net.jangaroo.jooc.model.AnnotationModel;
+import net.jangaroo.jooc.model.AnnotationPropertyModel;
+import net.jangaroo.jooc.model.ClassModel;
+import net.jangaroo.jooc.model.CompilationUnitModel;
+import net.jangaroo.jooc.model.FieldModel;
+import net.jangaroo.jooc.model.MemberModel;
+import net.jangaroo.jooc.model.MethodModel;
+import net.jangaroo.jooc.model.MethodType;
+import net.jangaroo.jooc.model.NamedModel;
+import net.jangaroo.jooc.model.NamespaceModel;
+import net.jangaroo.jooc.model.NamespacedModel;
+import net.jangaroo.jooc.model.ParamModel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A compact, binary index of the declarations of an ActionScript API stub, stored next to the stub
+ * (<code>Foo.as</code> &rarr; <code>Foo.asi</code>) and thus packaged into the <code>META-INF/joo-api</code>
+ * directory of Jangaroo jars.
+ * <p>The index is written from the same API model the stub is generated from and contains only API-level data:
+ * the package, imports, the primary declaration with its annotations, modifiers, super types and members, and
+ * the types, parameters and compile-time constant values of all members. ASDoc and method bodies are not stored.
+ * When a class is imported from a jar, the compiler creates the declarations of the stub from its index,
+ * so that the stub is neither scanned nor parsed.</p>
+ * <p>The index records its format version and the CRC-32 of the stub it has been created from, so that indexes
+ * in another format and outdated indexes are ignored and the compiler falls back to parsing the stub.</p>
+ * <p>The {@link SourceUnitCache} keeps indexes of source files in memory only. These are created from a model
+ * including non-public members and all imports, so that they declare everything a compilation unit needs
+ * to be resolved like the parsed source file.</p>
+ */
+public final class ApiDeclarationIndex {
+
+  public static final String SUFFIX = ".asi";
+
+  private static final int MAGIC = 0x4a4f4f49; // "JOOI"
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int KIND_CLASS = 1;
+  private static final int KIND_FUNCTION = 2;
+  private static final int KIND_VARIABLE = 3;
+  private static final int KIND_NAMESPACE = 4;
+
+  private static final int FLAG_INTERFACE = 1;
+  private static final int FLAG_FINAL = 1 << 1;
+  private static final int FLAG_DYNAMIC = 1 << 2;
+  private static final int FLAG_STATIC = 1 << 3;
+  private static final int FLAG_CONST = 1 << 4;
+  private static final int FLAG_OVERRIDE = 1 << 5;
+  private static final int FLAG_GETTER = 1 << 6;
+  private static final int FLAG_SETTER = 1 << 7;
+  private static final int FLAG_REST = 1 << 8;
+
+  private final CompilationUnitModel compilationUnitModel;
+
+  private ApiDeclarationIndex(CompilationUnitModel compilationUnitModel) {
+    this.compilationUnitModel = compilationUnitModel;
+  }
+
+  public static File getIndexFile(File apiStubFile) {
+    String path = apiStubFile.getPath();
+    if (path.endsWith(Jooc.AS_SUFFIX)) {
+      path = path.substring(0, path.length() - Jooc.AS_SUFFIX.length());
+    }
+    return new File(path + SUFFIX);
+  }
+
+  /**
+   * Write the declarations of the given API model to the given index file.
+   * If the API model contains a declaration the index cannot represent, no index is written, so that consumers
+   * fall back to parsing the stub.
+   *
+   * @param compilationUnitModel the API model the stub has been generated from
+   * @param apiStub the source code of the API stub
+   * @param indexFile the index file to write
+   * @throws IOException if writing the index file fails
+   */
+  public static void write(CompilationUnitModel compilationUnitModel, String apiStub, File indexFile) throws IOException {
+    // make sure that consumers are able to create the declarations from the index:
+    if (create(compilationUnitModel, indexFile.getPath()) == null) {
+      //noinspection ResultOfMethodCallIgnored
+      indexFile.delete(); // NOSONAR never keep an outdated index
+      return;
+    }
+    CRC32 crc = new CRC32();
+    crc.update(apiStub.getBytes("UTF-8"));
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(crc.getValue());
+      out.writeUTF(compilationUnitModel.getPackage());
+      writeStrings(out, compilationUnitModel.getImports());
+      writeDeclaration(out, compilationUnitModel.getPrimaryDeclaration());
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Create an in-memory index of the declarations of the given model.
+   *
+   * @param compilationUnitModel the model of the compilation unit
+   * @param fileName the path of the source file the model has been generated from
+   * @return the index, or null if the model contains a declaration the index cannot represent
+   */
+  public static ApiDeclarationIndex create(CompilationUnitModel compilationUnitModel, String fileName) {
+    ApiDeclarationIndex index = new ApiDeclarationIndex(compilationUnitModel);
+    try {
+      index.createCompilationUnit(fileName);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    return index;
+  }
+
+  /**
+   * Read the index of the given API stub from a jar.
+   *
+   * @param apiStub the API stub in a jar
+   * @return the index, or null if the jar contains no up-to-date index of the given API stub
+   */
+  public static ApiDeclarationIndex read(ZipEntryInputSource apiStub) {
+    ZipEntryInputSource index = apiStub.getSibling(apiStub.getName().replaceFirst("\\.as$", SUFFIX));
+    if (index == null) {
+      return null;
+    }
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(index.getInputStream()));
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readLong() != apiStub.getCrc()) {
+          return null;
+        }
+        CompilationUnitModel compilationUnitModel = new CompilationUnitModel(in.readUTF());
+        for (String anImport : readStrings(in)) {
+          compilationUnitModel.addImport(anImport);
+        }
+        compilationUnitModel.setPrimaryDeclaration(readDeclaration(in));
+        return new ApiDeclarationIndex(compilationUnitModel);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      // corrupt index: fall back to parsing the API stub
+      return null;
+    }
+  }
+
+  /**
+   * Create the declarations of the indexed API stub as a new compilation unit, as if the stub had been parsed.
+   * The compilation unit is not scoped, so every compiler can create and scope its own.
+   * Symbols are attributed to the given file name, but their positions are only approximate.
+   *
+   * @param fileName the path of the API stub
+   * @return the new compilation unit
+   * @throws IllegalArgumentException if a declaration cannot be created from the index
+   */
+  public CompilationUnit createCompilationUnit(String fileName) {
+    return new DeclarationBuilder(fileName).createCompilationUnit(compilationUnitModel);
+  }
+
+  private static void writeDeclaration(DataOutputStream out, NamedModel declaration) throws IOException {
+    if (declaration instanceof ClassModel) {
+      ClassModel classModel = (ClassModel) declaration;
+      out.writeByte(KIND_CLASS);
+      writeDeclarationHeader(out, classModel, classModel.getNamespace(),
+              (classModel.isInterface() ? FLAG_INTERFACE : 0)
+                      | (classModel.isFinal() ? FLAG_FINAL : 0)
+                      | (classModel.isDynamic() ? FLAG_DYNAMIC : 0));
+      writeOptString(out, classModel.getSuperclass());
+      writeStrings(out, classModel.getInterfaces());
+      out.writeInt(classModel.getMembers().size());
+      for (MemberModel member : classModel.getMembers()) {
+        writeDeclaration(out, member);
+      }
+    } else if (declaration instanceof MethodModel) {
+      MethodModel methodModel = (MethodModel) declaration;
+      out.writeByte(KIND_FUNCTION);
+      writeDeclarationHeader(out, methodModel, methodModel.getNamespace(),
+              (methodModel.isStatic() ? FLAG_STATIC : 0)
+                      | (methodModel.isFinal() ? FLAG_FINAL : 0)
+                      | (methodModel.isOverride() ? FLAG_OVERRIDE : 0)
+                      | (methodModel.isGetter() ? FLAG_GETTER : 0)
+                      | (methodModel.isSetter() ? FLAG_SETTER : 0));
+      writeOptString(out, methodModel.getType());
+      out.writeInt(methodModel.getParams().size());
+      for (ParamModel param : methodModel.getParams()) {
+        out.writeUTF(param.getName());
+        out.writeInt(param.isRest() ? FLAG_REST : 0);
+        writeOptString(out, param.getType());
+        writeOptString(out, param.getValue());
+      }
+      writeOptString(out, methodModel.getBody());
+    } else if (declaration instanceof FieldModel) {
+      FieldModel fieldModel = (FieldModel) declaration;
+      out.writeByte(KIND_VARIABLE);
+      writeDeclarationHeader(out, fieldModel, fieldModel.getNamespace(),
+              (fieldModel.isStatic() ? FLAG_STATIC : 0)
+                      | (fieldModel.isConst() ? FLAG_CONST : 0));
+      writeOptString(out, fieldModel.getType());
+      writeOptString(out, fieldModel.getValue());
+    } else if (declaration instanceof NamespaceModel) {
+      NamespaceModel namespaceModel = (NamespaceModel) declaration;
+      out.writeByte(KIND_NAMESPACE);
+      writeDeclarationHeader(out, namespaceModel, namespaceModel.getNamespace(), 0);
+      writeOptString(out, namespaceModel.getValue());
+    } else {
+      throw new IllegalArgumentException("unsupported declaration " + declaration);
+    }
+  }
+
+  private static void writeDeclarationHeader(DataOutputStream out, AnnotatedModel declaration, String namespace, int flags) throws IOException {
+    out.writeInt(declaration.getAnnotations().size());
+    for (AnnotationModel annotation : declaration.getAnnotations()) {
+      out.writeUTF(annotation.getName());
+      out.writeInt(annotation.getProperties().size());
+      for (AnnotationPropertyModel property : annotation.getProperties()) {
+        writeOptString(out, property.getName());
+        writeOptString(out, property.getValue());
+      }
+    }
+    out.writeUTF(((NamedModel) declaration).getName());
+    out.writeUTF(namespace);
+    out.writeInt(flags);
+  }
+
+  private static NamedModel readDeclaration(DataInputStream in) throws IOException {
+    int kind = in.readByte();
+    List<AnnotationModel> annotations = readAnnotations(in);
+    String name = in.readUTF();
+    String namespace = in.readUTF();
+    int flags = in.readInt();
+    switch (kind) {
+      case KIND_CLASS:
+        ClassModel classModel = new ClassModel(name);
+        classModel.setAnnotations(annotations);
+        classModel.setNamespace(namespace);
+        classModel.setInterface((flags & FLAG_INTERFACE) != 0);
+        classModel.setFinal((flags & FLAG_FINAL) != 0);
+        classModel.setDynamic((flags & FLAG_DYNAMIC) != 0);
+        classModel.setSuperclass(readOptString(in));
+        classModel.setInterfaces(readStrings(in));
+        int memberCount = in.readInt();
+        for (int i = 0; i < memberCount; i++) {
+          NamedModel member = readDeclaration(in);
+          if (!(member instanceof MemberModel)) {
+            throw new IOException("unexpected class member " + member.getName());
+          }
+          classModel.addMember((MemberModel) member);
+        }
+        return classModel;
+      case KIND_FUNCTION:
+        MethodModel methodModel = new MethodModel();
+        methodModel.setName(name);
+        methodModel.setAnnotations(annotations);
+        methodModel.setNamespace(namespace);
+        methodModel.setStatic((flags & FLAG_STATIC) != 0);
+        methodModel.setFinal((flags & FLAG_FINAL) != 0);
+        methodModel.setOverride((flags & FLAG_OVERRIDE) != 0);
+        methodModel.setMethodType((flags & FLAG_GETTER) != 0 ? MethodType.GET
+                : (flags & FLAG_SETTER) != 0 ? MethodType.SET
+                : null);
+        methodModel.setType(readOptString(in));
+        int paramCount = in.readInt();
+        List<ParamModel> params = new ArrayList<ParamModel>(paramCount);
+        for (int i = 0; i < paramCount; i++) {
+          String paramName = in.readUTF();
+          boolean rest = (in.readInt() & FLAG_REST) != 0;
+          String type = readOptString(in);
+          params.add(new ParamModel(paramName, type, readOptString(in), rest));
+        }
+        methodModel.setParams(params);
+        methodModel.setBody(readOptString(in));
+        return methodModel;
+      case KIND_VARIABLE:
+        FieldModel fieldModel = new FieldModel(name);
+        fieldModel.setAnnotations(annotations);
+        fieldModel.setNamespace(namespace);
+        fieldModel.setStatic((flags & FLAG_STATIC) != 0);
+        fieldModel.setConst((flags & FLAG_CONST) != 0);
+        fieldModel.setType(readOptString(in));
+        fieldModel.setValue(readOptString(in));
+        return fieldModel;
+      case KIND_NAMESPACE:
+        NamespaceModel namespaceModel = new NamespaceModel(name, null);
+        namespaceModel.setAnnotations(annotations);
+        namespaceModel.setNamespace(namespace);
+        namespaceModel.setValue(readOptString(in));
+        return namespaceModel;
+      default:
+        throw new IOException("unknown declaration kind " + kind);
+    }
+  }
+
+  private static List<AnnotationModel> readAnnotations(DataInputStream in) throws IOException {
+    int annotationCount = in.readInt();
+    List<AnnotationModel> annotations = new ArrayList<AnnotationModel>(annotationCount);
+    for (int i = 0; i < annotationCount; i++) {
+      AnnotationModel annotation = new AnnotationModel(in.readUTF());
+      int propertyCount = in.readInt();
+      for (int j = 0; j < propertyCount; j++) {
+        String name = readOptString(in);
+        annotation.addProperty(new AnnotationPropertyModel(name, readOptString(in)));
+      }
+      annotations.add(annotation);
+    }
+    return annotations;
+  }
+
+  private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+    out.writeInt(strings.size());
+    for (String string : strings) {
+      out.writeUTF(string);
+    }
+  }
+
+  private static List<String> readStrings(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    List<String> strings = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++) {
+      strings.add(in.readUTF());
+    }
+    return strings;
+  }
+
+  private static void writeOptString(DataOutputStream out, String string) throws IOException {
+    boolean present = string != null && string.trim().length() > 0;
+    out.writeBoolean(present);
+    if (present) {
+      out.writeUTF(string);
+    }
+  }
+
+  private static String readOptString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  /**
+   * Creates the AST nodes of an API stub from its API model, the same way the parser creates them from the
+   * source code of the stub generated from the API model.
+   */
+  private static class DeclarationBuilder {
+    private final String fileName;
+    private int line = 1;
+    private boolean declaredInInterface;
+
+    DeclarationBuilder(String fileName) {
+      this.fileName = fileName;
+    }
+
+    CompilationUnit createCompilationUnit(CompilationUnitModel compilationUnitModel) {
+      String packageName = compilationUnitModel.getPackage();
+      PackageDeclaration packageDeclaration = new PackageDeclaration(symbol(sym.PACKAGE, "package"),
+              packageName.length() == 0 ? null : createIde(packageName));
+      JooSymbol lBrace = symbol(sym.LBRACE, "{");
+      List<AstNode> directives = new ArrayList<AstNode>();
+      for (String anImport : compilationUnitModel.getImports()) {
+        nextLine();
+        directives.add(new ImportDirective(symbol(sym.IMPORT, "import"), createImportIde(anImport), symbol(sym.SEMICOLON, ";")));
+      }
+      NamedModel primaryDeclaration = compilationUnitModel.getPrimaryDeclaration();
+      directives.addAll(createAnnotations((AnnotatedModel) primaryDeclaration));
+      IdeDeclaration declaration = createDeclaration(primaryDeclaration);
+      nextLine();
+      return new CompilationUnit(packageDeclaration, lBrace, directives, declaration, symbol(sym.RBRACE, "}"),
+              new ArrayList<IdeDeclaration>());
+    }
+
+    private IdeDeclaration createDeclaration(NamedModel declaration) {
+      nextLine();
+      if (declaration instanceof ClassModel) {
+        return createClassDeclaration((ClassModel) declaration);
+      } else if (declaration instanceof MethodModel) {
+        return createFunctionDeclaration((MethodModel) declaration);
+      } else if (declaration instanceof FieldModel) {
+        FieldModel fieldModel = (FieldModel) declaration;
+        List<JooSymbol> modifiers = createModifiers(fieldModel.getNamespace());
+        addModifier(modifiers, fieldModel.isStatic(), SyntacticKeywords.STATIC);
+        JooSymbol symConstOrVar = fieldModel.isConst() ? symbol(sym.CONST, "const") : symbol(sym.VAR, "var");
+        return new VariableDeclaration(modifiers.toArray(new JooSymbol[modifiers.size()]), symConstOrVar,
+                createIde(fieldModel.getName()), createTypeRelation(fieldModel.getType()),
+                createInitializer(fieldModel.getValue()), null, symbol(sym.SEMICOLON, ";"));
+      } else if (declaration instanceof NamespaceModel) {
+        NamespaceModel namespaceModel = (NamespaceModel) declaration;
+        List<JooSymbol> modifiers = createModifiers(namespaceModel.getNamespace());
+        return new NamespaceDeclaration(modifiers.toArray(new JooSymbol[modifiers.size()]),
+                symbol(sym.IDE, SyntacticKeywords.NAMESPACE), createIde(namespaceModel.getName()),
+                createInitializer(namespaceModel.getValue()), symbol(sym.SEMICOLON, ";"));
+      }
+      throw new IllegalArgumentException("unsupported declaration " + declaration);
+    }
+
+    private ClassDeclaration createClassDeclaration(ClassModel classModel) {
+      List<JooSymbol> modifiers = createModifiers(classModel.getNamespace());
+      addModifier(modifiers, classModel.isFinal(), SyntacticKeywords.FINAL);
+      addModifier(modifiers, classModel.isDynamic(), SyntacticKeywords.DYNAMIC);
+      JooSymbol symClass = classModel.isInterface() ? symbol(sym.INTERFACE, "interface") : symbol(sym.CLASS, "class");
+      Ide ide = createIde(classModel.getName());
+      Extends optExtends = null;
+      if (!classModel.isInterface() && classModel.getSuperclass() != null) {
+        optExtends = new Extends(symbol(sym.EXTENDS, "extends"), createIde(classModel.getSuperclass()));
+      }
+      Implements optImplements = null;
+      if (!classModel.getInterfaces().isEmpty()) {
+        optImplements = new Implements(classModel.isInterface() ? symbol(sym.EXTENDS, "extends") : symbol(sym.IMPLEMENTS, "implements"),
+                createIdeList(classModel.getInterfaces()));
+      }
+      JooSymbol lBrace = symbol(sym.LBRACE, "{");
+      List<Directive> directives = new ArrayList<Directive>();
+      declaredInInterface = classModel.isInterface();
+      for (MemberModel member : classModel.getMembers()) {
+        nextLine();
+        directives.addAll(createAnnotations(member));
+        directives.add((Directive) createDeclaration(member));
+      }
+      declaredInInterface = false;
+      nextLine();
+      ClassBody body = new ClassBody(lBrace, directives, symbol(sym.RBRACE, "}"));
+      return new ClassDeclaration(modifiers.toArray(new JooSymbol[modifiers.size()]), symClass, ide,
+              optExtends, optImplements, body);
+    }
+
+    private FunctionDeclaration createFunctionDeclaration(MethodModel methodModel) {
+      List<JooSymbol> modifiers = new ArrayList<JooSymbol>();
+      addModifier(modifiers, methodModel.isOverride(), SyntacticKeywords.OVERRIDE);
+      if (!declaredInInterface) {
+        modifiers.addAll(createModifiers(methodModel.getNamespace()));
+        addModifier(modifiers, methodModel.isStatic(), SyntacticKeywords.STATIC);
+        addModifier(modifiers, methodModel.isFinal(), SyntacticKeywords.FINAL);
+        addModifier(modifiers, methodModel.getBody() == null, SyntacticKeywords.NATIVE);
+      }
+      JooSymbol symFunction = symbol(sym.FUNCTION, "function");
+      JooSymbol symGetOrSet = methodModel.getMethodType() == null ? null
+              : symbol(sym.IDE, methodModel.getMethodType().toString());
+      Ide ide = createIde(methodModel.getName());
+      JooSymbol lParen = symbol(sym.LPAREN, "(");
+      Parameters params = createParameters(methodModel.getParams());
+      JooSymbol rParen = symbol(sym.RPAREN, ")");
+      TypeRelation optTypeRelation = createTypeRelation(methodModel.getType());
+      // method bodies are not kept for API stubs, but an empty body distinguishes non-native methods:
+      BlockStatement optBody = null;
+      JooSymbol optSymSemicolon = null;
+      if (methodModel.getBody() != null && !declaredInInterface) {
+        optBody = new BlockStatement(symbol(sym.LBRACE, "{"), Collections.<Directive>emptyList(), symbol(sym.RBRACE, "}"));
+      } else {
+        optSymSemicolon = symbol(sym.SEMICOLON, ";");
+      }
+      return new FunctionDeclaration(modifiers, symFunction, symGetOrSet, ide, lParen, params, rParen,
+              optTypeRelation, optBody, optSymSemicolon);
+    }
+
+    private Parameters createParameters(List<ParamModel> params) {
+      Parameters parameters = null;
+      for (int i = params.size() - 1; i >= 0; i--) {
+        ParamModel param = params.get(i);
+        Parameter parameter = param.isRest()
+                ? new Parameter(symbol(sym.REST, "..."), createIde(param.getName()), createTypeRelation(param.getType()), null)
+                : new Parameter(null, createIde(param.getName()), createTypeRelation(param.getType()), createInitializer(param.getValue()));
+        parameters = parameters == null ? new Parameters(parameter) : new Parameters(parameter, symbol(sym.COMMA, ","), parameters);
+      }
+      return parameters;
+    }
+
+    private List<Annotation> createAnnotations(AnnotatedModel annotatedModel) {
+      List<Annotation> annotations = new ArrayList<Annotation>();
+      for (AnnotationModel annotationModel : annotatedModel.getAnnotations()) {
+        nextLine();
+        JooSymbol leftBracket = symbol(sym.LBRACK, "[");
+        Ide ide = createIde(annotationModel.getName());
+        List<AnnotationPropertyModel> properties = annotationModel.getProperties();
+        if (properties.isEmpty()) {
+          annotations.add(new Annotation(leftBracket, ide, symbol(sym.RBRACK, "]")));
+        } else {
+          JooSymbol leftParen = symbol(sym.LPAREN, "(");
+          CommaSeparatedList<AnnotationParameter> parameters = null;
+          for (int i = properties.size() - 1; i >= 0; i--) {
+            AnnotationParameter parameter = createAnnotationParameter(properties.get(i));
+            parameters = parameters == null ? new CommaSeparatedList<AnnotationParameter>(parameter)
+                    : new CommaSeparatedList<AnnotationParameter>(parameter, symbol(sym.COMMA, ","), parameters);
+          }
+          annotations.add(new Annotation(leftBracket, ide, leftParen, parameters, symbol(sym.RPAREN, ")"), symbol(sym.RBRACK, "]")));
+        }
+      }
+      return annotations;
+    }
+
+    private AnnotationParameter createAnnotationParameter(AnnotationPropertyModel property) {
+      Ide optName = isEmpty(property.getName()) ? null : createIde(property.getName());
+      if (isEmpty(property.getValue())) {
+        return new AnnotationParameter(optName, null, null);
+      }
+      Expr value = createExpr(property.getValue());
+      if (!(value instanceof LiteralExpr)) {
+        throw new IllegalArgumentException("annotation parameter value must be a literal: " + property.getValue());
+      }
+      return new AnnotationParameter(optName, optName == null ? null : symbol(sym.EQ, "="), (LiteralExpr) value);
+    }
+
+    private List<JooSymbol> createModifiers(String namespace) {
+      List<JooSymbol> modifiers = new ArrayList<JooSymbol>();
+      if (NamespacedModel.PUBLIC.equals(namespace)) {
+        modifiers.add(symbol(sym.PUBLIC, namespace));
+      } else if (NamespacedModel.PROTECTED.equals(namespace)) {
+        modifiers.add(symbol(sym.PROTECTED, namespace));
+      } else if (NamespacedModel.PRIVATE.equals(namespace)) {
+        modifiers.add(symbol(sym.PRIVATE, namespace));
+      } else if (NamespacedModel.INTERNAL.equals(namespace)) {
+        modifiers.add(symbol(sym.INTERNAL, namespace));
+      } else if (!isEmpty(namespace)) {
+        if (namespace.indexOf('.') != -1) {
+          throw new IllegalArgumentException("unsupported namespace " + namespace);
+        }
+        modifiers.add(symbol(sym.IDE, namespace));
+      }
+      return modifiers;
+    }
+
+    private void addModifier(List<JooSymbol> modifiers, boolean flag, String modifier) {
+      if (flag) {
+        modifiers.add(symbol(sym.IDE, modifier));
+      }
+    }
+
+    private TypeRelation createTypeRelation(String type) {
+      return isEmpty(type) ? null : new TypeRelation(symbol(sym.COLON, ":"), createType(type));
+    }
+
+    private Type createType(String type) {
+      if ("*".equals(type)) {
+        return new Type(symbol(sym.MUL, type));
+      }
+      if ("void".equals(type)) {
+        return new Type(symbol(sym.VOID, type));
+      }
+      int typeParamStart = type.indexOf(".<");
+      if (typeParamStart != -1) {
+        String ide = type.substring(0, typeParamStart);
+        if (ide.indexOf('.') != -1 || !type.endsWith(">")) {
+          throw new IllegalArgumentException("unsupported type " + type);
+        }
+        Type typeParam = createType(type.substring(typeParamStart + 2, type.length() - 1));
+        return new Type(new IdeWithTypeParam(symbol(sym.IDE, ide), symbol(sym.DOTLT, ".<"), typeParam, symbol(sym.GT, ">")));
+      }
+      return new Type(createIde(type));
+    }
+
+    private CommaSeparatedList<Ide> createIdeList(List<String> qNames) {
+      CommaSeparatedList<Ide> ides = null;
+      for (int i = qNames.size() - 1; i >= 0; i--) {
+        Ide ide = createIde(qNames.get(i));
+        ides = ides == null ? new CommaSeparatedList<Ide>(ide) : new CommaSeparatedList<Ide>(ide, symbol(sym.COMMA, ","), ides);
+      }
+      return ides;
+    }
+
+    private Ide createIde(String qName) {
+      String[] names = qName.split("\\.", -1);
+      Ide ide = null;
+      for (String name : names) {
+        if (name.length() == 0) {
+          throw new IllegalArgumentException("invalid identifier " + qName);
+        }
+        ide = ide == null ? new Ide(symbol(sym.IDE, name)) : new QualifiedIde(ide, symbol(sym.DOT, "."), symbol(sym.IDE, name));
+      }
+      return ide;
+    }
+
+    private Ide createImportIde(String anImport) {
+      if (anImport.endsWith(".*")) {
+        // star import of all declarations of a package:
+        return new QualifiedIde(createIde(anImport.substring(0, anImport.length() - 2)), symbol(sym.DOT, "."),
+                symbol(sym.MUL, "*"));
+      }
+      return createIde(anImport);
+    }
+
+    private Initializer createInitializer(String value) {
+      return isEmpty(value) ? null : new Initializer(symbol(sym.EQ, "="), createExpr(value));
+    }
+
+    /**
+     * Create the compile-time constant expression of a value, which is a literal, a qualified identifier or a
+     * signed literal. These are the values API stubs contain in practice; for others, no index is written.
+     */
+    private Expr createExpr(String value) {
+      List<JooSymbol> tokens = scan(value);
+      if (!tokens.isEmpty() && isPrefixOperator(tokens.get(0).sym) && tokens.size() == 2 && isLiteral(tokens.get(1).sym)) {
+        return new PrefixOpExpr(tokens.get(0), new LiteralExpr(tokens.get(1)));
+      }
+      if (tokens.size() == 1 && isLiteral(tokens.get(0).sym)) {
+        return new LiteralExpr(tokens.get(0));
+      }
+      if (tokens.size() % 2 == 1) {
+        Ide ide = null;
+        for (int i = 0; i < tokens.size(); i += 2) {
+          if (tokens.get(i).sym != sym.IDE || i > 0 && tokens.get(i - 1).sym != sym.DOT) {
+            throw new IllegalArgumentException("unsupported value " + value);
+          }
+          ide = ide == null ? new Ide(tokens.get(i)) : new QualifiedIde(ide, tokens.get(i - 1), tokens.get(i));
+        }
+        return new IdeExpr(ide);
+      }
+      throw new IllegalArgumentException("unsupported value " + value);
+    }
+
+    private List<JooSymbol> scan(String value) {
+      Scanner scanner = new Scanner(new StringReader(value));
+      List<JooSymbol> tokens = new ArrayList<JooSymbol>();
+      try {
+        for (JooSymbol token = (JooSymbol) scanner.next_token(); token.sym != sym.EOF; token = (JooSymbol) scanner.next_token()) {
+          tokens.add(new JooSymbol(token.sym, fileName, line, 1, "", token.getText(), token.getJooValue()));
+        }
+      } catch (IOException e) {
+        throw new IllegalArgumentException("cannot scan value " + value, e);
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException("cannot scan value " + value, e);
+      }
+      return tokens;
+    }
+
+    private static boolean isLiteral(int symbol) {
+      return symbol == sym.INT_LITERAL || symbol == sym.FLOAT_LITERAL || symbol == sym.BOOL_LITERAL
+              || symbol == sym.STRING_LITERAL || symbol == sym.NULL_LITERAL;
+    }
+
+    private static boolean isPrefixOperator(int symbol) {
+      return symbol == sym.MINUS || symbol == sym.PLUS || symbol == sym.BITNOT || symbol == sym.NOT;
+    }
+
+    private JooSymbol symbol(int symbolType, String text) {
+      return new JooSymbol(symbolType, fileName, line, 1, " ", text, symbolType == sym.IDE ? text : null);
+    }
+
+    private void nextLine() {
+      line++;
+    }
+
+    private static boolean isEmpty(String string) {
+      return string == null || string.trim().length() == 0;
+    }
+  }
+}
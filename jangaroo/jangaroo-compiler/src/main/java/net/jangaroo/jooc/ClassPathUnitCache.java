@@ -0,0 +1,85 @@
+package net.jangaroo.jooc;
+
+import net.jangaroo.jooc.input.InputSource;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Declarations of API stubs loaded from the jars of a class path, to be reused by subsequent compilations with
+ * the same class path. The input source of the class path itself, with all jars opened and indexed, is reused
+ * as well.
+ * The cache keeps the unscoped {@link ApiDeclarationIndex} of each API stub, not its compilation unit, as a
+ * compilation unit is scoped by and refers to the compiler that imported it. Every compilation creates and
+ * scopes its own compilation units from the cached declarations, which is much cheaper than reading them again.
+ * API stubs without an index are parsed by every compilation.
+ * Because the declarations of different jars reference each other, the cache is only valid as a whole: as soon
+ * as any jar of the class path changes, the cache is outdated and must be replaced by a new one.
+ * A cache must not be used by more than one compilation at a time.
+ */
+public class ClassPathUnitCache {
+
+  private final List<String> jarFingerprints;
+  private final Map<String, ApiDeclarationIndex> declarationsByQName = new HashMap<String, ApiDeclarationIndex>();
+  private InputSource classPathInputSource;
+
+  public ClassPathUnitCache(List<File> classPath) {
+    jarFingerprints = computeJarFingerprints(classPath);
+  }
+
+  /**
+   * Whether none of the jars of the class path has changed since this cache has been created.
+   *
+   * @param classPath the class path this cache has been created for
+   * @return true if this cache may still be used for compilations with the given class path
+   */
+  public boolean isUpToDate(List<File> classPath) {
+    return jarFingerprints.equals(computeJarFingerprints(classPath));
+  }
+
+  public synchronized ApiDeclarationIndex get(String qName) {
+    return declarationsByQName.get(qName);
+  }
+
+  public synchronized void put(String qName, ApiDeclarationIndex declarations) {
+    declarationsByQName.put(qName, declarations);
+  }
+
+  /**
+   * The input source of the class path this cache has been created for, if already opened by a compilation.
+   * Compilation units created from cached declarations refer to entries of this input source.
+   *
+   * @return the class path input source, or null if no compilation has opened the class path yet
+   */
+  public synchronized InputSource getClassPathInputSource() {
+    return classPathInputSource;
+  }
+
+  public synchronized void setClassPathInputSource(InputSource classPathInputSource) {
+    this.classPathInputSource = classPathInputSource;
+  }
+
+  public synchronized int size() {
+    return declarationsByQName.size();
+  }
+
+  /**
+   * Compute the fingerprints of all entries of the given class path. A jar fingerprint consists of path, size
+   * and modification time, so that checking whether a cache is up-to-date does not require to read any jar.
+   *
+   * @param classPath the class path
+   * @return the fingerprints of all class path entries
+   */
+  public static List<String> computeJarFingerprints(List<File> classPath) {
+    List<String> fingerprints = new ArrayList<String>(classPath.size());
+    for (File classPathEntry : classPath) {
+      fingerprints.add(classPathEntry.isFile()
+              ? classPathEntry.getAbsolutePath() + "@" + classPathEntry.length() + ":" + classPathEntry.lastModified()
+              : classPathEntry.getAbsolutePath());
+    }
+    return fingerprints;
+  }
+}
@@ -0,0 +1,271 @@
+package net.jangaroo.jooc;
+
+import net.jangaroo.jooc.api.CompilationMetrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects the {@link CompilationMetrics} of a compilation run. Phases are measured by calling
+ * {@link #startPhase} and {@link #endPhase} in a try/finally block. Phases may be nested: while a nested phase
+ * runs in the same thread, the enclosing phase is paused.
+ * Heap usage is sampled whenever a phase ends. Peak usages of the JVM's memory pools are not used, as they cannot
+ * be reset without affecting other compilation runs or tools in the same JVM.
+ */
+public class CompilationMetricsImpl implements CompilationMetrics, Serializable {
+
+  /**
+   * The maximum number of source files listed as hot spots in the JSON report.
+   */
+  private static final int MAX_REPORTED_FILES = 50;
+
+  private long startTime;
+  private long totalTime;
+  private final Map<String, Long> phaseTimes = new LinkedHashMap<String, Long>();
+  private final Map<String, Long> fileTimes = new HashMap<String, Long>();
+  private final AtomicInteger compiledUnitCount = new AtomicInteger();
+  private final AtomicInteger recompiledDependentUnitCount = new AtomicInteger();
+  private final AtomicInteger parsedClassPathUnitCount = new AtomicInteger();
+  private final AtomicInteger cachedClassPathUnitCount = new AtomicInteger();
+  private final AtomicInteger cachedSourceUnitCount = new AtomicInteger();
+  private long peakHeapUsage = -1;
+
+  private final transient ThreadLocal<Deque<Measurement>> runningPhases = new ThreadLocal<Deque<Measurement>>() {
+    @Override
+    protected Deque<Measurement> initialValue() {
+      return new ArrayDeque<Measurement>();
+    }
+  };
+
+  public synchronized void start() {
+    peakHeapUsage = getHeapUsage();
+    startTime = System.nanoTime();
+  }
+
+  public synchronized void stop() {
+    totalTime = System.nanoTime() - startTime;
+    peakHeapUsage = Math.max(peakHeapUsage, getHeapUsage());
+  }
+
+  private static long getHeapUsage() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Start measuring the given phase for the given file in the current thread.
+   *
+   * @param phase the phase, one of the <code>PHASE_</code>... constants
+   * @param fileName the path of the source file or API stub the phase works on
+   */
+  public void startPhase(String phase, String fileName) {
+    long now = System.nanoTime();
+    Deque<Measurement> phases = runningPhases.get();
+    Measurement enclosingPhase = phases.peek();
+    if (enclosingPhase != null) {
+      enclosingPhase.pause(now);
+    }
+    phases.push(new Measurement(phase, fileName, now));
+  }
+
+  /**
+   * Stop measuring the phase most recently started in the current thread.
+   */
+  public void endPhase() {
+    long now = System.nanoTime();
+    Deque<Measurement> phases = runningPhases.get();
+    Measurement measurement = phases.pop();
+    addTime(measurement.phase, measurement.fileName, measurement.getTime(now));
+    Measurement enclosingPhase = phases.peek();
+    if (enclosingPhase != null) {
+      enclosingPhase.resume(now);
+    }
+  }
+
+  private synchronized void addTime(String phase, String fileName, long time) {
+    add(phaseTimes, phase, time);
+    add(fileTimes, fileName, time);
+    peakHeapUsage = Math.max(peakHeapUsage, getHeapUsage());
+  }
+
+  private static void add(Map<String, Long> times, String key, long time) {
+    Long oldTime = times.get(key);
+    times.put(key, oldTime == null ? time : oldTime + time);
+  }
+
+  public void compiledUnit() {
+    compiledUnitCount.incrementAndGet();
+  }
+
+  public void recompiledDependentUnits(int count) {
+    recompiledDependentUnitCount.addAndGet(count);
+  }
+
+  public void parsedClassPathUnit() {
+    parsedClassPathUnitCount.incrementAndGet();
+  }
+
+  public void cachedClassPathUnit() {
+    cachedClassPathUnitCount.incrementAndGet();
+  }
+
+  public void cachedSourceUnit() {
+    cachedSourceUnitCount.incrementAndGet();
+  }
+
+  @Override
+  public long getTotalTime() {
+    return totalTime;
+  }
+
+  @Override
+  public synchronized Map<String, Long> getPhaseTimes() {
+    return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(phaseTimes));
+  }
+
+  @Override
+  public synchronized Map<String, Long> getFileTimes() {
+    return Collections.unmodifiableMap(new HashMap<String, Long>(fileTimes));
+  }
+
+  @Override
+  public int getCompiledUnitCount() {
+    return compiledUnitCount.get();
+  }
+
+  @Override
+  public int getRecompiledDependentUnitCount() {
+    return recompiledDependentUnitCount.get();
+  }
+
+  @Override
+  public int getParsedClassPathUnitCount() {
+    return parsedClassPathUnitCount.get();
+  }
+
+  @Override
+  public int getCachedClassPathUnitCount() {
+    return cachedClassPathUnitCount.get();
+  }
+
+  @Override
+  public int getCachedSourceUnitCount() {
+    return cachedSourceUnitCount.get();
+  }
+
+  @Override
+  public synchronized long getPeakHeapUsage() {
+    return peakHeapUsage;
+  }
+
+  /**
+   * Write the metrics as JSON to the given file. Times are reported in milliseconds, and only the source files
+   * that took longest are listed.
+   *
+   * @param reportFile the file to write
+   * @throws IOException if the file cannot be written
+   */
+  public void writeReport(File reportFile) throws IOException {
+    File parentDir = reportFile.getAbsoluteFile().getParentFile();
+    if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
+      throw new IOException("cannot create directory " + parentDir);
+    }
+    List<Map.Entry<String, Long>> hotSpots = new ArrayList<Map.Entry<String, Long>>(getFileTimes().entrySet());
+    Collections.sort(hotSpots, new Comparator<Map.Entry<String, Long>>() {
+      @Override
+      public int compare(Map.Entry<String, Long> entry1, Map.Entry<String, Long> entry2) {
+        return entry2.getValue().compareTo(entry1.getValue());
+      }
+    });
+    PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8"));
+    try {
+      writer.println("{");
+      writer.println("  \"totalTimeMillis\": " + toMillis(totalTime) + ",");
+      writer.println("  \"phaseTimesMillis\": {");
+      writeTimes(writer, new ArrayList<Map.Entry<String, Long>>(getPhaseTimes().entrySet()));
+      writer.println("  },");
+      writer.println("  \"hotSpotsMillis\": {");
+      writeTimes(writer, hotSpots.subList(0, Math.min(MAX_REPORTED_FILES, hotSpots.size())));
+      writer.println("  },");
+      writer.println("  \"compiledUnits\": " + getCompiledUnitCount() + ",");
+      writer.println("  \"recompiledDependentUnits\": " + getRecompiledDependentUnitCount() + ",");
+      writer.println("  \"parsedClassPathUnits\": " + getParsedClassPathUnitCount() + ",");
+      writer.println("  \"cachedClassPathUnits\": " + getCachedClassPathUnitCount() + ",");
+      writer.println("  \"cachedSourceUnits\": " + getCachedSourceUnitCount() + ",");
+      writer.println("  \"peakHeapUsageBytes\": " + getPeakHeapUsage());
+      writer.println("}");
+    } finally {
+      writer.close();
+    }
+    if (writer.checkError()) {
+      throw new IOException("cannot write metrics report file " + reportFile);
+    }
+  }
+
+  private static void writeTimes(PrintWriter writer, List<Map.Entry<String, Long>> times) {
+    for (int i = 0; i < times.size(); i++) {
+      Map.Entry<String, Long> time = times.get(i);
+      writer.println("    \"" + escapeJson(time.getKey()) + "\": " + toMillis(time.getValue()) + (i < times.size() - 1 ? "," : ""));
+    }
+  }
+
+  private static String toMillis(long nanos) {
+    return String.valueOf(Math.round(nanos / 1e4) / 100.0);
+  }
+
+  static String escapeJson(String value) {
+    StringBuilder escaped = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c == '\n') {
+        escaped.append("\\n");
+      } else if (c < ' ') {
+        escaped.append(String.format("\\u%04x", (int) c));
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  private static class Measurement {
+    private final String phase;
+    private final String fileName;
+    private long time = 0;
+    private long resumeTime;
+
+    private Measurement(String phase, String fileName, long startTime) {
+      this.phase = phase;
+      this.fileName = fileName;
+      this.resumeTime = startTime;
+    }
+
+    private void pause(long now) {
+      time += now - resumeTime;
+    }
+
+    private void resume(long now) {
+      resumeTime = now;
+    }
+
+    private long getTime(long now) {
+      return time + now - resumeTime;
+    }
+  }
+}
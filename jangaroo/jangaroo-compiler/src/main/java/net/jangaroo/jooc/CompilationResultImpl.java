@@ -1,5 +1,6 @@
 package net.jangaroo.jooc;
 
+import net.jangaroo.jooc.api.CompilationMetrics;
 import net.jangaroo.jooc.api.CompilationResult;
 
 import java.io.File;
@@ -10,10 +11,16 @@ public class CompilationResultImpl implements CompilationResult {
 
   private int resultCode;
   private Map<File,File> outputFileMap;
+  private CompilationMetrics metrics;
 
-  public CompilationResultImpl(int resultCode, Map<File, File> outputFileMap) {
+  public CompilationResultImpl(int resultCode, Map<File, File> outputFileMap, CompilationMetrics metrics) {
     this.resultCode = resultCode;
     this.outputFileMap = outputFileMap;
+    this.metrics = metrics;
+  }
+
+  public CompilationResultImpl(int resultCode, Map<File, File> outputFileMap) {
+    this(resultCode, outputFileMap, null);
   }
 
   public CompilationResultImpl(int resultCode) {
@@ -29,4 +36,9 @@ public class CompilationResultImpl implements CompilationResult {
   public Map<File, File> getOutputFileMap() {
     return outputFileMap;
   }
+
+  @Override
+  public CompilationMetrics getMetrics() {
+    return metrics;
+  }
 }
@@ -29,12 +29,13 @@ import net.jangaroo.jooc.ast.QualifiedIde;
 import net.jangaroo.jooc.ast.VariableDeclaration;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 
 /**
@@ -45,10 +46,18 @@ public class DeclarationScope extends ScopeImplBase {
   private static final Pattern AUX_VAR_NAME_PATTERN = Pattern.compile("\\$([0-9]+)");
 
   private AstNode definingNode;
-  private Set<String> packages = new HashSet<String>();
-  private Map<String, IdeDeclaration> ides = new HashMap<String, IdeDeclaration>();
-  private Map<String, List<ImportDirective>> importsByName = new HashMap<String, List<ImportDirective>>();
-  private Map<String, ImportDirective> importsByQualifiedName = new HashMap<String, ImportDirective>();
+  // concurrent, because expanding star imports lazily adds packages while other compiler threads look them up:
+  private Set<String> packages = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  // concurrent, because auxiliary vars may be declared while other compiler threads look up inherited declarations:
+  private Map<String, IdeDeclaration> ides = new ConcurrentHashMap<String, IdeDeclaration>();
+  // concurrent, because star imports are expanded lazily, possibly while other compiler threads look up declarations:
+  private Map<String, List<ImportDirective>> importsByName = new ConcurrentHashMap<String, List<ImportDirective>>();
+  private Map<String, ImportDirective> importsByQualifiedName = new ConcurrentHashMap<String, ImportDirective>();
+  // the packages imported by star imports, by package name:
+  private Map<String, Ide> starImports = new LinkedHashMap<String, Ide>();
+  private volatile boolean hasStarImports = false;
+  // the names for which all star imports have already been expanded:
+  private Set<String> starImportedNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
   private boolean isInstanceScope = false;
 
   public boolean isPackage(String fullyQualifiedName) {
@@ -71,16 +80,18 @@ public class DeclarationScope extends ScopeImplBase {
     String name = ide.getName();
     Ide packageIde = ide.getQualifier();
     String packageName = "";
-    final CompilationUnit compilationUnit = getCompilationUnit();
     if (packageIde != null) {
       packageName = packageIde.getQualifiedNameStr();
       packages.add(packageName);
     }
     if (AS3Type.ANY.toString().equals(name)) {
-      final List<String> packageIdes = compilationUnit.getCompiler().getPackageIdes(packageName);
-      for (String typeToImport : packageIdes) {
-        ImportDirective implicitImport = new ImportDirective(packageIde, typeToImport);
-        implicitImport.scope(this);
+      // do not list the package now, but only import the classes of the package that are actually used:
+      synchronized (this) {
+        if (!starImports.containsKey(packageName)) {
+          starImports.put(packageName, packageIde);
+          starImportedNames.clear();
+          hasStarImports = true;
+        }
       }
     } else {
       if (importsByName.containsKey(name)) {
@@ -90,7 +101,7 @@ public class DeclarationScope extends ScopeImplBase {
         }
         directiveList.add(importDirective);
       } else {
-        List<ImportDirective> list = new LinkedList<ImportDirective>();
+        List<ImportDirective> list = new CopyOnWriteArrayList<ImportDirective>();
         list.add(importDirective);
         importsByName.put(name, list);
       }
@@ -104,6 +115,28 @@ public class DeclarationScope extends ScopeImplBase {
     }
   }
 
+  /**
+   * Add implicit imports of all classes of the given name from star-imported packages, as if the packages had been
+   * listed and all their classes had been imported when the star imports were added.
+   */
+  private void expandStarImports(String name) {
+    if (!hasStarImports || starImportedNames.contains(name)) {
+      return;
+    }
+    synchronized (this) {
+      if (starImportedNames.contains(name)) {
+        return;
+      }
+      JangarooParser compiler = getCompilationUnit().getCompiler();
+      for (Map.Entry<String, Ide> starImport : starImports.entrySet()) {
+        if (compiler.getPackageIdeSet(starImport.getKey()).contains(name)) {
+          new ImportDirective(starImport.getValue(), name).scope(this);
+        }
+      }
+      starImportedNames.add(name);
+    }
+  }
+
   private boolean isImportAlreadyAdded(final List<ImportDirective> directiveList, final ImportDirective importDirective) {
     final String qname = importDirective.getQualifiedName();
     for (ImportDirective directive : directiveList) {
@@ -118,6 +151,7 @@ public class DeclarationScope extends ScopeImplBase {
   public IdeDeclaration declareIde(IdeDeclaration decl) {
     final Ide ide = decl.getIde();
     final String name = ide.getName();
+    expandStarImports(name);
     if (importsByName.containsKey(name)) {
       throw new CompilerError(ide.getSymbol(), "attempt to redefine an imported identifier " + name);
     }
@@ -134,6 +168,7 @@ public class DeclarationScope extends ScopeImplBase {
   @Override
   public IdeDeclaration lookupDeclaration(Ide ide) {
     IdeDeclaration decl = null;
+    expandStarImports(ide.getName());
     if (ide instanceof QualifiedIde) {
       String qname = ide.getQualifiedNameStr();
       if (importsByQualifiedName.containsKey(qname)) {
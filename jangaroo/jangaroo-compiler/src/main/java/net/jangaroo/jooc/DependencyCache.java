@@ -0,0 +1,290 @@
+package net.jangaroo.jooc;
+
+import net.jangaroo.jooc.ast.ClassDeclaration;
+import net.jangaroo.jooc.ast.CommaSeparatedList;
+import net.jangaroo.jooc.ast.CompilationUnit;
+import net.jangaroo.jooc.ast.Ide;
+import net.jangaroo.jooc.ast.IdeDeclaration;
+import net.jangaroo.jooc.ast.Implements;
+import net.jangaroo.jooc.backend.ActionScriptCodeGeneratingModelVisitor;
+import net.jangaroo.jooc.backend.ApiModelGenerator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent record of the compilation units compiled into one output directory, used for incremental compilation.
+ * For each compilation unit, the cache keeps its source file, a fingerprint of its public API, its super types,
+ * and the qualified names of all compilation units it depends on.
+ * When a compilation unit is recompiled and its public API fingerprint changes, all compilation units depending
+ * on it or on any of its sub types have to be recompiled, too.
+ * If a compilation fails before all of them could be recompiled, the remaining ones are marked invalid, so that
+ * the next compilation recompiles them.
+ */
+public class DependencyCache {
+
+  private static final String HEADER = "# jooc dependency cache, version 2";
+  private static final String FIELD_SEPARATOR = "\t";
+  private static final String LIST_SEPARATOR = ",";
+  private static final String RESOURCE_DEPENDENCY_PREFIX = "resource:";
+  private static final String INVALID_MARKER = "invalid";
+
+  private final File file;
+  private final Map<String, Entry> entriesByQName = new LinkedHashMap<String, Entry>();
+
+  private DependencyCache(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Load the dependency cache from the given file. If the file does not exist or has been written by an
+   * incompatible compiler version, the resulting cache is empty.
+   *
+   * @param file the dependency cache file
+   * @return the dependency cache
+   * @throws IOException if the cache file cannot be read
+   */
+  public static DependencyCache load(File file) throws IOException {
+    DependencyCache dependencyCache = new DependencyCache(file);
+    if (file.exists()) {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        if (HEADER.equals(reader.readLine())) {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            if (line.length() > 0) {
+              String[] fields = line.split(FIELD_SEPARATOR, -1);
+              Entry entry = new Entry(new File(fields[1]), fields[2], splitList(fields[3]), splitList(fields[4]));
+              entry.invalid = INVALID_MARKER.equals(fields[5]);
+              dependencyCache.entriesByQName.put(fields[0], entry);
+            }
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    }
+    return dependencyCache;
+  }
+
+  public void save() throws IOException {
+    File parentDir = file.getAbsoluteFile().getParentFile();
+    if (parentDir != null && !parentDir.exists() && !parentDir.mkdirs()) {
+      throw new IOException("cannot create directory " + parentDir);
+    }
+    PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      writer.println(HEADER);
+      for (Map.Entry<String, Entry> qNameAndEntry : entriesByQName.entrySet()) {
+        Entry entry = qNameAndEntry.getValue();
+        writer.println(qNameAndEntry.getKey() + FIELD_SEPARATOR + entry.sourceFile.getPath()
+                + FIELD_SEPARATOR + entry.apiFingerprint
+                + FIELD_SEPARATOR + joinList(entry.superTypes)
+                + FIELD_SEPARATOR + joinList(entry.dependencies)
+                + FIELD_SEPARATOR + (entry.invalid ? INVALID_MARKER : ""));
+      }
+    } finally {
+      writer.close();
+    }
+    if (writer.checkError()) {
+      throw new IOException("cannot write dependency cache file " + file);
+    }
+  }
+
+  /**
+   * Remove all compilation units whose source file no longer exists.
+   *
+   * @return the qualified names of the removed compilation units
+   */
+  public Set<String> removeDeletedSources() {
+    Set<String> removedQNames = new LinkedHashSet<String>();
+    for (Iterator<Map.Entry<String, Entry>> iterator = entriesByQName.entrySet().iterator(); iterator.hasNext(); ) {
+      Map.Entry<String, Entry> qNameAndEntry = iterator.next();
+      if (!qNameAndEntry.getValue().sourceFile.exists()) {
+        removedQNames.add(qNameAndEntry.getKey());
+        iterator.remove();
+      }
+    }
+    return removedQNames;
+  }
+
+  /**
+   * Mark the given compilation units invalid, because a compilation unit they depend on changed, but they
+   * could not be recompiled. Invalid compilation units stay invalid until they are recompiled.
+   *
+   * @param qNames the qualified names of the compilation units to invalidate
+   */
+  public void invalidate(Collection<String> qNames) {
+    for (String qName : qNames) {
+      Entry entry = entriesByQName.get(qName);
+      if (entry != null) {
+        entry.invalid = true;
+      }
+    }
+  }
+
+  /**
+   * Determine all compilation units that have been marked invalid and not yet been recompiled.
+   *
+   * @return the source files of all invalid compilation units, by qualified name
+   */
+  public Map<String, File> getInvalidSources() {
+    Map<String, File> invalidSources = new LinkedHashMap<String, File>();
+    for (Map.Entry<String, Entry> qNameAndEntry : entriesByQName.entrySet()) {
+      if (qNameAndEntry.getValue().invalid) {
+        invalidSources.put(qNameAndEntry.getKey(), qNameAndEntry.getValue().sourceFile);
+      }
+    }
+    return invalidSources;
+  }
+
+  /**
+   * Record the dependencies and public API fingerprint of a freshly compiled compilation unit.
+   *
+   * @param qName the qualified name of the compilation unit's primary declaration
+   * @param sourceFile the source file of the compilation unit
+   * @param unit the analyzed compilation unit
+   * @return whether the public API of the compilation unit changed since the last time it was recorded
+   * @throws IOException if the public API of the compilation unit cannot be generated
+   */
+  public boolean update(String qName, File sourceFile, CompilationUnit unit) throws IOException {
+    Set<String> dependencies = new LinkedHashSet<String>();
+    for (String dependency : unit.getDependencies()) {
+      if (!dependency.startsWith(RESOURCE_DEPENDENCY_PREFIX)) {
+        dependencies.add(dependency);
+      }
+    }
+    dependencies.addAll(unit.getPublicApiDependencies());
+    dependencies.remove(qName);
+    Entry entry = new Entry(sourceFile.getCanonicalFile(), computeApiFingerprint(unit), getSuperTypes(unit), dependencies);
+    Entry oldEntry = entriesByQName.put(qName, entry);
+    return oldEntry == null || !oldEntry.apiFingerprint.equals(entry.apiFingerprint)
+            || !oldEntry.superTypes.equals(entry.superTypes);
+  }
+
+  /**
+   * Determine all compilation units that have to be recompiled because the public API of the given
+   * compilation units changed. These are all compilation units depending on a changed compilation unit or
+   * on a (direct or indirect) sub type of a changed compilation unit, as they may use inherited members.
+   *
+   * @param changedQNames the qualified names of all compilation units whose public API changed
+   * @return the source files of all dependent compilation units, by qualified name
+   */
+  public Map<String, File> getDependents(Collection<String> changedQNames) {
+    Set<String> affectedQNames = new HashSet<String>(changedQNames);
+    boolean foundSubType;
+    do {
+      foundSubType = false;
+      for (Map.Entry<String, Entry> qNameAndEntry : entriesByQName.entrySet()) {
+        if (!affectedQNames.contains(qNameAndEntry.getKey())
+                && !Collections.disjoint(qNameAndEntry.getValue().superTypes, affectedQNames)) {
+          affectedQNames.add(qNameAndEntry.getKey());
+          foundSubType = true;
+        }
+      }
+    } while (foundSubType);
+
+    Map<String, File> dependents = new LinkedHashMap<String, File>();
+    for (Map.Entry<String, Entry> qNameAndEntry : entriesByQName.entrySet()) {
+      if (!changedQNames.contains(qNameAndEntry.getKey())
+              && !Collections.disjoint(qNameAndEntry.getValue().dependencies, affectedQNames)) {
+        dependents.put(qNameAndEntry.getKey(), qNameAndEntry.getValue().sourceFile);
+      }
+    }
+    return dependents;
+  }
+
+  private static List<String> getSuperTypes(CompilationUnit unit) {
+    List<String> superTypes = new ArrayList<String>();
+    IdeDeclaration primaryDeclaration = unit.getPrimaryDeclaration();
+    if (primaryDeclaration instanceof ClassDeclaration) {
+      ClassDeclaration classDeclaration = (ClassDeclaration) primaryDeclaration;
+      if (classDeclaration.getOptExtends() != null) {
+        addQualifiedName(superTypes, classDeclaration.getOptExtends().getSuperClass());
+      }
+      Implements optImplements = classDeclaration.getOptImplements();
+      if (optImplements != null) {
+        for (CommaSeparatedList<Ide> superTypeList = optImplements.getSuperTypes();
+             superTypeList != null; superTypeList = superTypeList.getTail()) {
+          addQualifiedName(superTypes, superTypeList.getHead());
+        }
+      }
+    }
+    return superTypes;
+  }
+
+  private static void addQualifiedName(List<String> qNames, Ide ide) {
+    IdeDeclaration declaration = ide.getDeclaration(false);
+    qNames.add(declaration == null ? ide.getQualifiedNameStr() : declaration.getQualifiedNameStr());
+  }
+
+  /**
+   * The public API fingerprint is a digest of the ActionScript API stub of the compilation unit,
+   * not including ASDoc comments, so that changes to the implementation or to documentation do not
+   * cause any dependent compilation unit to be recompiled.
+   */
+  private static String computeApiFingerprint(CompilationUnit unit) throws IOException {
+    StringWriter apiStub = new StringWriter();
+    new ApiModelGenerator(false).generateModel(unit).visit(new ActionScriptCodeGeneratingModelVisitor(apiStub, true));
+    try {
+      byte[] digest = MessageDigest.getInstance("MD5").digest(apiStub.toString().getBytes("UTF-8"));
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 message digest not supported by this JVM", e);
+    }
+  }
+
+  private static List<String> splitList(String list) {
+    return list.length() == 0 ? Collections.<String>emptyList() : Arrays.asList(list.split(LIST_SEPARATOR));
+  }
+
+  private static String joinList(Collection<String> list) {
+    StringBuilder builder = new StringBuilder();
+    for (String element : list) {
+      if (builder.length() > 0) {
+        builder.append(LIST_SEPARATOR);
+      }
+      builder.append(element);
+    }
+    return builder.toString();
+  }
+
+  private static class Entry {
+    private final File sourceFile;
+    private final String apiFingerprint;
+    private final List<String> superTypes;
+    private final Collection<String> dependencies;
+    private boolean invalid = false;
+
+    private Entry(File sourceFile, String apiFingerprint, List<String> superTypes, Collection<String> dependencies) {
+      this.sourceFile = sourceFile;
+      this.apiFingerprint = apiFingerprint;
+      this.superTypes = superTypes;
+      this.dependencies = dependencies;
+    }
+  }
+}
@@ -2,29 +2,40 @@ package net.jangaroo.jooc;
 
 import java_cup.runtime.Symbol;
 import net.jangaroo.utils.AS3Type;
+import net.jangaroo.jooc.api.CompilationMetrics;
 import net.jangaroo.jooc.api.CompileLog;
 import net.jangaroo.jooc.api.FilePosition;
 import net.jangaroo.jooc.api.Jooc;
 import net.jangaroo.jooc.ast.AstNode;
+import net.jangaroo.jooc.ast.ClassDeclaration;
 import net.jangaroo.jooc.ast.CompilationUnit;
 import net.jangaroo.jooc.ast.Ide;
 import net.jangaroo.jooc.ast.IdeDeclaration;
 import net.jangaroo.jooc.ast.ImportDirective;
 import net.jangaroo.jooc.ast.PredefinedTypeDeclaration;
 import net.jangaroo.jooc.ast.VariableDeclaration;
+import net.jangaroo.jooc.backend.ApiModelGenerator;
 import net.jangaroo.jooc.config.ParserOptions;
 import net.jangaroo.jooc.config.SemicolonInsertionMode;
+import net.jangaroo.jooc.input.FileInputSource;
 import net.jangaroo.jooc.input.InputSource;
-import net.jangaroo.utils.BOMStripperInputStream;
+import net.jangaroo.jooc.input.SourceReaders;
+import net.jangaroo.jooc.input.ZipEntryInputSource;
+import net.jangaroo.jooc.model.CompilationUnitModel;
 import net.jangaroo.utils.CompilerUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class JangarooParser {
   public static final String JOO_API_IN_JAR_DIRECTORY_PREFIX = "META-INF/joo-api/";
@@ -37,6 +48,11 @@ public class JangarooParser {
   private InputSource classPathInputSource;
   private ParserOptions config;
   private Map<String, CompilationUnit> compilationUnitsByQName = new LinkedHashMap<String, CompilationUnit>();
+  private ClassPathUnitCache classPathUnitCache;
+  private SourceUnitCache sourceUnitCache;
+  // the names of all compilation units of a package, in source path and class path, by package name:
+  private final Map<String, Set<String>> packageIdesByPackageName = new ConcurrentHashMap<String, Set<String>>();
+  protected CompilationMetricsImpl metrics = new CompilationMetricsImpl();
 
   protected final Scope globalScope = new DeclarationScope(null, null);
 
@@ -93,6 +109,38 @@ public class JangarooParser {
     this.config = config;
   }
 
+  public ClassPathUnitCache getClassPathUnitCache() {
+    return classPathUnitCache;
+  }
+
+  /**
+   * Reuse the declarations of API stubs from jars on the class path that have been read by a previous
+   * compilation with the same class path, and keep newly read ones for the next compilation.
+   *
+   * @param classPathUnitCache the cache, or null to always parse all class path compilation units
+   */
+  public void setClassPathUnitCache(ClassPathUnitCache classPathUnitCache) {
+    this.classPathUnitCache = classPathUnitCache;
+  }
+
+  public SourceUnitCache getSourceUnitCache() {
+    return sourceUnitCache;
+  }
+
+  /**
+   * Reuse the declarations of unchanged source files that have been parsed by a previous compilation,
+   * and keep the declarations of newly parsed source files for the next compilation.
+   *
+   * @param sourceUnitCache the cache, or null to always parse all source path compilation units
+   */
+  public void setSourceUnitCache(SourceUnitCache sourceUnitCache) {
+    this.sourceUnitCache = sourceUnitCache;
+  }
+
+  public CompilationMetricsImpl getMetrics() {
+    return metrics;
+  }
+
   public CompileLog getLog() {
     return log;
   }
@@ -102,16 +150,42 @@ public class JangarooParser {
   }
 
   public static CompilationUnit doParse(InputSource in, CompileLog log, SemicolonInsertionMode semicolonInsertionMode) {
+    return doParse(in, log, semicolonInsertionMode, null);
+  }
+
+  /**
+   * Parse the given input source, measuring reading and parsing if metrics are given.
+   *
+   * @param in the input source to parse
+   * @param log the log to report syntax errors to
+   * @param semicolonInsertionMode the semicolon insertion mode
+   * @param metrics the metrics to record read and parse time in, or null
+   * @return the compilation unit, or null if it could not be parsed
+   */
+  public static CompilationUnit doParse(InputSource in, CompileLog log, SemicolonInsertionMode semicolonInsertionMode,
+                                        CompilationMetricsImpl metrics) {
     Scanner s;
+    if (metrics != null) {
+      metrics.startPhase(CompilationMetrics.PHASE_READ, in.getPath());
+    }
     try {
-      s = new Scanner(new InputStreamReader(new BOMStripperInputStream(in.getInputStream()), "UTF-8"));
-    } catch (IOException e) {
-      throw new CompilerError("Cannot read input file: " + in.getPath(), e);
+      // API stubs in jars are usually accompanied by an index of their declarations, which is much cheaper to read:
+      ApiDeclarationIndex index = in instanceof ZipEntryInputSource ? ApiDeclarationIndex.read((ZipEntryInputSource) in) : null;
+      if (index != null) {
+        return index.createCompilationUnit(in.getPath());
+      }
+      s = createScanner(in);
+    } finally {
+      if (metrics != null) {
+        metrics.endPhase();
+      }
     }
-    s.setInputSource(in);
     JooParser p = new JooParser(s);
     p.setCompileLog(log);
     p.setSemicolonInsertionMode(semicolonInsertionMode);
+    if (metrics != null) {
+      metrics.startPhase(CompilationMetrics.PHASE_PARSE, in.getPath());
+    }
     try {
       Symbol tree = p.parse();
       return (CompilationUnit) tree.value;
@@ -123,7 +197,22 @@ public class JangarooParser {
       return null;
     } catch (Exception e) {
       throw new IllegalArgumentException("could not parse Jangaroo source", e);
+    } finally {
+      if (metrics != null) {
+        metrics.endPhase();
+      }
+    }
+  }
+
+  private static Scanner createScanner(InputSource in) {
+    Scanner s;
+    try {
+      s = new Scanner(SourceReaders.createReader(in));
+    } catch (IOException e) {
+      throw new CompilerError("Cannot read input file: " + in.getPath(), e);
     }
+    s.setInputSource(in);
+    return s;
   }
 
   private static String nameWithoutExtension(InputSource input) {
@@ -159,18 +248,69 @@ public class JangarooParser {
     return CompilerUtils.fileNameFromQName(qname, is.getFileSeparatorChar(), extension);
   }
 
-  public CompilationUnit importSource(InputSource source) {
+  public synchronized CompilationUnit importSource(InputSource source) {
     CompilationUnit unit = parse(source);
     if (unit != null) {
-      unit.scope(globalScope);
-      String prefix = unit.getPackageDeclaration().getQualifiedNameStr();
-      String qname = CompilerUtils.qName(prefix, unit.getPrimaryDeclaration().getIde().getName());
-      checkValidFileName(qname, unit, source);
-      compilationUnitsByQName.put(qname, unit);
+      importCompilationUnit(unit);
     }
     return unit;
   }
 
+  /**
+   * Scope an already parsed compilation unit and make it available for import resolution.
+   * Scoping is not thread-safe, so compilation units parsed concurrently have to be imported one by one.
+   *
+   * @param unit the parsed compilation unit
+   */
+  protected synchronized void importCompilationUnit(CompilationUnit unit) {
+    if (!unit.getSource().isInSourcePath()) {
+      // class path compilation units are only needed to resolve declarations, so do not scope and keep their code:
+      unit.discardFunctionBodies();
+    }
+    metrics.startPhase(CompilationMetrics.PHASE_SCOPE, unit.getSource().getPath());
+    try {
+      unit.scope(globalScope);
+    } finally {
+      metrics.endPhase();
+    }
+    String prefix = unit.getPackageDeclaration().getQualifiedNameStr();
+    String qname = CompilerUtils.qName(prefix, unit.getPrimaryDeclaration().getIde().getName());
+    checkValidFileName(qname, unit, unit.getSource());
+    compilationUnitsByQName.put(qname, unit);
+    if (sourceUnitCache != null && unit.getSource() instanceof FileInputSource && unit.getSource().isInSourcePath()) {
+      cacheSourceUnit(unit, ((FileInputSource) unit.getSource()).getFile());
+    }
+  }
+
+  /**
+   * Keep the declarations of a scoped source path compilation unit for subsequent compilations, unless they
+   * are already cached for the current state of its source file.
+   */
+  private void cacheSourceUnit(CompilationUnit unit, File sourceFile) {
+    if (sourceUnitCache.get(sourceFile) != null) {
+      return;
+    }
+    IdeDeclaration primaryDeclaration = unit.getPrimaryDeclaration();
+    if (primaryDeclaration instanceof ClassDeclaration
+            && !((ClassDeclaration) primaryDeclaration).getSecondaryDeclarations().isEmpty()) {
+      // the index only represents the primary declaration:
+      return;
+    }
+    CompilationUnitModel model;
+    try {
+      model = new ApiModelGenerator(false, true).generateModel(unit);
+    } catch (IOException e) {
+      throw new IllegalStateException("generating a model in memory must not fail", e);
+    } catch (CompilerError e) {
+      // the error is reported when the compilation unit is compiled; until then, it is parsed by every compilation
+      return;
+    }
+    ApiDeclarationIndex declarations = ApiDeclarationIndex.create(model, unit.getSource().getPath());
+    if (declarations != null) {
+      sourceUnitCache.put(sourceFile, declarations);
+    }
+  }
+
   public IdeDeclaration resolveImport(final ImportDirective importDirective) {
     String qname = importDirective.getQualifiedName();
     CompilationUnit compilationUnit = getCompilationsUnit(qname);
@@ -180,18 +320,83 @@ public class JangarooParser {
     return compilationUnit.getPrimaryDeclaration();
   }
 
-  public CompilationUnit getCompilationsUnit(String qname) {
+  public synchronized CompilationUnit getCompilationsUnit(String qname) {
     CompilationUnit compilationUnit = compilationUnitsByQName.get(qname);
     if (compilationUnit == null) {
       InputSource source = findSource(qname);
       if (source == null) {
         return null;
       }
+      if (classPathUnitCache != null && source instanceof ZipEntryInputSource) {
+        compilationUnit = importIndexedSource(qname, (ZipEntryInputSource) source);
+        if (compilationUnit != null) {
+          return compilationUnit;
+        }
+      }
+      if (sourceUnitCache != null && source instanceof FileInputSource && source.isInSourcePath()) {
+        compilationUnit = importCachedSource((FileInputSource) source);
+        if (compilationUnit != null) {
+          return compilationUnit;
+        }
+      }
       compilationUnit = importSource(source);
+      if (compilationUnit != null && !source.isInSourcePath()) {
+        metrics.parsedClassPathUnit();
+      }
     }
     return compilationUnit;
   }
 
+  /**
+   * Import an API stub from a jar by creating its compilation unit from the index of its declarations, which is
+   * kept by the class path unit cache for subsequent compilations. The compilation unit itself is not shared,
+   * as it is scoped by this compiler.
+   *
+   * @return the compilation unit, or null if the API stub has no index
+   */
+  private CompilationUnit importIndexedSource(String qname, ZipEntryInputSource source) {
+    ApiDeclarationIndex declarations = classPathUnitCache.get(qname);
+    if (declarations != null) {
+      metrics.cachedClassPathUnit();
+    } else {
+      metrics.startPhase(CompilationMetrics.PHASE_READ, source.getPath());
+      try {
+        declarations = ApiDeclarationIndex.read(source);
+      } finally {
+        metrics.endPhase();
+      }
+      if (declarations == null) {
+        return null;
+      }
+      classPathUnitCache.put(qname, declarations);
+      metrics.parsedClassPathUnit();
+    }
+    CompilationUnit unit = declarations.createCompilationUnit(source.getPath());
+    unit.setCompiler(this);
+    unit.setSource(source);
+    importCompilationUnit(unit);
+    return unit;
+  }
+
+  /**
+   * Import an unchanged source file by creating its compilation unit from the declarations a previous
+   * compilation has parsed. As the source file is only imported, not compiled, its declarations suffice.
+   *
+   * @return the compilation unit, or null if the source file has not been cached or has changed since
+   */
+  private CompilationUnit importCachedSource(FileInputSource source) {
+    ApiDeclarationIndex declarations = sourceUnitCache.get(source.getFile());
+    if (declarations == null) {
+      return null;
+    }
+    metrics.cachedSourceUnit();
+    CompilationUnit unit = declarations.createCompilationUnit(source.getPath());
+    unit.setCompiler(this);
+    unit.setSource(source);
+    importCompilationUnit(unit);
+    return unit;
+  }
+
   private void checkValidFileName(final String qname, final CompilationUnit unit, final InputSource source) {
     // check valid file name for qname
     String path = source.getRelativePath();
@@ -214,7 +419,7 @@ public class JangarooParser {
     if (config.isVerbose()) {
       System.out.println("Parsing " + in.getPath() + " (" + (in.isInSourcePath() ? "source" : "class") + "path)"); // NOSONAR this is a cmd line tool
     }
-    CompilationUnit unit = doParse(in, log, config.getSemicolonInsertionMode());
+    CompilationUnit unit = doParse(in, log, config.getSemicolonInsertionMode(), metrics);
     if (unit != null) {
       unit.setCompiler(this);
       unit.setSource(in);
@@ -223,10 +428,26 @@ public class JangarooParser {
   }
 
   public List<String> getPackageIdes(String packageName) {
-    List<String> result = new ArrayList<String>(10);
-    addPackageFolderSymbols(result, packageName, sourcePathInputSource);
-    addPackageFolderSymbols(result, packageName, classPathInputSource);
-    return result;
+    return new ArrayList<String>(getPackageIdeSet(packageName));
+  }
+
+  /**
+   * Determine the names of all compilation units of the given package, in source path and class path.
+   * Each package folder is listed at most once per compilation.
+   *
+   * @param packageName the qualified name of the package, or the empty string for the top level package
+   * @return the unmodifiable set of the names of all compilation units of the package
+   */
+  public Set<String> getPackageIdeSet(String packageName) {
+    Set<String> packageIdes = packageIdesByPackageName.get(packageName);
+    if (packageIdes == null) {
+      List<String> result = new ArrayList<String>(10);
+      addPackageFolderSymbols(result, packageName, sourcePathInputSource);
+      addPackageFolderSymbols(result, packageName, classPathInputSource);
+      packageIdes = Collections.unmodifiableSet(new LinkedHashSet<String>(result));
+      packageIdesByPackageName.put(packageName, packageIdes);
+    }
+    return packageIdes;
   }
 
   private void addPackageFolderSymbols(final List<String> result, final String packageName, final InputSource path) {
@@ -254,6 +475,7 @@ public class JangarooParser {
     defaultLog.set(log);
     this.sourcePathInputSource = sourcePathInputSource;
     this.classPathInputSource = classPathInputSource;
+    packageIdesByPackageName.clear();
 
     buildGlobalScope();
   }
@@ -262,6 +484,35 @@ public class JangarooParser {
     defaultLog.remove();
   }
 
+  /**
+   * Create a factory for worker threads of a parallel compilation. Each worker thread reports
+   * warnings and errors to the log of this parser, like the thread that called {@link #setUp}.
+   *
+   * @return the thread factory
+   */
+  protected ThreadFactory createWorkerThreadFactory() {
+    return new ThreadFactory() {
+      private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+      @Override
+      public Thread newThread(final Runnable runnable) {
+        Thread thread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            defaultLog.set(log);
+            try {
+              runnable.run();
+            } finally {
+              defaultLog.remove();
+            }
+          }
+        }, "jooc-worker-" + threadNumber.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
   private static class FilePositionImpl implements FilePosition {
     private final File file;
 
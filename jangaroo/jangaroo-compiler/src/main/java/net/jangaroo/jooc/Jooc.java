@@ -15,10 +15,12 @@
 
 package net.jangaroo.jooc;
 
+import net.jangaroo.jooc.api.CompilationMetrics;
 import net.jangaroo.jooc.api.CompilationResult;
 import net.jangaroo.jooc.api.CompileLog;
 import net.jangaroo.jooc.ast.ClassDeclaration;
 import net.jangaroo.jooc.ast.CompilationUnit;
+import net.jangaroo.jooc.backend.AbstractCompilationUnitSinkFactory;
 import net.jangaroo.jooc.backend.CompilationUnitSink;
 import net.jangaroo.jooc.backend.CompilationUnitSinkFactory;
 import net.jangaroo.jooc.backend.MergedOutputCompilationUnitSinkFactory;
@@ -27,6 +29,8 @@ import net.jangaroo.jooc.cli.CommandLineParseException;
 import net.jangaroo.jooc.cli.JoocCommandLineParser;
 import net.jangaroo.jooc.config.JoocConfiguration;
 import net.jangaroo.jooc.config.PublicApiViolationsMode;
+import net.jangaroo.jooc.daemon.JoocDaemonClient;
+import net.jangaroo.jooc.daemon.JoocWatcher;
 import net.jangaroo.jooc.input.FileInputSource;
 import net.jangaroo.jooc.input.InputSource;
 import net.jangaroo.jooc.input.PathInputSource;
@@ -35,8 +39,19 @@ import net.jangaroo.jooc.input.ZipEntryInputSource;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The Jangaroo AS3-to-JS Compiler's main class.
@@ -78,6 +93,13 @@ public class Jooc extends JangarooParser implements net.jangaroo.jooc.api.Jooc {
   @Override
   public CompilationResult run() {
     try {
+      if (getConfig().getDaemonPort() > 0) {
+        CompilationResult result = new JoocDaemonClient(getConfig().getDaemonPort()).compile(getConfig(), log);
+        if (result != null) {
+          return result;
+        }
+        log.warning("No Jangaroo compiler daemon listening on port " + getConfig().getDaemonPort() + ", compiling in-process.");
+      }
       return run1();
     } catch (CompilerError e) {
       if (e.getSymbol() != null) {
@@ -94,53 +116,370 @@ public class Jooc extends JangarooParser implements net.jangaroo.jooc.api.Jooc {
   }
 
   private CompilationResult run1() {
-    InputSource sourcePathInputSource;
-    InputSource classPathInputSource;
-    try {
-      sourcePathInputSource = PathInputSource.fromFiles(getConfig().getSourcePath(), new String[]{""}, true);
-      classPathInputSource = PathInputSource.fromFiles(getConfig().getClassPath(), new String[]{"", JOO_API_IN_JAR_DIRECTORY_PREFIX}, false);
-    } catch (IOException e) {
-      throw new CompilerError("IO Exception occurred", e);
-    }
-
-    setUp(sourcePathInputSource, classPathInputSource);
-
+    metrics = new CompilationMetricsImpl();
+    metrics.start();
     HashMap<File, File> outputFileMap = new HashMap<File, File>();
+    int threads = getThreadCount();
+    ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads, createWorkerThreadFactory()) : null;
+    CompilationUnitSinkFactory codeSinkFactory = null;
     try {
+      InputSource sourcePathInputSource = PathInputSource.fromFiles(getConfig().getSourcePath(), new String[]{""}, true);
+      setUp(sourcePathInputSource, openClassPath(executor));
+
+      DependencyCache dependencyCache = loadDependencyCache();
+      Set<File> compiledSourceFiles = new HashSet<File>();
       for (File sourceFile : getConfig().getSourceFiles()) {
-        processSource(sourceFile);
+        compiledSourceFiles.add(sourceFile.getCanonicalFile());
+      }
+      Map<String, File> dependentSourceFiles = dependencyCache == null ? Collections.<String, File>emptyMap()
+              : getInitiallyStaleDependents(dependencyCache, compiledSourceFiles);
+
+      if (executor == null) {
+        for (File sourceFile : getConfig().getSourceFiles()) {
+          processSource(sourceFile);
+        }
+      } else {
+        processSources(executor, getConfig().getSourceFiles());
       }
 
-      CompilationUnitSinkFactory codeSinkFactory = createSinkFactory(getConfig(), false);
+      codeSinkFactory = createSinkFactory(getConfig(), false);
       CompilationUnitSinkFactory apiSinkFactory = null;
       if (getConfig().isGenerateApi()) {
         apiSinkFactory = createSinkFactory(getConfig(), true);
       }
-      for (CompilationUnit unit : compileQueue) {
-        unit.analyze(null);
-        if (getConfig().getPublicApiViolationsMode() != PublicApiViolationsMode.ALLOW) {
-          reportPublicApiViolations(unit);
+      int compiledUnitCount = 0;
+      List<String> unrecordedQNames = new ArrayList<String>();
+      try {
+        while (true) {
+          unrecordedQNames.addAll(dependentSourceFiles.keySet());
+          for (Map.Entry<String, File> dependentSourceFile : dependentSourceFiles.entrySet()) {
+            processDependentSource(dependentSourceFile.getKey(), dependentSourceFile.getValue());
+          }
+          List<CompilationUnit> units = compileQueue.subList(compiledUnitCount, compileQueue.size());
+          compiledUnitCount = compileQueue.size();
+          unrecordedQNames.addAll(getQualifiedNames(units));
+          if (executor == null) {
+            compile(units, codeSinkFactory, apiSinkFactory, outputFileMap);
+          } else {
+            compileInParallel(executor, units, codeSinkFactory, apiSinkFactory, outputFileMap);
+          }
+          if (dependencyCache == null) {
+            break;
+          }
+          // compile all classes that depend on a class whose public API changed, until the public API is stable:
+          dependentSourceFiles = updateDependencyCache(dependencyCache, units, compiledSourceFiles);
+          if (log.hasErrors()) {
+            unrecordedQNames.addAll(dependentSourceFiles.keySet());
+            break;
+          }
+          unrecordedQNames.clear();
+          if (dependentSourceFiles.isEmpty()) {
+            break;
+          }
+          metrics.recompiledDependentUnits(dependentSourceFiles.size());
         }
-        File sourceFile = ((FileInputSource)unit.getSource()).getFile();
-        File outputFile = null;
-        // only generate JavaScript if [Native] annotation and 'native' modifier on primary declaration are not present:
-        if (unit.getAnnotation(NATIVE_ANNOTATION_NAME) == null && !unit.getPrimaryDeclaration().isNative()) {
-          outputFile = writeOutput(sourceFile, unit, codeSinkFactory, getConfig().isVerbose());
-        }
-        outputFileMap.put(sourceFile, outputFile); // always map source file, even if output file is null!
-        if (getConfig().isGenerateApi()) {
-          writeOutput(sourceFile, unit, apiSinkFactory, getConfig().isVerbose());
+      } finally {
+        if (dependencyCache != null) {
+          // When compilation fails, the next compilation has to recompile the classes compiled with errors or
+          // not compiled at all, and the dependents of changed public API this compilation did not get to:
+          dependencyCache.invalidate(unrecordedQNames);
+          dependencyCache.save();
         }
       }
       int result = log.hasErrors() ? CompilationResult.RESULT_CODE_COMPILATION_FAILED : CompilationResult.RESULT_CODE_OK;
-      return new CompilationResultImpl(result, outputFileMap);
+      if (result == CompilationResult.RESULT_CODE_OK && codeSinkFactory instanceof MergedOutputCompilationUnitSinkFactory) {
+        ((MergedOutputCompilationUnitSinkFactory) codeSinkFactory).commit();
+      }
+      metrics.stop();
+      if (getConfig().getMetricsReportFile() != null) {
+        metrics.writeReport(getConfig().getMetricsReportFile());
+      }
+      return new CompilationResultImpl(result, outputFileMap, metrics);
     } catch (IOException e) {
       throw new CompilerError("IO Exception occurred", e);
     } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+      if (codeSinkFactory instanceof MergedOutputCompilationUnitSinkFactory) {
+        // never leave incomplete merged output behind:
+        ((MergedOutputCompilationUnitSinkFactory) codeSinkFactory).abort();
+      }
       tearDown();
     }
   }
 
+  /**
+   * Open all jars of the class path, concurrently if an executor is given. A class path unit cache also keeps the
+   * opened class path, so that subsequent compilations with the same class path do not have to open and index
+   * its jars again.
+   */
+  private InputSource openClassPath(ExecutorService executor) throws IOException {
+    ClassPathUnitCache classPathUnitCache = getClassPathUnitCache();
+    InputSource classPathInputSource = classPathUnitCache == null ? null : classPathUnitCache.getClassPathInputSource();
+    if (classPathInputSource == null) {
+      classPathInputSource = PathInputSource.fromFiles(getConfig().getClassPath(),
+              new String[]{"", JOO_API_IN_JAR_DIRECTORY_PREFIX}, false, executor);
+      if (classPathUnitCache != null) {
+        classPathUnitCache.setClassPathInputSource(classPathInputSource);
+      }
+    }
+    return classPathInputSource;
+  }
+
+  private DependencyCache loadDependencyCache() throws IOException {
+    if (!getConfig().isIncremental()) {
+      return null;
+    }
+    if (getConfig().isMergeOutput()) {
+      warning("Incremental compilation is not supported together with merged output; compiling the given source files only.");
+      return null;
+    }
+    return DependencyCache.load(getConfig().getDependencyCacheFile());
+  }
+
+  /**
+   * Determine the source files to recompile before any compilation unit has been compiled: the dependents of
+   * deleted classes, so that they report errors, and all classes that a previous, failed compilation marked
+   * invalid in the dependency cache.
+   */
+  private Map<String, File> getInitiallyStaleDependents(DependencyCache dependencyCache, Set<File> compiledSourceFiles) {
+    Map<String, File> dependents = getUncompiledDependents(dependencyCache, dependencyCache.removeDeletedSources(), compiledSourceFiles);
+    for (Map.Entry<String, File> invalidSource : dependencyCache.getInvalidSources().entrySet()) {
+      if (compiledSourceFiles.add(invalidSource.getValue())) {
+        dependents.put(invalidSource.getKey(), invalidSource.getValue());
+      }
+    }
+    metrics.recompiledDependentUnits(dependents.size());
+    return dependents;
+  }
+
+  private static List<String> getQualifiedNames(List<CompilationUnit> units) {
+    List<String> qNames = new ArrayList<String>(units.size());
+    for (CompilationUnit unit : units) {
+      qNames.add(unit.getPrimaryDeclaration().getQualifiedNameStr());
+    }
+    return qNames;
+  }
+
+  /**
+   * Record dependencies and public API of the given freshly compiled compilation units in the dependency cache
+   * and determine which other compilation units have to be recompiled because of public API changes.
+   */
+  private Map<String, File> updateDependencyCache(DependencyCache dependencyCache, List<CompilationUnit> units,
+                                                  Set<File> compiledSourceFiles) throws IOException {
+    Set<String> changedQNames = new LinkedHashSet<String>();
+    for (CompilationUnit unit : units) {
+      String qName = unit.getPrimaryDeclaration().getQualifiedNameStr();
+      if (dependencyCache.update(qName, ((FileInputSource)unit.getSource()).getFile(), unit)) {
+        changedQNames.add(qName);
+      }
+    }
+    return getUncompiledDependents(dependencyCache, changedQNames, compiledSourceFiles);
+  }
+
+  private Map<String, File> getUncompiledDependents(DependencyCache dependencyCache, Set<String> changedQNames,
+                                                    Set<File> compiledSourceFiles) {
+    Map<String, File> dependents = new LinkedHashMap<String, File>();
+    if (!changedQNames.isEmpty()) {
+      for (Map.Entry<String, File> dependent : dependencyCache.getDependents(changedQNames).entrySet()) {
+        if (compiledSourceFiles.add(dependent.getValue())) {
+          dependents.put(dependent.getKey(), dependent.getValue());
+        }
+      }
+    }
+    return dependents;
+  }
+
+  /**
+   * Enqueue the source file of a compilation unit that has to be recompiled because a compilation unit it depends
+   * on changed. The compilation unit may already have been imported while analyzing another compilation unit.
+   */
+  private void processDependentSource(String qName, File sourceFile) throws IOException {
+    CompilationUnit unit = getCompilationsUnit(qName);
+    if (unit != null && unit.getSource() instanceof FileInputSource
+            && ((FileInputSource) unit.getSource()).getFile().getCanonicalFile().equals(sourceFile)) {
+      compileQueue.add(unit);
+    } else {
+      processSource(sourceFile);
+    }
+  }
+
+  private void compile(List<CompilationUnit> units,
+                       CompilationUnitSinkFactory codeSinkFactory,
+                       CompilationUnitSinkFactory apiSinkFactory,
+                       Map<File, File> outputFileMap) {
+    for (CompilationUnit unit : units) {
+      analyze(unit);
+      File sourceFile = ((FileInputSource)unit.getSource()).getFile();
+      File outputFile = writeCode(sourceFile, unit, codeSinkFactory);
+      outputFileMap.put(sourceFile, outputFile); // always map source file, even if output file is null!
+      if (apiSinkFactory != null) {
+        writeApi(sourceFile, unit, apiSinkFactory);
+      }
+    }
+  }
+
+  private int getThreadCount() {
+    int threads = getConfig().getThreads();
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  private void analyze(CompilationUnit unit) {
+    metrics.startPhase(CompilationMetrics.PHASE_ANALYZE, unit.getSource().getPath());
+    try {
+      unit.analyze(null);
+      if (getConfig().getPublicApiViolationsMode() != PublicApiViolationsMode.ALLOW) {
+        reportPublicApiViolations(unit);
+      }
+    } finally {
+      metrics.endPhase();
+    }
+    metrics.compiledUnit();
+  }
+
+  private static boolean isGenerateCode(CompilationUnit unit) {
+    // only generate JavaScript if [Native] annotation and 'native' modifier on primary declaration are not present:
+    return unit.getAnnotation(NATIVE_ANNOTATION_NAME) == null && !unit.getPrimaryDeclaration().isNative();
+  }
+
+  private File writeCode(File sourceFile, CompilationUnit unit, CompilationUnitSinkFactory codeSinkFactory) {
+    if (isGenerateCode(unit)) {
+      metrics.startPhase(CompilationMetrics.PHASE_GENERATE_CODE, unit.getSource().getPath());
+      try {
+        return writeOutput(sourceFile, unit, codeSinkFactory, getConfig().isVerbose());
+      } finally {
+        metrics.endPhase();
+      }
+    }
+    return null;
+  }
+
+  private void writeApi(File sourceFile, CompilationUnit unit, CompilationUnitSinkFactory apiSinkFactory) {
+    metrics.startPhase(CompilationMetrics.PHASE_GENERATE_API, unit.getSource().getPath());
+    try {
+      writeOutput(sourceFile, unit, apiSinkFactory, getConfig().isVerbose());
+    } finally {
+      metrics.endPhase();
+    }
+  }
+
+  /**
+   * Parse the given source files concurrently, then scope and enqueue the resulting compilation units
+   * in the order of the source files, so that the compile queue is the same as for sequential processing.
+   */
+  private void processSources(ExecutorService executor, List<File> sourceFiles) throws IOException {
+    List<Callable<CompilationUnit>> parseTasks = new ArrayList<Callable<CompilationUnit>>(sourceFiles.size());
+    for (File sourceFile : sourceFiles) {
+      if (sourceFile.isDirectory()) {
+        throw error("Input file is a directory.", sourceFile);
+      }
+      final FileInputSource source = new FileInputSource(getConfig().findSourceDir(sourceFile), sourceFile, true);
+      parseTasks.add(new Callable<CompilationUnit>() {
+        @Override
+        public CompilationUnit call() {
+          return parse(source);
+        }
+      });
+    }
+    for (CompilationUnit unit : invokeAll(executor, parseTasks)) {
+      if (unit != null) {
+        importCompilationUnit(unit);
+        compileQueue.add(unit);
+      }
+    }
+  }
+
+  /**
+   * Analyze all compilation units concurrently and, only after all of them have been analyzed, generate their
+   * code concurrently. Merged output is appended in compile queue order to keep it identical to the output of
+   * sequential compilation.
+   */
+  private void compileInParallel(ExecutorService executor,
+                                 List<CompilationUnit> units,
+                                 final CompilationUnitSinkFactory codeSinkFactory,
+                                 final CompilationUnitSinkFactory apiSinkFactory,
+                                 Map<File, File> outputFileMap) throws IOException {
+    List<Callable<Object>> analyzeTasks = new ArrayList<Callable<Object>>(units.size());
+    for (final CompilationUnit unit : units) {
+      analyzeTasks.add(new Callable<Object>() {
+        @Override
+        public Object call() {
+          analyze(unit);
+          return unit;
+        }
+      });
+    }
+    invokeAll(executor, analyzeTasks);
+
+    if (codeSinkFactory instanceof MergedOutputCompilationUnitSinkFactory) {
+      List<CompilationUnit> unitsWithCode = new ArrayList<CompilationUnit>(units.size());
+      for (CompilationUnit unit : units) {
+        if (isGenerateCode(unit)) {
+          unitsWithCode.add(unit);
+        }
+      }
+      ((MergedOutputCompilationUnitSinkFactory) codeSinkFactory).expectUnits(unitsWithCode);
+    }
+    List<Callable<File>> generateTasks = new ArrayList<Callable<File>>(units.size());
+    for (final CompilationUnit unit : units) {
+      generateTasks.add(new Callable<File>() {
+        @Override
+        public File call() {
+          File sourceFile = ((FileInputSource)unit.getSource()).getFile();
+          File outputFile = writeCode(sourceFile, unit, codeSinkFactory);
+          if (apiSinkFactory != null) {
+            writeApi(sourceFile, unit, apiSinkFactory);
+          }
+          return outputFile;
+        }
+      });
+    }
+    List<File> outputFiles = invokeAll(executor, generateTasks);
+
+    for (int i = 0; i < units.size(); i++) {
+      CompilationUnit unit = units.get(i);
+      File sourceFile = ((FileInputSource)unit.getSource()).getFile();
+      outputFileMap.put(sourceFile, outputFiles.get(i)); // always map source file, even if output file is null!
+    }
+  }
+
+  /**
+   * Run all given tasks and wait for their completion. If any task fails, the failure of the first failed task
+   * (in task order) is rethrown, which is the failure sequential processing would have stopped at.
+   */
+  private static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) throws IOException {
+    List<Future<T>> futures;
+    try {
+      futures = executor.invokeAll(tasks);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompilerError("Compilation interrupted", e);
+    }
+    List<T> results = new ArrayList<T>(futures.size());
+    for (Future<T> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CompilerError("Compilation interrupted", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new CompilerError("Exception occurred in compiler worker thread", cause);
+      }
+    }
+    return results;
+  }
+
   private void reportPublicApiViolations(CompilationUnit unit) {
     for (CompilationUnit compilationUnit : unit.getDependenciesAsCompilationUnits()) {
       if (compilationUnit.getSource() instanceof ZipEntryInputSource
@@ -168,7 +507,7 @@ public class Jooc extends JangarooParser implements net.jangaroo.jooc.api.Jooc {
   }
 
   private CompilationUnitSinkFactory createSinkFactory(JoocConfiguration config, final boolean generateActionScriptApi) {
-    CompilationUnitSinkFactory codeSinkFactory;
+    AbstractCompilationUnitSinkFactory codeSinkFactory;
 
     if (!generateActionScriptApi && config.isMergeOutput()) {
       codeSinkFactory = new MergedOutputCompilationUnitSinkFactory(
@@ -179,6 +518,7 @@ public class Jooc extends JangarooParser implements net.jangaroo.jooc.api.Jooc {
       final String suffix = generateActionScriptApi ? AS_SUFFIX : OUTPUT_FILE_SUFFIX;
       codeSinkFactory = new SingleFileCompilationUnitSinkFactory(config, outputDirectory, generateActionScriptApi, suffix);
     }
+    codeSinkFactory.setMetrics(metrics);
     return codeSinkFactory;
   }
 
@@ -218,11 +558,20 @@ public class Jooc extends JangarooParser implements net.jangaroo.jooc.api.Jooc {
       JoocCommandLineParser commandLineParser = new JoocCommandLineParser();
       JoocConfiguration config = commandLineParser.parse(argv);
       if (config != null) {
+        if (config.isWatch()) {
+          new JoocWatcher(config, log).run(JoocWatcher.DEFAULT_POLL_INTERVAL_MILLIS);
+          return CompilationResult.RESULT_CODE_OK;
+        }
         return new Jooc(config, log).run().getResultCode();
       }
     } catch (CommandLineParseException e) {
       System.out.println(e.getMessage()); // NOSONAR this is a commandline tool
       return e.getExitCode();
+    } catch (IOException e) {
+      log.error("cannot start watching source files: " + e.getMessage());
+      return CompilationResult.RESULT_CODE_INTERNAL_COMPILER_ERROR;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
     return CompilationResult.RESULT_CODE_OK;
   }
@@ -30,22 +30,66 @@ import java.util.Date;
  */
 public final class JsWriter extends FilterWriter {
 
+  private static final byte IDE_CHAR = 1;
+  private static final byte OPERATOR_CHAR = 2;
+
+  /**
+   * The character classes of all ASCII characters, so that deciding whether two tokens have to be separated by
+   * a blank does not need any lookup for the overwhelming majority of tokens.
+   */
+  private static final byte[] ASCII_CHAR_CLASSES = new byte[128];
+
+  static {
+    for (char c = 0; c < ASCII_CHAR_CLASSES.length; c++) {
+      if (c == '$' || c == '_' || Character.isLetterOrDigit(c)) {
+        ASCII_CHAR_CLASSES[c] = IDE_CHAR;
+      }
+    }
+    for (char c : "=><!&|+-*/^%".toCharArray()) {
+      ASCII_CHAR_CLASSES[c] = OPERATOR_CHAR;
+    }
+  }
+
   private JsStringLiteralWriter stringLiteralWriter;
   private JoocOptions options;
+  private boolean minify = false;
   private boolean commentStartWritten = false;
   private int nOpenBeginComments = 0;
   private char lastChar = ' ';
   private boolean inString = false;
   private int nOpenStrings = 0;
   private boolean suppressWhitespace = false;
+  private SourceMapGenerator sourceMap;
+  private PositionTrackingWriter positionTracker;
 
   public JsWriter(Writer target) {
     super(target);
     stringLiteralWriter = new JsStringLiteralWriter(target, false);
   }
 
+  /**
+   * Let this writer add a mapping to the given source map for each source symbol it writes.
+   * Must be called before anything is written.
+   *
+   * @param sourceMap the source map to add mappings to
+   */
+  public void setSourceMap(SourceMapGenerator sourceMap) {
+    this.sourceMap = sourceMap;
+    if (positionTracker == null) {
+      positionTracker = new PositionTrackingWriter(out);
+      out = positionTracker;
+      stringLiteralWriter = new JsStringLiteralWriter(positionTracker, false);
+    }
+  }
+
   public void setOptions(JoocOptions options) {
     this.options = options;
+    try {
+      minify = options.isMinify();
+    } catch (IncompatibleClassChangeError e) {
+      // ignore, old front ends did not know about minification
+      minify = false;
+    }
   }
 
   public JoocOptions getOptions() {
@@ -53,11 +97,20 @@ public final class JsWriter extends FilterWriter {
   }
 
   public boolean getKeepSource() {
-    return options.getDebugMode() != null && DebugMode.SOURCE.equals(options.getDebugMode());
+    return !minify && options.getDebugMode() != null && DebugMode.SOURCE.equals(options.getDebugMode());
   }
 
   public boolean getKeepLines() {
-    return options.getDebugMode() != null && DebugMode.LINES.equals(options.getDebugMode());
+    return !minify && options.getDebugMode() != null && DebugMode.LINES.equals(options.getDebugMode());
+  }
+
+  /**
+   * Whether to write code as short as possible: no line breaks are kept, and code generators rename local
+   * variables and parameters. Statements are still separated correctly, as the parser makes all semicolons
+   * explicit.
+   */
+  public boolean isMinify() {
+    return minify;
   }
 
   public void writeInt(int value) throws IOException {
@@ -204,23 +257,23 @@ public final class JsWriter extends FilterWriter {
   }
 
   private void writeLinesInsideString(String ws) throws IOException {
-    String[] lines = ws.split("\n", -1);
-    for (int i = 0; i < lines.length - 1; i++) {
-      String line = lines[i];
-      if (line.length() > 1) {
+    int lineStart = 0;
+    for (int lineEnd = ws.indexOf('\n'); lineEnd != -1; lineEnd = ws.indexOf('\n', lineStart)) {
+      if (lineEnd - lineStart > 1) {
         checkOpenString();
-        write(line.substring(0, line.length() - 1));
+        // the last character of the line (usually a carriage return) is replaced by the escaped line feed:
+        write(ws, lineStart, lineEnd - lineStart - 1);
         write("\\n");
       }
       if (checkCloseString()) {
         write("+");
       }
       write("\n");
+      lineStart = lineEnd + 1;
     }
-    String line = lines[lines.length - 1];
-    if (line.length() > 0) {
+    if (lineStart < ws.length()) {
       checkOpenString();
-      write(line);
+      write(ws, lineStart, ws.length() - lineStart);
     }
   }
 
@@ -241,7 +294,7 @@ public final class JsWriter extends FilterWriter {
       }
     } else if (getKeepLines()) {
       writeLines(ws);
-    } else {
+    } else if (!minify) {
       writeLine(ws);
     }
   }
@@ -277,20 +330,31 @@ public final class JsWriter extends FilterWriter {
   }
 
   public void writeToken(String token) throws IOException {
+    writeToken(token, null);
+  }
+
+  private void writeToken(String token, JooSymbol symbol) throws IOException {
     if (shouldWrite()) {
       char firstSymbolChar = token.charAt(0);
       if ((isIdeChar(lastChar) && isIdeChar(firstSymbolChar)) ||
-              (lastChar == firstSymbolChar && "=><!&|+-*/&|^%".indexOf(lastChar) >= 0) ||
-              (firstSymbolChar == '=' && "=><!&|+-*/&|^%".indexOf(lastChar) >= 0)) {
+              ((lastChar == firstSymbolChar || firstSymbolChar == '=') && isOperatorChar(lastChar))) {
         write(' ');
       }
       checkOpenString();
+      if (symbol != null && sourceMap != null && nOpenBeginComments == 0 && !inString && symbol.getLine() > 0) {
+        sourceMap.addMapping(positionTracker.line, positionTracker.column,
+                symbol.getFileName(), symbol.getLine() - 1, symbol.getColumn() - 1);
+      }
       write(token);
     }
   }
 
-  private boolean isIdeChar(final char ch) {
-    return ch == '$' || ch == '_' || Character.isLetterOrDigit(ch);
+  private static boolean isIdeChar(final char ch) {
+    return ch < ASCII_CHAR_CLASSES.length ? ASCII_CHAR_CLASSES[ch] == IDE_CHAR : Character.isLetterOrDigit(ch);
+  }
+
+  private static boolean isOperatorChar(final char ch) {
+    return ch < ASCII_CHAR_CLASSES.length && ASCII_CHAR_CLASSES[ch] == OPERATOR_CHAR;
   }
 
   public void writeSymbol(JooSymbol symbol) throws IOException {
@@ -306,7 +370,7 @@ public final class JsWriter extends FilterWriter {
 
 
   public void writeSymbolToken(JooSymbol symbol) throws IOException {
-    writeToken(symbol.getText());
+    writeToken(symbol.getText(), symbol.isVirtual() || symbol.getFileName() == null ? null : symbol);
   }
 
   public void write(int c) throws IOException {
@@ -323,20 +387,16 @@ public final class JsWriter extends FilterWriter {
     if (len > 0) {
       if (shouldWrite()) {
         if (commentStartWritten) {
-          for (int i = 0; i < len; i++) {
-            char c = cbuf[off + i];
-            write(c);
-          }
+          writeCommentText(cbuf, off, len);
         } else {
           super.write(cbuf, off, len);
         }
         lastChar = cbuf[off + len - 1];
       } else if (getKeepLines()) {
-        for (int i = 0; i < len; i++) {
-          char c = cbuf[off + i];
-          if (c == '\n') {
-            super.write(c);
-            lastChar = c;
+        for (int i = off, end = off + len; i < end; i++) {
+          if (cbuf[i] == '\n') {
+            super.write('\n');
+            lastChar = '\n';
           }
         }
       }
@@ -347,10 +407,7 @@ public final class JsWriter extends FilterWriter {
     if (len > 0) {
       if (shouldWrite()) {
         if (commentStartWritten) {
-          for (int i = 0; i < len; i++) {
-            char c = str.charAt(off + i);
-            write(c);
-          }
+          writeCommentText(str, off, len);
         } else {
           super.write(str, off, len);
         }
@@ -361,6 +418,40 @@ public final class JsWriter extends FilterWriter {
     }
   }
 
+  /**
+   * Write text inside a comment in as few chunks as possible, only separating a slash that follows an asterisk,
+   * so that the text cannot end the comment prematurely.
+   */
+  private void writeCommentText(char cbuf[], int off, int len) throws IOException {
+    char previousChar = lastChar;
+    int chunkStart = off;
+    for (int i = off, end = off + len; i < end; i++) {
+      char c = cbuf[i];
+      if (c == '/' && previousChar == '*') {
+        super.write(cbuf, chunkStart, i - chunkStart);
+        super.write(' ');
+        chunkStart = i;
+      }
+      previousChar = c;
+    }
+    super.write(cbuf, chunkStart, off + len - chunkStart);
+  }
+
+  private void writeCommentText(String str, int off, int len) throws IOException {
+    char previousChar = lastChar;
+    int chunkStart = off;
+    for (int i = off, end = off + len; i < end; i++) {
+      char c = str.charAt(i);
+      if (c == '/' && previousChar == '*') {
+        super.write(str, chunkStart, i - chunkStart);
+        super.write(' ');
+        chunkStart = i;
+      }
+      previousChar = c;
+    }
+    super.write(str, chunkStart, off + len - chunkStart);
+  }
+
   private static String qualifiedNameToIde(String[] qn) {
     StringBuilder result = new StringBuilder(20);
     for (int i = 0; i < qn.length; i++) {
@@ -385,4 +476,47 @@ public final class JsWriter extends FilterWriter {
   public boolean isWritingComment() {
     return nOpenBeginComments > 0;
   }
+
+  /**
+   * Keeps track of the line and column the next character is written to, for source maps.
+   */
+  private static final class PositionTrackingWriter extends FilterWriter {
+    private int line;
+    private int column;
+
+    private PositionTrackingWriter(Writer out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+      out.write(c);
+      advance((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      out.write(cbuf, off, len);
+      for (int i = off, end = off + len; i < end; i++) {
+        advance(cbuf[i]);
+      }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      out.write(str, off, len);
+      for (int i = off, end = off + len; i < end; i++) {
+        advance(str.charAt(i));
+      }
+    }
+
+    private void advance(char c) {
+      if (c == '\n') {
+        line++;
+        column = 0;
+      } else {
+        column++;
+      }
+    }
+  }
 }
@@ -87,9 +87,12 @@ public abstract class ScannerBase implements sym {
   }
 
   protected String popWhitespace() {
+    if (whitespace.length() == 0) {
+      return "";
+    }
     String result = whitespace.toString();
     whitespace.setLength(0);
-    return result;
+    return TokenTexts.intern(result);
   }
 
   protected void pushString(String string) {
@@ -130,11 +133,19 @@ public abstract class ScannerBase implements sym {
   protected abstract String yytext();
 
   protected JooSymbol symbol(int sym) {
-    return new JooSymbol(sym, fileName, getLine(), getColumn(), popWhitespace(), yytext());
+    return new JooSymbol(sym, fileName, getLine(), getColumn(), popWhitespace(), TokenTexts.intern(yytext()));
   }
 
   protected JooSymbol symbol(int sym, Object value) {
-    return new JooSymbol(sym, fileName, getLine(), getColumn(), popWhitespace(), yytext(), value);
+    String text = yytext();
+    if (sym == IDE) {
+      text = TokenTexts.intern(text);
+      if (text.equals(value)) {
+        // the value of an identifier is its text, so do not keep a copy:
+        value = text;
+      }
+    }
+    return new JooSymbol(sym, fileName, getLine(), getColumn(), popWhitespace(), text, value);
   }
 
   protected JooSymbol multiStateSymbol(int sym, Object value) {
@@ -0,0 +1,218 @@
+package net.jangaroo.jooc;
+
+import net.jangaroo.jooc.input.FileInputSource;
+import net.jangaroo.jooc.input.InputSource;
+import net.jangaroo.jooc.input.SourceReaders;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the mappings from positions in generated JavaScript code to positions in ActionScript source files,
+ * and writes them as a source map (revision 3). A {@link JsWriter} adds a mapping for each source symbol it
+ * writes. Source files are named by their path relative to the source path if they have been
+ * {@link #addSource(InputSource) added}, and their content is embedded into the source map, so that the generated
+ * code can be debugged wherever it is deployed.
+ */
+public final class SourceMapGenerator {
+
+  private static final String BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+  private static final int FIELDS_PER_MAPPING = 5;
+
+  private final Map<String, Integer> sourceIndexes = new HashMap<String, Integer>();
+  private final List<String> sourcePaths = new ArrayList<String>();
+  private final Map<String, InputSource> inputSourcesByPath = new LinkedHashMap<String, InputSource>();
+  // generated line, generated column, source index, source line, source column of all mappings, all 0-based:
+  private int[] mappings = new int[64 * FIELDS_PER_MAPPING];
+  private int mappingCount;
+
+  /**
+   * Name the given source file by its relative path, and read its content from the given input source.
+   *
+   * @param inputSource the input source of a compilation unit
+   */
+  public void addSource(InputSource inputSource) {
+    inputSourcesByPath.put(inputSource.getPath(), inputSource);
+  }
+
+  /**
+   * Map the given position of the generated code to the given source position.
+   *
+   * @param generatedLine the 0-based line in the generated code
+   * @param generatedColumn the 0-based column in the generated code
+   * @param sourcePath the path of the source file, as given by {@link JooSymbol#getFileName()}
+   * @param sourceLine the 0-based line in the source file
+   * @param sourceColumn the 0-based column in the source file
+   */
+  public void addMapping(int generatedLine, int generatedColumn, String sourcePath, int sourceLine, int sourceColumn) {
+    addMapping(generatedLine, generatedColumn, getSourceIndex(sourcePath), sourceLine, sourceColumn);
+  }
+
+  /**
+   * Add all mappings of the given source map, whose generated code is appended to the generated code of this
+   * source map at the given line and column.
+   *
+   * @param sourceMap the source map of the appended code
+   * @param lineOffset the line of this source map's generated code where the appended code starts
+   * @param columnOffset the column in that line where the appended code starts, which shifts all mappings
+   *                     of the appended code's first line
+   */
+  public void append(SourceMapGenerator sourceMap, int lineOffset, int columnOffset) {
+    inputSourcesByPath.putAll(sourceMap.inputSourcesByPath);
+    for (int i = 0; i < sourceMap.mappingCount * FIELDS_PER_MAPPING; i += FIELDS_PER_MAPPING) {
+      int[] mapping = sourceMap.mappings;
+      addMapping(lineOffset + mapping[i], mapping[i] == 0 ? columnOffset + mapping[i + 1] : mapping[i + 1],
+              getSourceIndex(sourceMap.sourcePaths.get(mapping[i + 2])), mapping[i + 3], mapping[i + 4]);
+    }
+  }
+
+  public boolean isEmpty() {
+    return mappingCount == 0;
+  }
+
+  /**
+   * Write this source map in JSON format.
+   *
+   * @param out the writer to write the source map to
+   * @param generatedFileName the name of the generated JavaScript file
+   * @throws IOException if writing or reading a source file fails
+   */
+  public void write(Writer out, String generatedFileName) throws IOException {
+    out.write("{\"version\":3,\"file\":\"");
+    out.write(CompilationMetricsImpl.escapeJson(generatedFileName));
+    out.write("\",\"sources\":[");
+    for (int i = 0; i < sourcePaths.size(); i++) {
+      if (i > 0) {
+        out.write(',');
+      }
+      out.write('"');
+      out.write(CompilationMetricsImpl.escapeJson(getSourceName(sourcePaths.get(i))));
+      out.write('"');
+    }
+    out.write("],\"sourcesContent\":[");
+    for (int i = 0; i < sourcePaths.size(); i++) {
+      if (i > 0) {
+        out.write(',');
+      }
+      String content = readSource(sourcePaths.get(i));
+      if (content == null) {
+        out.write("null");
+      } else {
+        out.write('"');
+        out.write(CompilationMetricsImpl.escapeJson(content));
+        out.write('"');
+      }
+    }
+    out.write("],\"names\":[],\"mappings\":\"");
+    out.write(encodeMappings());
+    out.write("\"}\n");
+  }
+
+  private void addMapping(int generatedLine, int generatedColumn, int sourceIndex, int sourceLine, int sourceColumn) {
+    int offset = mappingCount * FIELDS_PER_MAPPING;
+    if (offset == mappings.length) {
+      mappings = Arrays.copyOf(mappings, 2 * mappings.length);
+    }
+    mappings[offset] = generatedLine;
+    mappings[offset + 1] = generatedColumn;
+    mappings[offset + 2] = sourceIndex;
+    mappings[offset + 3] = sourceLine;
+    mappings[offset + 4] = sourceColumn;
+    mappingCount++;
+  }
+
+  private int getSourceIndex(String sourcePath) {
+    Integer sourceIndex = sourceIndexes.get(sourcePath);
+    if (sourceIndex == null) {
+      sourceIndex = sourcePaths.size();
+      sourceIndexes.put(sourcePath, sourceIndex);
+      sourcePaths.add(sourcePath);
+    }
+    return sourceIndex;
+  }
+
+  private String getSourceName(String sourcePath) {
+    InputSource inputSource = inputSourcesByPath.get(sourcePath);
+    String sourceName = inputSource == null ? new File(sourcePath).getName() : inputSource.getRelativePath();
+    return sourceName.replace(File.separatorChar, '/');
+  }
+
+  private String readSource(String sourcePath) throws IOException {
+    InputSource inputSource = inputSourcesByPath.get(sourcePath);
+    if (inputSource == null) {
+      File file = new File(sourcePath);
+      if (!file.isFile()) {
+        return null;
+      }
+      inputSource = new FileInputSource(file, true);
+    }
+    Reader reader = SourceReaders.createReader(inputSource);
+    try {
+      StringBuilder content = new StringBuilder();
+      char[] buffer = new char[4096];
+      int count;
+      while ((count = reader.read(buffer)) >= 0) {
+        content.append(buffer, 0, count);
+      }
+      return content.toString();
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Encode all mappings as Base64 VLQ segments. Lines of generated code are separated by a semicolon, segments
+   * by a comma. The generated column is relative to the previous segment of the same line, all source fields
+   * are relative to the previous segment.
+   */
+  private String encodeMappings() {
+    StringBuilder result = new StringBuilder(mappingCount * 8);
+    int line = 0;
+    int previousColumn = 0;
+    int previousSourceIndex = 0;
+    int previousSourceLine = 0;
+    int previousSourceColumn = 0;
+    for (int i = 0; i < mappingCount * FIELDS_PER_MAPPING; i += FIELDS_PER_MAPPING) {
+      int generatedLine = mappings[i];
+      if (generatedLine > line) {
+        while (line < generatedLine) {
+          result.append(';');
+          line++;
+        }
+        previousColumn = 0;
+      } else if (i > 0) {
+        result.append(',');
+      }
+      encodeVlq(result, mappings[i + 1] - previousColumn);
+      encodeVlq(result, mappings[i + 2] - previousSourceIndex);
+      encodeVlq(result, mappings[i + 3] - previousSourceLine);
+      encodeVlq(result, mappings[i + 4] - previousSourceColumn);
+      previousColumn = mappings[i + 1];
+      previousSourceIndex = mappings[i + 2];
+      previousSourceLine = mappings[i + 3];
+      previousSourceColumn = mappings[i + 4];
+    }
+    return result.toString();
+  }
+
+  static void encodeVlq(StringBuilder result, int value) {
+    // the sign is stored in the least significant bit:
+    int vlq = value < 0 ? ((-value) << 1) + 1 : value << 1;
+    do {
+      int digit = vlq & 31;
+      vlq >>>= 5;
+      if (vlq > 0) {
+        digit |= 32; // continuation bit
+      }
+      result.append(BASE64_DIGITS.charAt(digit));
+    } while (vlq > 0);
+  }
+}
@@ -0,0 +1,76 @@
+package net.jangaroo.jooc;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Declarations of compilation units parsed from source files, to be reused by subsequent compilations as long as
+ * their source file does not change. In watch mode, most source files are not recompiled, but only imported to
+ * resolve the declarations of the few recompiled ones, and creating them from the cache is much cheaper than
+ * parsing them again.
+ * Like the {@link ClassPathUnitCache}, the cache keeps the unscoped {@link ApiDeclarationIndex} of each source file,
+ * so that every compilation creates and scopes its own compilation units. Other than the index of an API stub,
+ * it contains all members and imports of the compilation unit, not only its public API.
+ * An entry is keyed by the source file and only valid as long as the modification time and size of the file are
+ * unchanged. Source files with declarations the index cannot represent are parsed by every compilation.
+ * A cache must not be used by more than one compilation at a time.
+ */
+public class SourceUnitCache {
+
+  private final Map<File, Entry> entriesByFile = new HashMap<File, Entry>();
+
+  /**
+   * Get the cached declarations of the given source file.
+   *
+   * @param sourceFile the source file
+   * @return the declarations, or null if the source file has not been cached or has changed since
+   */
+  public synchronized ApiDeclarationIndex get(File sourceFile) {
+    Entry entry = entriesByFile.get(sourceFile);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.stamp != computeStamp(sourceFile)) {
+      entriesByFile.remove(sourceFile);
+      return null;
+    }
+    return entry.declarations;
+  }
+
+  /**
+   * Keep the declarations of the given source file for subsequent compilations, as long as the source file
+   * does not change.
+   *
+   * @param sourceFile the source file the declarations have been parsed from
+   * @param declarations the declarations of the source file
+   */
+  public synchronized void put(File sourceFile, ApiDeclarationIndex declarations) {
+    entriesByFile.put(sourceFile, new Entry(computeStamp(sourceFile), declarations));
+  }
+
+  public synchronized int size() {
+    return entriesByFile.size();
+  }
+
+  /**
+   * Compute the stamp of a source file to detect changes. Besides the modification time, the size is taken into
+   * account, in case a file is changed twice within the timestamp resolution.
+   *
+   * @param sourceFile the source file
+   * @return the stamp of the current state of the source file
+   */
+  public static long computeStamp(File sourceFile) {
+    return 31 * sourceFile.lastModified() + sourceFile.length();
+  }
+
+  private static class Entry {
+    private final long stamp;
+    private final ApiDeclarationIndex declarations;
+
+    private Entry(long stamp, ApiDeclarationIndex declarations) {
+      this.stamp = stamp;
+      this.declarations = declarations;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package net.jangaroo.jooc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A table of token texts shared by all scanners. Keywords, operators, identifiers and typical indentation
+ * occur over and over again in all source files and API stubs, so all symbols of the compilation units kept
+ * in memory during compilation refer to a single instance of each such text instead of their own copy.
+ */
+public final class TokenTexts {
+
+  /**
+   * Longer texts, like comments, are hardly ever repeated.
+   */
+  static final int MAX_INTERNED_LENGTH = 64;
+
+  /**
+   * Stop adding texts when the table gets that large, so that a long-running compiler does not accumulate
+   * the texts of all code bases it ever compiled.
+   */
+  private static final int MAX_SIZE = 256 * 1024;
+
+  private static final ConcurrentMap<String, String> TEXTS = new ConcurrentHashMap<String, String>(8 * 1024);
+
+  private TokenTexts() {
+  }
+
+  /**
+   * Return the shared instance of the given token text.
+   *
+   * @param text the token text
+   * @return a string equal to the given text, which is the same instance for all equal short texts
+   */
+  public static String intern(String text) {
+    if (text.length() == 0) {
+      return "";
+    }
+    if (text.length() > MAX_INTERNED_LENGTH) {
+      return text;
+    }
+    String sharedText = TEXTS.get(text);
+    if (sharedText == null) {
+      if (TEXTS.size() >= MAX_SIZE) {
+        return text;
+      }
+      sharedText = TEXTS.putIfAbsent(text, text);
+      if (sharedText == null) {
+        sharedText = text;
+      }
+    }
+    return sharedText;
+  }
+}
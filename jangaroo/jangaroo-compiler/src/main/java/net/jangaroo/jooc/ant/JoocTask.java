@@ -48,6 +48,11 @@ public class JoocTask extends MatchingTask {
   private boolean allowduplicatelocalvariables;
   private File[] compileList = new File[0];
   private String autoSemicolon = null;
+  private int daemonPort = 0;
+  private File metricsReport;
+  private boolean skipUnchangedOutput = false;
+  private boolean sourceMaps = false;
+  private boolean minify = false;
 
   public boolean getEnableAssertions() {
     return enableAssertions;
@@ -218,6 +223,72 @@ public class JoocTask extends MatchingTask {
     this.autoSemicolon = autoSemicolon;
   }
 
+  public int getDaemonPort() {
+    return daemonPort;
+  }
+
+  /**
+   * If set to a port number, compilation is delegated to the Jangaroo compiler daemon listening on that port.
+   *
+   * @param daemonPort the port of the compiler daemon
+   */
+  public void setDaemonPort(int daemonPort) {
+    this.daemonPort = daemonPort;
+  }
+
+  public boolean getSkipUnchangedOutput() {
+    return skipUnchangedOutput;
+  }
+
+  /**
+   * If true, output files whose content did not change are not rewritten, preserving their timestamps.
+   *
+   * @param skipUnchangedOutput whether to skip writing unchanged output files
+   */
+  public void setSkipUnchangedOutput(boolean skipUnchangedOutput) {
+    this.skipUnchangedOutput = skipUnchangedOutput;
+  }
+
+  public boolean getSourceMaps() {
+    return sourceMaps;
+  }
+
+  /**
+   * If true, the compiler writes a source map next to each generated JavaScript file.
+   *
+   * @param sourceMaps whether to generate source maps
+   */
+  public void setSourceMaps(boolean sourceMaps) {
+    this.sourceMaps = sourceMaps;
+  }
+
+  public boolean getMinify() {
+    return minify;
+  }
+
+  /**
+   * If true, the compiler generates minified code, without unneeded whitespace and with short names for local
+   * variables and parameters.
+   *
+   * @param minify whether to generate minified code
+   */
+  public void setMinify(boolean minify) {
+    this.minify = minify;
+  }
+
+  public File getMetricsReport() {
+    return metricsReport;
+  }
+
+  /**
+   * If set, the compiler writes a JSON report of where compilation time and memory went to the given file.
+   *
+   * @param metricsReport the metrics report file
+   */
+  public void setMetricsReport(File metricsReport) {
+    this.metricsReport = metricsReport;
+  }
+
   /**
    * Executes the task.
    */
@@ -368,6 +439,23 @@ public class JoocTask extends MatchingTask {
     if (allowduplicatelocalvariables) {
       args.add("-ad");
     }
+    if (daemonPort > 0) {
+      args.add("-daemon");
+      args.add(String.valueOf(daemonPort));
+    }
+    if (skipUnchangedOutput) {
+      args.add("-su");
+    }
+    if (sourceMaps) {
+      args.add("-sourcemap");
+    }
+    if (minify) {
+      args.add("-minify");
+    }
+    if (metricsReport != null) {
+      args.add("-metrics");
+      args.add(metricsReport.getAbsolutePath());
+    }
     if (destDir != null) {
       args.add("-d");
       args.add(destDir.getAbsolutePath());
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -50,6 +51,12 @@ public class ClassDeclaration extends IdeDeclaration {
   private List<VariableDeclaration> fieldsWithInitializer = new ArrayList<VariableDeclaration>();
   private List<IdeDeclaration> secondaryDeclarations = Collections.emptyList();
   private int inheritanceLevel = -1;
+  private volatile boolean scoped = false;
+  /**
+   * All member declarations of this class, including inherited ones, by name. Built on first lookup after
+   * this class and all its super types have been scoped, as from then on, their members do not change anymore.
+   */
+  private volatile Map<String, IdeDeclaration> propertyDeclarations;
 
   private Implements optImplements;
   private Scope scope;
@@ -183,6 +190,7 @@ public class ClassDeclaration extends IdeDeclaration {
         }
       }
     });
+    scoped = true;
   }
 
   @Override
@@ -268,54 +276,108 @@ public class ClassDeclaration extends IdeDeclaration {
    * @return a non-static member if found, null otherwise
    */
   public IdeDeclaration resolvePropertyDeclaration(String ide) {
-    return resolvePropertyDeclaration1(ide, this, new HashSet<ClassDeclaration>(), new LinkedList<ClassDeclaration>());
+    Map<String, IdeDeclaration> declarations = propertyDeclarations;
+    if (declarations == null) {
+      List<ClassDeclaration> classDecls = getSelfAndSuperTypeDeclarations();
+      if (!isScoped(classDecls)) {
+        // member declarations are still being registered, so nothing can be memoized yet:
+        return lookupPropertyDeclaration(ide, classDecls);
+      }
+      declarations = flattenPropertyDeclarations(classDecls);
+      propertyDeclarations = declarations;
+    }
+    return declarations.get(ide);
+  }
+
+  /**
+   * Determine this class and all its super classes and implemented interfaces, in the order in which they have
+   * to be searched for member declarations: depth-first, super class before interfaces, each type only once.
+   */
+  private List<ClassDeclaration> getSelfAndSuperTypeDeclarations() {
+    List<ClassDeclaration> classDecls = new ArrayList<ClassDeclaration>();
+    collectSuperTypeDeclarations(this, classDecls, new HashSet<ClassDeclaration>(), new LinkedList<ClassDeclaration>());
+    return classDecls;
   }
 
-  private IdeDeclaration resolvePropertyDeclaration1(String ide, ClassDeclaration classDecl, Set<ClassDeclaration> visited, Deque<ClassDeclaration> chain) {
+  private static void collectSuperTypeDeclarations(ClassDeclaration classDecl, List<ClassDeclaration> classDecls,
+                                                   Set<ClassDeclaration> visited, Deque<ClassDeclaration> chain) {
     if (visited.contains(classDecl)) {
       if (chain.contains(classDecl)) {
         throw new CompilerError(classDecl.getSymbol(), "cyclic superclass chain");
       }
-      return null;
+      return;
     }
     visited.add(classDecl);
+    classDecls.add(classDecl);
     final int chainSize = chain.size();
     chain.add(classDecl);
-    IdeDeclaration declaration = classDecl.getMemberDeclaration(ide);
-    if (declaration == null) {
-      declaration = classDecl.getStaticMemberDeclaration(ide);
-    }
-    if (declaration == null && classDecl.getSuperType() != null) {
-      declaration = resolvePropertyInSuper(ide, classDecl, visited, chain, classDecl.getSuperType().getIde());
+    if (classDecl.getSuperType() != null) {
+      collectSuperTypeDeclarations(classDecl, classDecl.getSuperType().getIde(), classDecls, visited, chain);
     }
-    if (declaration == null && classDecl.getOptImplements() != null) {
+    if (classDecl.getOptImplements() != null) {
       CommaSeparatedList<Ide> implemented = classDecl.getOptImplements().getSuperTypes();
-      while (implemented != null && declaration == null) {
-        declaration = resolvePropertyInSuper(ide, classDecl, visited, chain, implemented.getHead());
+      while (implemented != null) {
+        collectSuperTypeDeclarations(classDecl, implemented.getHead(), classDecls, visited, chain);
         implemented = implemented.getTail();
       }
     }
     chain.removeLast();
     assert chainSize == chain.size();
-    return declaration;
   }
 
-  private IdeDeclaration resolvePropertyInSuper(final String ide,
-                                                final ClassDeclaration classDecl,
-                                                final Set<ClassDeclaration> visited,
-                                                final Deque<ClassDeclaration> chain,
-                                                final Ide superIde) {
+  private static void collectSuperTypeDeclarations(final ClassDeclaration classDecl,
+                                                   final Ide superIde,
+                                                   final List<ClassDeclaration> classDecls,
+                                                   final Set<ClassDeclaration> visited,
+                                                   final Deque<ClassDeclaration> chain) {
     IdeDeclaration superClassDecl = superIde.getDeclaration(false);
     if (superClassDecl != null) {
       if (!(superClassDecl instanceof ClassDeclaration)) {
         throw new CompilerError(classDecl.getOptExtends().getSuperClass().getSymbol(), "expected class identifier");
       }
-      return resolvePropertyDeclaration1(ide, (ClassDeclaration) superClassDecl, visited, chain);
+      collectSuperTypeDeclarations((ClassDeclaration) superClassDecl, classDecls, visited, chain);
+    }
+  }
+
+  private static boolean isScoped(List<ClassDeclaration> classDecls) {
+    for (ClassDeclaration classDecl : classDecls) {
+      if (!classDecl.scoped) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static IdeDeclaration lookupPropertyDeclaration(String ide, List<ClassDeclaration> classDecls) {
+    for (ClassDeclaration classDecl : classDecls) {
+      IdeDeclaration declaration = classDecl.getMemberDeclaration(ide);
+      if (declaration == null) {
+        declaration = classDecl.getStaticMemberDeclaration(ide);
+      }
+      if (declaration != null) {
+        return declaration;
+      }
     }
     return null;
   }
 
-  public int getInheritanceLevel() {
+  /**
+   * Merge the member declarations of the given classes into one table, where a member of a class shadows
+   * all members of the same name of classes that come later in the list.
+   */
+  private static Map<String, IdeDeclaration> flattenPropertyDeclarations(List<ClassDeclaration> classDecls) {
+    Map<String, IdeDeclaration> declarations = new HashMap<String, IdeDeclaration>();
+    for (int i = classDecls.size() - 1; i >= 0; i--) {
+      ClassDeclaration classDecl = classDecls.get(i);
+      declarations.putAll(classDecl.staticMembers);
+      declarations.putAll(classDecl.members);
+    }
+    return Collections.unmodifiableMap(declarations);
+  }
+
+  // synchronized, because classes analyzed in parallel may share this super class; as the lock of a sub class is
+  // always acquired before the lock of its super class, there is no deadlock:
+  public synchronized int getInheritanceLevel() {
     if (inheritanceLevel < 0) {
       inheritanceLevel = computeInheritanceLevel();
     }
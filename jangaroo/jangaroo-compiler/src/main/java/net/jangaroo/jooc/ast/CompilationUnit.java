@@ -82,11 +82,12 @@ public class CompilationUnit extends NodeImplBase {
     usedBuiltIns.add(builtIn);
   }
 
-  public String getAuxVarForPackage(String packageQName) {
+  // synchronized, because compilation units are analyzed in parallel, and analysis may reach into other units:
+  public synchronized String getAuxVarForPackage(String packageQName) {
     return auxVarsByPackage.get(packageQName);
   }
 
-  public String getAuxVarForPackage(Scope lookupScope, String packageQName) {
+  public synchronized String getAuxVarForPackage(Scope lookupScope, String packageQName) {
     if (auxVarsRendered) {
       throw new IllegalStateException("aux vars already rendered!");
     }
@@ -98,7 +99,7 @@ public class CompilationUnit extends NodeImplBase {
     return auxVar;
   }
 
-  public Map<String, String> getAuxVarDeclarations() {
+  public synchronized Map<String, String> getAuxVarDeclarations() {
     auxVarsRendered = true;
     LinkedHashMap<String, String> result = new LinkedHashMap<String, String>();
     for (String builtIn : usedBuiltIns) {
@@ -156,6 +157,34 @@ public class CompilationUnit extends NodeImplBase {
     return primaryDeclaration;
   }
 
+  /**
+   * Keep only the declarations of this compilation unit, discarding the statements of all its methods and
+   * functions. Used for compilation units that are only needed to resolve declarations, not to generate code.
+   * Must be called before scoping, so that the discarded statements are not scoped, either.
+   */
+  public void discardFunctionBodies() {
+    if (primaryDeclaration instanceof FunctionDeclaration) {
+      ((FunctionDeclaration) primaryDeclaration).discardBody();
+    } else if (primaryDeclaration instanceof ClassDeclaration) {
+      discardMethodBodies((ClassDeclaration) primaryDeclaration);
+      for (IdeDeclaration secondaryDeclaration : ((ClassDeclaration) primaryDeclaration).getSecondaryDeclarations()) {
+        if (secondaryDeclaration instanceof ClassDeclaration) {
+          discardMethodBodies((ClassDeclaration) secondaryDeclaration);
+        } else if (secondaryDeclaration instanceof FunctionDeclaration) {
+          ((FunctionDeclaration) secondaryDeclaration).discardBody();
+        }
+      }
+    }
+  }
+
+  private static void discardMethodBodies(ClassDeclaration classDeclaration) {
+    for (Directive directive : classDeclaration.getBody().getDirectives()) {
+      if (directive instanceof FunctionDeclaration) {
+        ((FunctionDeclaration) directive).discardBody();
+      }
+    }
+  }
+
   public JooSymbol getLBrace() {
     return lBrace;
   }
@@ -133,6 +133,14 @@ public class FunctionDeclaration extends TypedIdeDeclaration {
     return fun.getBody();
   }
 
+  /**
+   * Discard the statements of this function's body. Must be called before scoping.
+   */
+  public void discardBody() {
+    fun.discardBody();
+    containsSuperConstructorCall = false;
+  }
+
   @Override
   public void scope(Scope scope) {
     final ClassDeclaration classDeclaration = scope.getClassDeclaration();
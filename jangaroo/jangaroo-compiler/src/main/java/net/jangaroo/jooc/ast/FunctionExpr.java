@@ -21,6 +21,7 @@ import net.jangaroo.jooc.Scope;
 import net.jangaroo.jooc.sym;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -94,6 +95,16 @@ public class FunctionExpr extends Expr {
     return optBody;
   }
 
+  /**
+   * Replace the body of this function by an empty block, so that the function is still implemented,
+   * but its statements can be garbage collected.
+   */
+  void discardBody() {
+    if (optBody != null) {
+      optBody = new BlockStatement(optBody.getLBrace(), new ArrayList<Directive>(0), optBody.getRBrace());
+    }
+  }
+
   @Override
   public JooSymbol getSymbol() {
     return symFunction;
@@ -1,11 +1,16 @@
 package net.jangaroo.jooc.backend;
 
+import net.jangaroo.jooc.CompilationMetricsImpl;
 import net.jangaroo.jooc.Jooc;
+import net.jangaroo.jooc.api.CompilationMetrics;
+import net.jangaroo.jooc.SourceMapGenerator;
 import net.jangaroo.jooc.ast.IdeDeclaration;
 import net.jangaroo.jooc.ast.PackageDeclaration;
 import net.jangaroo.jooc.config.JoocOptions;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
 
 /**
  * Abstract base class for merged and single file compilation unit sink factories.
@@ -13,6 +18,7 @@ import java.io.File;
 public abstract class AbstractCompilationUnitSinkFactory implements CompilationUnitSinkFactory {
   protected File outputDir = null;
   JoocOptions options;
+  private CompilationMetricsImpl metrics;
 
   public AbstractCompilationUnitSinkFactory(JoocOptions options, File outputDir) {
     this.outputDir = outputDir;
@@ -27,6 +33,33 @@ public abstract class AbstractCompilationUnitSinkFactory implements CompilationU
     return options;
   }
 
+  /**
+   * Measure writing output files in the {@link CompilationMetrics#PHASE_WRITE write phase} of the given metrics.
+   *
+   * @param metrics the metrics of the current compilation run
+   */
+  public void setMetrics(CompilationMetricsImpl metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Start measuring the write phase, if metrics are set. Must be followed by {@link #endWritePhase()} in a
+   * finally block.
+   *
+   * @param path the path of the source file or output file to charge the write phase to
+   */
+  protected void startWritePhase(String path) {
+    if (metrics != null) {
+      metrics.startPhase(CompilationMetrics.PHASE_WRITE, path);
+    }
+  }
+
+  protected void endWritePhase() {
+    if (metrics != null) {
+      metrics.endPhase();
+    }
+  }
+
   protected void createOutputDirs(File outputFile) {
     File parentDir = outputFile.getAbsoluteFile().getParentFile();
     if (!parentDir.exists() && !parentDir.mkdirs()) {
@@ -34,6 +67,35 @@ public abstract class AbstractCompilationUnitSinkFactory implements CompilationU
     }
   }
 
+  /**
+   * @return a new source map for generated JavaScript code, or null if no source maps are to be generated
+   */
+  protected SourceMapGenerator createSourceMap() {
+    try {
+      return options.isGenerateSourceMaps() ? new SourceMapGenerator() : null;
+    } catch (IncompatibleClassChangeError e) {
+      // ignore, old front ends did not know about source maps
+      return null;
+    }
+  }
+
+  protected static File getSourceMapFile(File outputFile) {
+    return new File(outputFile.getPath() + ".map");
+  }
+
+  /**
+   * The comment to append to a generated JavaScript file that tells debuggers where to find its source map.
+   */
+  protected static String getSourceMappingUrlComment(File outputFile) {
+    return "//# sourceMappingURL=" + getSourceMapFile(outputFile).getName() + "\n";
+  }
+
+  protected static String renderSourceMap(SourceMapGenerator sourceMap, File outputFile) throws IOException {
+    StringWriter buffer = new StringWriter();
+    sourceMap.write(buffer, outputFile.getName());
+    return buffer.toString();
+  }
+
   public abstract CompilationUnitSink createSink(PackageDeclaration packageDeclaration,
                                                  IdeDeclaration primaryDeclaration, File sourceFile,
                                                  boolean verbose);
@@ -107,11 +107,22 @@ import java.util.TreeSet;
 public class ApiModelGenerator {
 
   private boolean excludeClassByDefault = false;
+  private boolean includeNonPublicApi = false;
 
   public ApiModelGenerator(boolean excludeClassByDefault) {
     this.excludeClassByDefault = excludeClassByDefault;
   }
 
+  /**
+   * @param excludeClassByDefault whether to add an [ExcludeClass] annotation to classes without [PublicApi]
+   * @param includeNonPublicApi whether to also generate private and internal members and all imports, so that
+   *                            the model declares everything the compilation unit declares
+   */
+  public ApiModelGenerator(boolean excludeClassByDefault, boolean includeNonPublicApi) {
+    this.excludeClassByDefault = excludeClassByDefault;
+    this.includeNonPublicApi = includeNonPublicApi;
+  }
+
   public boolean isExcludeClassByDefault() {
     return excludeClassByDefault;
   }
@@ -180,8 +191,16 @@ public class ApiModelGenerator {
     CompilationUnitModel compilationUnitModel = new CompilationUnitModel("");
     modelStack.push(compilationUnitModel);
     compilationUnit.getPackageDeclaration().visit(this);
-    for (String publicApiDependency : new TreeSet<String>(compilationUnit.getPublicApiDependencies())) {
-      compilationUnitModel.addImport(publicApiDependency);
+    if (includeNonPublicApi) {
+      for (AstNode directive : compilationUnit.getDirectives()) {
+        if (directive instanceof ImportDirective && ((ImportDirective)directive).isExplicit()) {
+          compilationUnitModel.addImport(((ImportDirective)directive).getQualifiedName());
+        }
+      }
+    } else {
+      for (String publicApiDependency : new TreeSet<String>(compilationUnit.getPublicApiDependencies())) {
+        compilationUnitModel.addImport(publicApiDependency);
+      }
     }
     visitAll(compilationUnit.getDirectives());
     compilationUnit.getPrimaryDeclaration().visit(this);
@@ -466,7 +485,7 @@ public class ApiModelGenerator {
     if (namespacedModel instanceof MemberModel) {
       ((MemberModel)namespacedModel).setStatic(declaration.isStatic());
     }
-    // Public API only, thus either "protected", "public", or custom namespace:
+    // Public API only, thus either "protected", "public", or custom namespace, unless non-public API is included:
     if (declaration instanceof TypedIdeDeclaration) {
       Ide namespace = ((TypedIdeDeclaration)declaration).getNamespace();
       if (namespace != null) {
@@ -474,7 +493,10 @@ public class ApiModelGenerator {
         return;
       }
     }
-    namespacedModel.setNamespace(declaration.isProtected() ? NamespacedModel.PROTECTED : NamespacedModel.PUBLIC);
+    namespacedModel.setNamespace(declaration.isProtected() ? NamespacedModel.PROTECTED
+      : !includeNonPublicApi || declaration.isPublic() ? NamespacedModel.PUBLIC
+      : declaration.isPrivate() ? NamespacedModel.PRIVATE
+      : NamespacedModel.INTERNAL);
   }
 
   private void generateStaticFlag(Declaration declaration) {
@@ -490,7 +512,7 @@ public class ApiModelGenerator {
   @Override
   public void visitVariableDeclaration(VariableDeclaration variableDeclaration) throws IOException {
     boolean isTopLevelDeclaration = modelStack.peek() instanceof CompilationUnitModel;
-    if (variableDeclaration.isPublicApi() || isTopLevelDeclaration) {
+    if (variableDeclaration.isPublicApi() || isTopLevelDeclaration || includeNonPublicApi) {
       FieldModel fieldModel = new FieldModel();
       modelStack.push(fieldModel);
       consumeRecordedAnnotations();
@@ -518,7 +540,7 @@ public class ApiModelGenerator {
   @Override
   public void visitFunctionDeclaration(FunctionDeclaration functionDeclaration) throws IOException {
     boolean isTopLevelDeclaration = modelStack.peek() instanceof CompilationUnitModel;
-    if (functionDeclaration.isPublicApi() || isTopLevelDeclaration) {
+    if (functionDeclaration.isPublicApi() || isTopLevelDeclaration || includeNonPublicApi) {
       MethodModel methodModel = new MethodModel();
       modelStack.push(methodModel);
       consumeRecordedAnnotations();
@@ -116,8 +116,22 @@ public class JsCodeGenerator extends CodeGeneratorBase {
     PRIMITIVES.add("XML");
   }
 
+  // bit flags of compact member declarations, must match joo.MemberDeclaration.FLAG_*:
+  private static final int MEMBER_FLAG_PRIVATE = 1;
+  private static final int MEMBER_FLAG_PROTECTED = 2;
+  private static final int MEMBER_FLAG_PUBLIC = 3;
+  private static final int MEMBER_FLAG_STATIC = 4;
+  private static final int MEMBER_FLAG_FINAL = 8;
+  private static final int MEMBER_FLAG_NATIVE = 16;
+  private static final int MEMBER_FLAG_OVERRIDE = 32;
+  private static final int MEMBER_FLAG_VAR = 64;
+  private static final int MEMBER_FLAG_CONST = 128;
+  private static final int MEMBER_FLAG_GET = 256;
+  private static final int MEMBER_FLAG_SET = 512;
+
   private boolean expressionMode = false;
   private CompilationUnit compilationUnit;
+  private LocalNameMinifier localNameMinifier;
   private final MessageFormat VAR_$NAME_EQUALS_ARGUMENTS_SLICE_$INDEX =
     new MessageFormat("var {0}=Array.prototype.slice.call(arguments{1,choice,0#|0<,{1}});");
 
@@ -171,6 +185,11 @@ public class JsCodeGenerator extends CodeGeneratorBase {
         if (ide.getPackagePrefix().length() > 0) {
           out.writeToken(ide.getPackagePrefix());
         }
+        String localName = getLocalName(decl);
+        if (localName != null) {
+          out.writeToken(localName);
+          return;
+        }
       }
     }
     // take care of reserved words called as functions (Rhino does not like):
@@ -309,6 +328,7 @@ public class JsCodeGenerator extends CodeGeneratorBase {
   @Override
   public void visitCompilationUnit(CompilationUnit compilationUnit) throws IOException {
     this.compilationUnit = compilationUnit;
+    localNameMinifier = out.isMinify() ? LocalNameMinifier.create(compilationUnit) : null;
     out.write(Jooc.CLASS_LOADER_FULLY_QUALIFIED_NAME + ".prepare(");
     compilationUnit.getPackageDeclaration().visit(this);
     out.beginComment();
@@ -333,6 +353,25 @@ public class JsCodeGenerator extends CodeGeneratorBase {
     out.write(");");
   }
 
+  /**
+   * The name to use for the given local variable or parameter in generated code.
+   *
+   * @return the short name if local names are minified, or null if the declaration keeps its name
+   */
+  private String getLocalName(IdeDeclaration declaration) {
+    return localNameMinifier == null ? null : localNameMinifier.getShortName(declaration);
+  }
+
+  private void writeDeclarationIde(IdeDeclaration declaration) throws IOException {
+    String localName = getLocalName(declaration);
+    if (localName == null) {
+      declaration.getIde().visit(this);
+    } else {
+      out.writeSymbolWhitespace(declaration.getIde().getIde());
+      out.writeToken(localName);
+    }
+  }
+
   @Override
   public void visitIde(Ide ide) throws IOException {
     if (expressionMode) {
@@ -619,14 +658,16 @@ public class JsCodeGenerator extends CodeGeneratorBase {
   public void generateRestParamCode(Parameter param, int paramIndex) throws IOException {
     String paramName = param.getName();
     if (paramName != null && !(paramName.equals(FunctionExpr.ARGUMENTS) && paramIndex == 0)) {
-      generateToArrayCode(paramName, paramIndex);
+      String localName = getLocalName(param);
+      generateToArrayCode(localName == null ? paramName : localName, paramIndex);
     }
   }
 
   public void generateBodyInitializerCode(Parameter param) throws IOException {
     out.setSuppressWhitespace(true); // do not output whitespace twice!
     try {
-      out.writeToken(param.getName());
+      String localName = getLocalName(param);
+      out.writeToken(localName == null ? param.getName() : localName);
       out.writeSymbol(param.getOptInitializer().getSymEq());
       param.getOptInitializer().getValue().visit(this);
       out.write(";");
@@ -1003,12 +1044,12 @@ public class JsCodeGenerator extends CodeGeneratorBase {
     if (parameter.getOptSymConstOrRest() != null) {
       out.beginCommentWriteSymbol(parameter.getOptSymConstOrRest());
       if (isRest) {
-        parameter.getIde().visit(this);
+        writeDeclarationIde(parameter);
       }
       out.endComment();
     }
     if (!isRest) {
-      parameter.getIde().visit(this);
+      writeDeclarationIde(parameter);
     }
     visitIfNotNull(parameter.getOptTypeRelation());
     // in the method signature, comment out initializer code.
@@ -1031,7 +1072,7 @@ public class JsCodeGenerator extends CodeGeneratorBase {
     } else {
       generateVariableDeclarationStartCode(variableDeclaration);
     }
-    variableDeclaration.getIde().visit(this);
+    writeDeclarationIde(variableDeclaration);
     visitIfNotNull(variableDeclaration.getOptTypeRelation());
     generateVariableDeclarationInitializerCode(variableDeclaration);
     visitIfNotNull(variableDeclaration.getOptNextVariableDeclaration());
@@ -1086,13 +1127,64 @@ public class JsCodeGenerator extends CodeGeneratorBase {
   }
 
   protected void generateFieldStartCode(VariableDeclaration variableDeclaration) throws IOException {
-    out.beginString();
-    writeModifiers(out, variableDeclaration);
-    writeOptSymbol(variableDeclaration.getOptSymConstOrVar());
-    out.endString();
+    int flags = getCompactMemberDeclarationFlags(variableDeclaration);
+    if (flags == -1) {
+      out.beginString();
+      writeModifiers(out, variableDeclaration);
+      writeOptSymbol(variableDeclaration.getOptSymConstOrVar());
+      out.endString();
+    } else {
+      writeModifiersWhitespace(variableDeclaration);
+      if (variableDeclaration.getOptSymConstOrVar() != null) {
+        out.writeSymbolWhitespace(variableDeclaration.getOptSymConstOrVar());
+      }
+      out.writeToken(String.valueOf(flags | (variableDeclaration.isConst() ? MEMBER_FLAG_CONST : MEMBER_FLAG_VAR)));
+    }
     out.write(",{");
   }
 
+  /**
+   * Unless source code is kept, the runtime is given member declarations in a compact form instead of as modifier
+   * strings, so that it does not have to parse them: bit flags for the modifiers and member type, followed by the
+   * member name for methods.
+   *
+   * @return the bit flags for the namespace and modifiers of the given class member, or -1 if it has to be
+   *   declared by a modifier string, because source code is kept or a custom namespace is used
+   */
+  private int getCompactMemberDeclarationFlags(Declaration declaration) {
+    if (out.getKeepSource()) {
+      return -1;
+    }
+    int flags = 0;
+    for (JooSymbol modifier : declaration.getSymModifiers()) {
+      String text = modifier.getText();
+      if (SyntacticKeywords.STATIC.equals(text)) {
+        flags |= MEMBER_FLAG_STATIC;
+      } else if (SyntacticKeywords.FINAL.equals(text)) {
+        flags |= MEMBER_FLAG_FINAL;
+      } else if (SyntacticKeywords.NATIVE.equals(text)) {
+        flags |= MEMBER_FLAG_NATIVE;
+      } else if (SyntacticKeywords.OVERRIDE.equals(text)) {
+        flags |= MEMBER_FLAG_OVERRIDE;
+      } else if ("public".equals(text)) {
+        flags |= MEMBER_FLAG_PUBLIC;
+      } else if ("protected".equals(text)) {
+        flags |= MEMBER_FLAG_PROTECTED;
+      } else if ("private".equals(text)) {
+        flags |= MEMBER_FLAG_PRIVATE;
+      } else if (!"internal".equals(text) && !SyntacticKeywords.VIRTUAL.equals(text)) {
+        return -1;
+      }
+    }
+    return flags;
+  }
+
+  private void writeModifiersWhitespace(Declaration declaration) throws IOException {
+    for (JooSymbol modifier : declaration.getSymModifiers()) {
+      out.writeSymbolWhitespace(modifier);
+    }
+  }
+
   protected void generateVariableDeclarationInitializerCode(VariableDeclaration variableDeclaration) throws IOException {
     if (variableDeclaration.isClassMember()) {
       generateFieldInitializerCode(variableDeclaration);
@@ -1163,14 +1255,29 @@ public class JsCodeGenerator extends CodeGeneratorBase {
         out.writeSymbol(functionDeclaration.getFun().getFunSymbol());
         functionDeclaration.getIde().visit(this);
       } else {
-        out.beginString();
-        writeModifiers(out, functionDeclaration);
-        out.writeSymbol(functionDeclaration.getFun().getFunSymbol());
-        if (functionDeclaration.isGetterOrSetter()) {
-          out.writeSymbol(functionDeclaration.getSymGetOrSet());
+        int flags = isPrimaryDeclaration ? -1 : getCompactMemberDeclarationFlags(functionDeclaration);
+        if (flags == -1) {
+          out.beginString();
+          writeModifiers(out, functionDeclaration);
+          out.writeSymbol(functionDeclaration.getFun().getFunSymbol());
+          if (functionDeclaration.isGetterOrSetter()) {
+            out.writeSymbol(functionDeclaration.getSymGetOrSet());
+          }
+          functionDeclaration.getIde().visit(this);
+          out.endString();
+        } else {
+          writeModifiersWhitespace(functionDeclaration);
+          out.writeSymbolWhitespace(functionDeclaration.getFun().getFunSymbol());
+          if (functionDeclaration.isGetterOrSetter()) {
+            out.writeSymbolWhitespace(functionDeclaration.getSymGetOrSet());
+            flags |= functionDeclaration.isGetter() ? MEMBER_FLAG_GET : MEMBER_FLAG_SET;
+          }
+          out.writeToken(String.valueOf(flags));
+          out.writeToken(",");
+          out.writeSymbolWhitespace(functionDeclaration.getIde().getIde());
+          String name = functionDeclaration.getIde().getName();
+          out.writeToken("\"" + (SyntacticKeywords.RESERVED_WORDS.contains(name) ? "$$" + name : name) + "\"");
         }
-        functionDeclaration.getIde().visit(this);
-        out.endString();
         if (functionDeclaration.isNative()) {
           out.beginComment();
         } else {
@@ -1222,7 +1329,9 @@ public class JsCodeGenerator extends CodeGeneratorBase {
     classDeclaration.getBody().visit(this);
     if (classDeclaration.getConstructor() == null && !classDeclaration.getFieldsWithInitializer().isEmpty()) {
       // generate default constructor that calls field initializers:
-      out.write("\"public function " + classDeclaration.getName() + "\",function " + classDeclaration.getName() + "$(){");
+      out.write(out.getKeepSource() ? "\"public function " + classDeclaration.getName() + "\""
+              : MEMBER_FLAG_PUBLIC + ",\"" + classDeclaration.getName() + "\"");
+      out.write(",function " + classDeclaration.getName() + "$(){");
       new SuperCallCodeGenerator(classDeclaration).generate(out, true);
       out.write("},");
     }
@@ -0,0 +1,255 @@
+package net.jangaroo.jooc.backend;
+
+import net.jangaroo.jooc.JooSymbol;
+import net.jangaroo.jooc.Scanner;
+import net.jangaroo.jooc.Scope;
+import net.jangaroo.jooc.ast.AstVisitorBase;
+import net.jangaroo.jooc.ast.Catch;
+import net.jangaroo.jooc.ast.CommaSeparatedList;
+import net.jangaroo.jooc.ast.CompilationUnit;
+import net.jangaroo.jooc.ast.Extends;
+import net.jangaroo.jooc.ast.FunctionExpr;
+import net.jangaroo.jooc.ast.Ide;
+import net.jangaroo.jooc.ast.IdeDeclaration;
+import net.jangaroo.jooc.ast.IdeExpr;
+import net.jangaroo.jooc.ast.IdeWithTypeParam;
+import net.jangaroo.jooc.ast.Implements;
+import net.jangaroo.jooc.ast.NamespacedIde;
+import net.jangaroo.jooc.ast.Parameter;
+import net.jangaroo.jooc.ast.Parameters;
+import net.jangaroo.jooc.ast.QualifiedIde;
+import net.jangaroo.jooc.ast.TransitiveAstVisitor;
+import net.jangaroo.jooc.ast.TypeRelation;
+import net.jangaroo.jooc.ast.VariableDeclaration;
+import net.jangaroo.jooc.input.InputSource;
+import net.jangaroo.jooc.input.SourceReaders;
+import net.jangaroo.jooc.sym;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Assigns short names to the parameters and local variables of all functions of one compilation unit, for
+ * generating minified code.
+ * All declarations of the same name in the same function get the same short name, so that duplicate local
+ * variable declarations still denote one variable. Each short name is used only once per compilation unit, and
+ * never coincides with any identifier occurring in the compilation unit or in generated code, including the
+ * top-level package name of every class the generated code refers to by its qualified name, so a renamed
+ * variable can neither shadow nor be shadowed by any other variable.
+ * Only variables and parameters declared explicitly in source code are renamed. Class members, catch parameters,
+ * local function names, and auxiliary variables keep their names.
+ */
+final class LocalNameMinifier {
+
+  private static final String NAME_START_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+  private static final String NAME_PART_CHARS = NAME_START_CHARS + "0123456789";
+
+  /**
+   * Keywords of ECMAScript and ActionScript, and identifiers used by generated code.
+   */
+  private static final Set<String> BLOCKED_NAMES = new HashSet<String>(Arrays.asList(
+          "as", "do", "if", "in", "is", "for", "int", "let", "new", "try", "use", "var", "byte", "case", "char",
+          "else", "enum", "eval", "goto", "long", "null", "this", "true", "uint", "void", "with", "break", "catch",
+          "class", "const", "false", "final", "float", "short", "super", "throw", "while", "yield", "delete",
+          "double", "export", "import", "native", "public", "return", "static", "switch", "throws", "typeof",
+          "boolean", "default", "extends", "finally", "package", "private", "continue", "debugger", "function",
+          "abstract", "volatile", "interface", "protected", "transient", "implements", "instanceof", "synchronized",
+          "joo", "Math", "Array", "Object", "Date", "Error", "NaN", "Infinity", "undefined", "arguments", "assert",
+          "trace"));
+
+  private final Set<String> usedNames;
+  private final Map<FunctionExpr, Map<String, String>> shortNamesByFunction = new IdentityHashMap<FunctionExpr, Map<String, String>>();
+  private int nameCount = 0;
+
+  private LocalNameMinifier(Set<String> usedNames) {
+    this.usedNames = usedNames;
+  }
+
+  /**
+   * Create a minifier for the given compilation unit.
+   *
+   * @param compilationUnit the compilation unit to generate minified code for
+   * @return the minifier, or null if local names cannot be changed safely, because the compilation unit uses eval
+   *   or a with statement
+   * @throws IOException if the source of the compilation unit cannot be read
+   */
+  static LocalNameMinifier create(CompilationUnit compilationUnit) throws IOException {
+    final Set<String> usedNames = new HashSet<String>(BLOCKED_NAMES);
+    final boolean[] usesEval = new boolean[1];
+    compilationUnit.visit(new TransitiveAstVisitor(new AstVisitorBase() {
+      @Override
+      public void visitIde(Ide ide) throws IOException {
+        usedNames.add(ide.getName());
+        usesEval[0] |= "eval".equals(ide.getName());
+      }
+
+      // Generated code refers to static members, super types and caught types by the qualified name of their
+      // class, so the top-level package names of these classes must not be used as short names.
+      // Only resolve the identifiers the code generator resolves, too.
+
+      @Override
+      public void visitIdeExpression(IdeExpr ideExpr) throws IOException {
+        Ide ide = ideExpr.getIde();
+        while (ide.getQualifier() != null) {
+          ide = ide.getQualifier();
+        }
+        if (!ide.isThis() && !ide.isSuper()) {
+          IdeDeclaration declaration = ide.getDeclaration(false);
+          if (declaration != null && declaration.isClassMember() && declaration.isStatic()) {
+            addTopLevelPackageName(declaration.getClassDeclaration());
+          }
+        }
+      }
+
+      @Override
+      public void visitExtends(Extends anExtends) throws IOException {
+        addTopLevelPackageName(anExtends.getSuperClass().getDeclaration(false));
+      }
+
+      @Override
+      public void visitImplements(Implements anImplements) throws IOException {
+        for (CommaSeparatedList<Ide> superTypes = anImplements.getSuperTypes(); superTypes != null; superTypes = superTypes.getTail()) {
+          addTopLevelPackageName(superTypes.getHead().getDeclaration(false));
+        }
+      }
+
+      @Override
+      public void visitCatch(Catch aCatch) throws IOException {
+        TypeRelation typeRelation = aCatch.getParam().getOptTypeRelation();
+        if (aCatch.hasCondition() && typeRelation != null) {
+          addTopLevelPackageName(typeRelation.getType().getIde().getDeclaration(false));
+        }
+      }
+
+      private void addTopLevelPackageName(IdeDeclaration classDeclaration) {
+        if (classDeclaration != null) {
+          String qName = classDeclaration.getQualifiedNameStr();
+          int dotPos = qName.indexOf('.');
+          if (dotPos != -1) {
+            usedNames.add(qName.substring(0, dotPos));
+          }
+        }
+      }
+
+      @Override
+      public void visitQualifiedIde(QualifiedIde qualifiedIde) throws IOException {
+        visitIde(qualifiedIde);
+      }
+
+      @Override
+      public void visitIdeWithTypeParam(IdeWithTypeParam ideWithTypeParam) throws IOException {
+        visitIde(ideWithTypeParam);
+      }
+
+      @Override
+      public void visitNamespacedIde(NamespacedIde namespacedIde) throws IOException {
+        visitIde(namespacedIde);
+      }
+    }));
+    return usesEval[0] || containsWithStatement(compilationUnit.getSource()) ? null : new LocalNameMinifier(usedNames);
+  }
+
+  /**
+   * A with statement may make any identifier in its body refer to a property of an object, so the body's
+   * identifiers must not be renamed. As with statements are not represented in the AST, look for the keyword
+   * in the source code, and only scan the code if the word occurs at all.
+   */
+  private static boolean containsWithStatement(InputSource source) throws IOException {
+    String code;
+    Reader reader = SourceReaders.createReader(source);
+    try {
+      StringBuilder buffer = new StringBuilder();
+      char[] chars = new char[8192];
+      for (int count = reader.read(chars); count != -1; count = reader.read(chars)) {
+        buffer.append(chars, 0, count);
+      }
+      code = buffer.toString();
+    } finally {
+      reader.close();
+    }
+    if (!code.contains("with")) {
+      return false;
+    }
+    Scanner scanner = new Scanner(new StringReader(code));
+    for (JooSymbol token = (JooSymbol) scanner.next_token(); token.sym != sym.EOF; token = (JooSymbol) scanner.next_token()) {
+      if (token.sym == sym.WITH) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Return the name to use in generated code for the given declaration.
+   *
+   * @param declaration the declaration of a local variable or parameter
+   * @return the short name of the declaration if it is renamed, or null if it keeps its name
+   */
+  String getShortName(IdeDeclaration declaration) {
+    FunctionExpr functionExpr = getRenamableDeclarationFunction(declaration);
+    if (functionExpr == null) {
+      return null;
+    }
+    Map<String, String> shortNames = shortNamesByFunction.get(functionExpr);
+    if (shortNames == null) {
+      shortNames = new HashMap<String, String>();
+      shortNamesByFunction.put(functionExpr, shortNames);
+    }
+    String shortName = shortNames.get(declaration.getName());
+    if (shortName == null) {
+      shortName = nextName();
+      shortNames.put(declaration.getName(), shortName);
+    }
+    return shortName;
+  }
+
+  private static FunctionExpr getRenamableDeclarationFunction(IdeDeclaration declaration) {
+    Ide ide = declaration.getIde();
+    Scope scope = ide == null ? null : ide.getScope();
+    if (scope == null || declaration.isClassMember() || declaration.isPrimaryDeclaration()) {
+      return null;
+    }
+    String name = ide.getName();
+    if (name.indexOf('$') != -1 || BLOCKED_NAMES.contains(name)) {
+      return null;
+    }
+    FunctionExpr functionExpr = scope.getFunctionExpr();
+    if (functionExpr == null) {
+      return null;
+    }
+    if (declaration instanceof VariableDeclaration) {
+      // variables synthesized by the compiler have no "var" or "const" keyword:
+      return ((VariableDeclaration) declaration).getOptSymConstOrVar() == null ? null : functionExpr;
+    }
+    if (declaration instanceof Parameter) {
+      for (Parameters params = functionExpr.getParams(); params != null; params = params.getTail()) {
+        if (params.getHead() == declaration) {
+          return functionExpr;
+        }
+      }
+    }
+    return null;
+  }
+
+  private String nextName() {
+    while (true) {
+      int index = nameCount++;
+      StringBuilder name = new StringBuilder();
+      name.append(NAME_START_CHARS.charAt(index % NAME_START_CHARS.length()));
+      for (index /= NAME_START_CHARS.length(); index > 0; index = (index - 1) / NAME_PART_CHARS.length()) {
+        name.append(NAME_PART_CHARS.charAt((index - 1) % NAME_PART_CHARS.length()));
+      }
+      String result = name.toString();
+      if (!usedNames.contains(result)) {
+        return result;
+      }
+    }
+  }
+}
@@ -2,58 +2,76 @@ package net.jangaroo.jooc.backend;
 
 import net.jangaroo.jooc.Jooc;
 import net.jangaroo.jooc.JsWriter;
+import net.jangaroo.jooc.SourceMapGenerator;
 import net.jangaroo.jooc.ast.CompilationUnit;
 import net.jangaroo.jooc.ast.IdeDeclaration;
 import net.jangaroo.jooc.ast.PackageDeclaration;
 import net.jangaroo.jooc.config.JoocOptions;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Compilation unit sink factory writing all generated classes to one file.
+ * The file is opened once, and the code of all compilation units is streamed into a temporary file next to
+ * the output file, which replaces the output file only when {@link #commit() committed}, so that the output
+ * file is never left half-written.
+ * The code of each compilation unit is rendered into its own buffer, so that code can be generated
+ * concurrently. If the order of the compilation units is {@link #expectUnits(List) announced} beforehand,
+ * their code is appended in that order, regardless of the order in which code generation finishes.
+ * If source maps are to be generated, the source maps of all compilation units are merged into one source map
+ * for the output file, which is written when committed.
  */
 public class MergedOutputCompilationUnitSinkFactory extends AbstractCompilationUnitSinkFactory {
 
-  private File outputFile;
-  private CompilationUnitSink sink;
+  private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+  private final File outputFile;
+  private final File tempFile;
+  private final CompilationUnitSink sink;
+  private Writer out;
+  private boolean closed;
+  private final SourceMapGenerator sourceMap;
+  private int writtenLineCount;
+  private int writtenColumnCount;
+
+  private Map<CompilationUnit, Integer> expectedPositions;
+  private String[] pendingCode;
+  private SourceMapGenerator[] pendingSourceMaps;
+  private int nextPosition;
 
   public MergedOutputCompilationUnitSinkFactory(JoocOptions options, final File outputFile) {
     super(options, outputFile.getAbsoluteFile().getParentFile());
     this.outputFile = outputFile;
+    tempFile = new File(outputFile.getAbsoluteFile().getParentFile(), outputFile.getName() + ".tmp");
+    sourceMap = createSourceMap();
 
     createOutputDirs(outputFile);
 
-    if (outputFile.exists()) {
-      if(!outputFile.delete()) {
-        throw Jooc.error("error deleting file: '" + outputFile.getAbsolutePath() + "'", outputFile);
-      }
-    }
-
     sink = new CompilationUnitSink() {
 
       public File writeOutput(CompilationUnit compilationUnit) {
-
+        SourceMapGenerator unitSourceMap = sourceMap == null ? null : new SourceMapGenerator();
+        String code;
         try {
-          JsWriter out = new JsWriter(new OutputStreamWriter(new FileOutputStream(outputFile, true), "UTF-8"));
-          try {
-            try {
-              out.setOptions(getOptions());
-              compilationUnit.visit(new JsCodeGenerator(out));
-            } finally {
-              out.close();
-            }
-          } catch (IOException e) {
-            //noinspection ResultOfMethodCallIgnored
-            outputFile.delete(); // NOSONAR
-            throw Jooc.error("error writing file: '" + outputFile.getAbsolutePath() + "'", outputFile, e);
-          }
+          code = render(compilationUnit, unitSourceMap);
         } catch (IOException e) {
-          throw Jooc.error("cannot open output file for writing: '" + outputFile.getAbsolutePath() + "'", outputFile, e);
+          throw Jooc.error("error writing file: '" + outputFile.getAbsolutePath() + "'", outputFile, e);
+        }
+        startWritePhase(compilationUnit.getSource().getPath());
+        try {
+          append(compilationUnit, code, unitSourceMap);
+        } finally {
+          endWritePhase();
         }
-
         return outputFile;
       }
     };
@@ -68,4 +86,181 @@ public class MergedOutputCompilationUnitSinkFactory extends AbstractCompilationU
 
     return sink;
   }
-}
\ No newline at end of file
+
+  /**
+   * Announce that code is about to be generated for exactly the given compilation units, possibly concurrently,
+   * and that their code has to be appended to the output file in the given order.
+   *
+   * @param units the compilation units to generate code for, in output order
+   */
+  public synchronized void expectUnits(List<CompilationUnit> units) {
+    checkAllExpectedUnitsWritten();
+    expectedPositions = new IdentityHashMap<CompilationUnit, Integer>(units.size());
+    for (CompilationUnit unit : units) {
+      expectedPositions.put(unit, expectedPositions.size());
+    }
+    pendingCode = new String[units.size()];
+    pendingSourceMaps = new SourceMapGenerator[units.size()];
+    nextPosition = 0;
+  }
+
+  /**
+   * Replace the output file by the code written so far. If no code has been written at all, there is no output file.
+   */
+  public synchronized void commit() {
+    checkAllExpectedUnitsWritten();
+    if (closed) {
+      throw new IllegalStateException("merged output has already been committed or aborted");
+    }
+    closed = true;
+    startWritePhase(outputFile.getPath());
+    try {
+      if (out == null) {
+        deleteOutputFile();
+        deleteSourceMapFile();
+        return;
+      }
+      try {
+        if (sourceMap != null) {
+          out.write(getSourceMappingUrlComment(outputFile));
+        }
+        out.close();
+        out = null;
+      } catch (IOException e) {
+        abort();
+        throw Jooc.error("error writing file: '" + outputFile.getAbsolutePath() + "'", outputFile, e);
+      }
+      if (!tempFile.renameTo(outputFile)) {
+        // some platforms do not rename over existing files:
+        deleteOutputFile();
+        if (!tempFile.renameTo(outputFile)) {
+          abort();
+          throw Jooc.error("cannot rename '" + tempFile.getAbsolutePath() + "' to '" + outputFile.getAbsolutePath() + "'", outputFile);
+        }
+      }
+      if (sourceMap != null) {
+        writeSourceMap();
+      }
+    } finally {
+      endWritePhase();
+    }
+  }
+
+  /**
+   * Discard all code written so far, as well as a previous output file, which would be outdated.
+   * Has no effect if the output has already been committed.
+   */
+  public synchronized void abort() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        // ignore, the file is deleted anyway
+      }
+      out = null;
+    } else if (closed) {
+      return;
+    }
+    closed = true;
+    expectedPositions = null;
+    pendingCode = null;
+    pendingSourceMaps = null;
+    //noinspection ResultOfMethodCallIgnored
+    tempFile.delete(); // NOSONAR
+    //noinspection ResultOfMethodCallIgnored
+    outputFile.delete(); // NOSONAR
+    //noinspection ResultOfMethodCallIgnored
+    getSourceMapFile(outputFile).delete(); // NOSONAR
+  }
+
+  private String render(CompilationUnit compilationUnit, SourceMapGenerator unitSourceMap) throws IOException {
+    StringWriter buffer = new StringWriter();
+    JsWriter jsWriter = new JsWriter(buffer);
+    jsWriter.setOptions(getOptions());
+    if (unitSourceMap != null) {
+      unitSourceMap.addSource(compilationUnit.getSource());
+      jsWriter.setSourceMap(unitSourceMap);
+    }
+    compilationUnit.visit(new JsCodeGenerator(jsWriter));
+    jsWriter.close();
+    return buffer.toString();
+  }
+
+  private synchronized void append(CompilationUnit compilationUnit, String code, SourceMapGenerator unitSourceMap) {
+    Integer position = expectedPositions == null ? null : expectedPositions.get(compilationUnit);
+    if (position == null) {
+      write(code, unitSourceMap);
+      return;
+    }
+    pendingCode[position] = code;
+    pendingSourceMaps[position] = unitSourceMap;
+    // write the code of all units that are now next in line:
+    while (nextPosition < pendingCode.length && pendingCode[nextPosition] != null) {
+      write(pendingCode[nextPosition], pendingSourceMaps[nextPosition]);
+      pendingCode[nextPosition] = null;
+      pendingSourceMaps[nextPosition++] = null;
+    }
+  }
+
+  private void write(String code, SourceMapGenerator unitSourceMap) {
+    if (closed) {
+      throw new IllegalStateException("merged output has already been committed or aborted");
+    }
+    try {
+      if (out == null) {
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"), WRITE_BUFFER_SIZE);
+      }
+    } catch (IOException e) {
+      throw Jooc.error("cannot open output file for writing: '" + tempFile.getAbsolutePath() + "'", outputFile, e);
+    }
+    try {
+      out.write(code);
+    } catch (IOException e) {
+      abort();
+      throw Jooc.error("error writing file: '" + outputFile.getAbsolutePath() + "'", outputFile, e);
+    }
+    if (unitSourceMap != null) {
+      // the code of the unit is not necessarily appended at the start of a line:
+      sourceMap.append(unitSourceMap, writtenLineCount, writtenColumnCount);
+      int lastLineStart = 0;
+      for (int i = code.indexOf('\n'); i != -1; i = code.indexOf('\n', i + 1)) {
+        writtenLineCount++;
+        lastLineStart = i + 1;
+      }
+      writtenColumnCount = lastLineStart == 0 ? writtenColumnCount + code.length() : code.length() - lastLineStart;
+    }
+  }
+
+  private void writeSourceMap() {
+    File sourceMapFile = getSourceMapFile(outputFile);
+    try {
+      Writer sourceMapWriter = new OutputStreamWriter(new FileOutputStream(sourceMapFile), "UTF-8");
+      try {
+        sourceMapWriter.write(renderSourceMap(sourceMap, outputFile));
+      } finally {
+        sourceMapWriter.close();
+      }
+    } catch (IOException e) {
+      throw Jooc.error("error writing file: '" + sourceMapFile.getAbsolutePath() + "'", outputFile, e);
+    }
+  }
+
+  private void checkAllExpectedUnitsWritten() {
+    if (pendingCode != null && nextPosition < pendingCode.length) {
+      throw new IllegalStateException("code of " + (pendingCode.length - nextPosition) + " compilation unit(s) has not been written");
+    }
+  }
+
+  private void deleteSourceMapFile() {
+    File sourceMapFile = getSourceMapFile(outputFile);
+    if (sourceMapFile.exists() && !sourceMapFile.delete()) {
+      throw Jooc.error("error deleting file: '" + sourceMapFile.getAbsolutePath() + "'", sourceMapFile);
+    }
+  }
+
+  private void deleteOutputFile() {
+    if (outputFile.exists() && !outputFile.delete()) {
+      throw Jooc.error("error deleting file: '" + outputFile.getAbsolutePath() + "'", outputFile);
+    }
+  }
+}
@@ -1,22 +1,43 @@
 package net.jangaroo.jooc.backend;
 
+import net.jangaroo.jooc.ApiDeclarationIndex;
 import net.jangaroo.jooc.Jooc;
 import net.jangaroo.jooc.JsWriter;
+import net.jangaroo.jooc.SourceMapGenerator;
 import net.jangaroo.jooc.ast.CompilationUnit;
 import net.jangaroo.jooc.ast.IdeDeclaration;
 import net.jangaroo.jooc.ast.PackageDeclaration;
 import net.jangaroo.jooc.config.JoocOptions;
+import net.jangaroo.jooc.model.CompilationUnitModel;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
 
 /**
  * Compilation unit sink factory for one compilation unit per output file.
  */
 public class SingleFileCompilationUnitSinkFactory extends AbstractCompilationUnitSinkFactory {
 
+  private static final String UTF_8 = "UTF-8";
+  private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+  /**
+   * Output is rendered into a buffer of the current thread, which is reused for all compilation units.
+   */
+  private static final ThreadLocal<StringWriter> OUTPUT_BUFFER = new ThreadLocal<StringWriter>() {
+    @Override
+    protected StringWriter initialValue() {
+      return new StringWriter(16 * 1024);
+    }
+  };
+
   private String suffix;
   private boolean generateApi;
 
@@ -73,28 +94,33 @@ public class SingleFileCompilationUnitSinkFactory extends AbstractCompilationUni
           System.out.println("writing file: '" + outFile.getAbsolutePath() + "'"); // NOSONAR this is a cmd line tool
         }
 
+        SourceMapGenerator sourceMap = generateApi ? null : createSourceMap();
+        CompilationUnitModel apiModel = null;
+        String output;
         try {
-          OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(outFile), "UTF-8");
+          if (generateApi) {
+            apiModel = new ApiModelGenerator(isExcludeClassByDefault(getOptions())).generateModel(compilationUnit);
+          }
+          output = render(compilationUnit, apiModel, sourceMap);
+          if (sourceMap != null) {
+            output += (output.endsWith("\n") ? "" : "\n") + getSourceMappingUrlComment(outFile);
+          }
+        } catch (IOException e) {
+          throw Jooc.error("error writing file: '" + outFile.getAbsolutePath() + "'", outFile, e);
+        }
+        String sourceMapOutput = null;
+        if (sourceMap != null) {
           try {
-            if (generateApi) {
-              ApiModelGenerator apiModelGenerator = new ApiModelGenerator(isExcludeClassByDefault(getOptions()));
-              apiModelGenerator.generateModel(compilationUnit).visit(new ActionScriptCodeGeneratingModelVisitor(writer));
-            } else {
-              JsWriter out = new JsWriter(writer);
-              try {
-                out.setOptions(getOptions());
-                compilationUnit.visit(new JsCodeGenerator(out));
-              } finally {
-                out.close();
-              }
-            }
+            sourceMapOutput = renderSourceMap(sourceMap, outFile);
           } catch (IOException e) {
-            //noinspection ResultOfMethodCallIgnored
-            outFile.delete(); // NOSONAR
-            throw Jooc.error("error writing file: '" + outFile.getAbsolutePath() + "'", outFile, e);
+            throw Jooc.error("error writing file: '" + getSourceMapFile(outFile).getAbsolutePath() + "'", outFile, e);
           }
-        } catch (IOException e) {
-          throw Jooc.error("cannot open output file for writing: '" + outFile.getAbsolutePath() + "'", outFile, e);
+        }
+        startWritePhase(compilationUnit.getSource().getPath());
+        try {
+          write(outFile, output, sourceMapOutput, apiModel);
+        } finally {
+          endWritePhase();
         }
 
         return outFile;
@@ -102,6 +128,108 @@ public class SingleFileCompilationUnitSinkFactory extends AbstractCompilationUni
     };
   }
 
+  private void write(File outFile, String output, String sourceMapOutput, CompilationUnitModel apiModel) {
+    boolean written;
+    try {
+      written = writeFile(outFile, output.getBytes(UTF_8), isSkipUnchangedOutput(getOptions()));
+    } catch (FileNotFoundException e) {
+      throw Jooc.error("cannot open output file for writing: '" + outFile.getAbsolutePath() + "'", outFile, e);
+    } catch (IOException e) {
+      //noinspection ResultOfMethodCallIgnored
+      outFile.delete(); // NOSONAR
+      throw Jooc.error("error writing file: '" + outFile.getAbsolutePath() + "'", outFile, e);
+    }
+    if (sourceMapOutput != null) {
+      File sourceMapFile = getSourceMapFile(outFile);
+      try {
+        writeFile(sourceMapFile, sourceMapOutput.getBytes(UTF_8), isSkipUnchangedOutput(getOptions()));
+      } catch (IOException e) {
+        throw Jooc.error("error writing file: '" + sourceMapFile.getAbsolutePath() + "'", outFile, e);
+      }
+    }
+    File indexFile = ApiDeclarationIndex.getIndexFile(outFile);
+    if (generateApi && (written || !indexFile.exists())) {
+      try {
+        ApiDeclarationIndex.write(apiModel, output, indexFile);
+      } catch (IOException e) {
+        throw Jooc.error("error writing file: '" + indexFile.getAbsolutePath() + "'", outFile, e);
+      }
+    }
+  }
+
+  /**
+   * Render the API stub of the given API model or the JavaScript code of the given compilation unit into the output
+   * buffer of the current thread, so that the output file can be written in one go. If a source map is given, the
+   * mappings of the generated JavaScript code are added to it.
+   */
+  private String render(CompilationUnit compilationUnit, CompilationUnitModel apiModel, SourceMapGenerator sourceMap) throws IOException {
+    StringWriter buffer = OUTPUT_BUFFER.get();
+    try {
+      if (apiModel != null) {
+        apiModel.visit(new ActionScriptCodeGeneratingModelVisitor(buffer));
+      } else {
+        JsWriter out = new JsWriter(buffer);
+        out.setOptions(getOptions());
+        if (sourceMap != null) {
+          sourceMap.addSource(compilationUnit.getSource());
+          out.setSourceMap(sourceMap);
+        }
+        compilationUnit.visit(new JsCodeGenerator(out));
+        out.close(); // closing a StringWriter has no effect, so the buffer can still be reused
+      }
+      return buffer.toString();
+    } finally {
+      StringBuffer chars = buffer.getBuffer();
+      chars.setLength(0);
+      if (chars.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+        // do not keep huge buffers just because of a single huge output file:
+        OUTPUT_BUFFER.remove();
+      }
+    }
+  }
+
+  /**
+   * Write the given content to the given file with a single write operation. If requested, the file is not
+   * written at all if it already has exactly the given content, so that its timestamp is preserved.
+   *
+   * @return whether the file has been written
+   */
+  static boolean writeFile(File file, byte[] content, boolean skipUnchanged) throws IOException {
+    if (skipUnchanged && file.isFile() && file.length() == content.length && Arrays.equals(readFile(file), content)) {
+      return false;
+    }
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content);
+    } finally {
+      out.close();
+    }
+    return true;
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    byte[] content = new byte[(int) file.length()];
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      in.readFully(content);
+      return in.read() < 0 ? content : null;
+    } catch (EOFException e) {
+      // file has been truncated concurrently, so it differs anyway
+      return null;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static boolean isSkipUnchangedOutput(JoocOptions options) {
+    try {
+      return options.isSkipUnchangedOutput();
+    } catch (IncompatibleClassChangeError e) {
+      // ignore, old front ends did not know that unchanged output can be skipped
+      return false;
+    }
+  }
+
   private static boolean isExcludeClassByDefault(JoocOptions options) {
     try {
       return options.isExcludeClassByDefault();
@@ -0,0 +1,361 @@
+package net.jangaroo.jooc.daemon;
+
+import net.jangaroo.jooc.ClassPathUnitCache;
+import net.jangaroo.jooc.Jooc;
+import net.jangaroo.jooc.api.CompilationResult;
+import net.jangaroo.jooc.api.CompileLog;
+import net.jangaroo.jooc.api.FilePosition;
+import net.jangaroo.jooc.config.JoocConfiguration;
+
+import net.jangaroo.utils.FileLocations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A long-lived Jangaroo compiler process that keeps the compilation units parsed from class path jars
+ * between compilations. Clients (jooc with option <code>-daemon PORT</code>, the Ant task, and the Maven plugin)
+ * send their {@link JoocConfiguration} to the daemon via a local socket, and the daemon sends back all
+ * compiler messages and the compilation result, see {@link JoocDaemonClient}.
+ * Compilations with the same class path are executed one after the other, so that they can share the same
+ * {@link ClassPathUnitCache}.
+ * <p>As a request determines which files the daemon reads and writes, only clients of the user who started
+ * the daemon may send requests: On start-up, the daemon writes a random token to a file only readable by
+ * its owner (see {@link #getTokenFile(int)}), and a client has to send this token before its request.
+ * Requests are only deserialized if the token matches, and then only to the classes a request consists of.</p>
+ */
+public class JoocDaemon {
+
+  public static final int DEFAULT_MAX_CACHED_CLASS_PATHS = 4;
+
+  // response record types:
+  static final byte ERROR = 1;
+  static final byte ERROR_AT = 2;
+  static final byte WARNING = 3;
+  static final byte WARNING_AT = 4;
+  static final byte RESULT = 0;
+
+  private static final int TOKEN_LENGTH = 32;
+  private static final int REQUEST_TIMEOUT_MILLIS = 30000;
+  // the classes of the objects a request consists of, including super classes:
+  private static final Set<String> REQUEST_CLASS_NAMES = new HashSet<String>(Arrays.asList(
+          File.class.getName(),
+          JoocConfiguration.class.getName(),
+          FileLocations.class.getName(),
+          "net.jangaroo.jooc.config.DebugMode",
+          "net.jangaroo.jooc.config.PublicApiViolationsMode",
+          "net.jangaroo.jooc.config.SemicolonInsertionMode",
+          Enum.class.getName(),
+          ArrayList.class.getName(),
+          "java.util.Collections$UnmodifiableRandomAccessList",
+          "java.util.Collections$UnmodifiableList",
+          "java.util.Collections$UnmodifiableCollection"
+  ));
+
+  private final int port;
+  private String token;
+  private final Map<List<String>, ClassPathUnitCache> classPathUnitCaches;
+
+  public JoocDaemon(int port, final int maxCachedClassPaths) {
+    this.port = port;
+    // least recently used class paths are evicted first:
+    classPathUnitCaches = new LinkedHashMap<List<String>, ClassPathUnitCache>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<List<String>, ClassPathUnitCache> eldest) {
+        return size() > maxCachedClassPaths;
+      }
+    };
+  }
+
+  /**
+   * Accept compilation requests until the process is terminated.
+   *
+   * @throws IOException if the server socket cannot be opened
+   */
+  public void run() throws IOException {
+    ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+    token = createToken(getTokenFile(port));
+    System.out.println("Jangaroo compiler daemon listening on port " + port); // NOSONAR this is a cmd line tool
+    try {
+      while (true) {
+        final Socket socket = serverSocket.accept();
+        Thread thread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            handleRequest(socket);
+          }
+        }, "jooc-daemon-request");
+        thread.setDaemon(true);
+        thread.start();
+      }
+    } finally {
+      serverSocket.close();
+    }
+  }
+
+  private void handleRequest(Socket socket) {
+    try {
+      try {
+        socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+        RequestInputStream in = new RequestInputStream(new BufferedInputStream(socket.getInputStream()));
+        if (!isEqual(token, in.readUTF())) {
+          System.err.println("Jangaroo compiler daemon: rejected client with invalid token."); // NOSONAR this is a cmd line tool
+          return;
+        }
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.flush(); // send stream header, so that the client can start reading
+        File clientWorkingDirectory = (File) in.readObject();
+        JoocConfiguration clientConfig = (JoocConfiguration) in.readObject();
+        socket.setSoTimeout(0);
+        CompilationResult result = compile(resolveFiles(clientConfig, clientWorkingDirectory), new RemoteCompileLog(out));
+        synchronized (out) {
+          out.writeByte(RESULT);
+          out.writeInt(result.getResultCode());
+          out.writeObject(new HashMap<File, File>(result.getOutputFileMap()));
+          out.writeObject(result.getMetrics());
+          out.flush();
+        }
+      } finally {
+        socket.close();
+      }
+    } catch (IOException e) {
+      System.err.println("Jangaroo compiler daemon: communication with client failed: " + e); // NOSONAR this is a cmd line tool
+    } catch (ClassNotFoundException e) {
+      System.err.println("Jangaroo compiler daemon: incompatible client: " + e); // NOSONAR this is a cmd line tool
+    }
+  }
+
+  private static boolean isEqual(String expectedToken, String actualToken) throws IOException {
+    // compare in constant time, so that response times do not reveal the token:
+    return MessageDigest.isEqual(expectedToken.getBytes("UTF-8"), actualToken.getBytes("UTF-8"));
+  }
+
+  /**
+   * The file that contains the token a client has to send to the daemon listening on the given port.
+   *
+   * @param port the port of the daemon
+   * @return the token file in the user's home directory
+   */
+  public static File getTokenFile(int port) {
+    return new File(System.getProperty("user.home"), ".jangaroo" + File.separator + "jooc-daemon-" + port + ".token");
+  }
+
+  /**
+   * Read the token a client has to send to the daemon listening on the given port.
+   *
+   * @param port the port of the daemon
+   * @return the token, or null if no daemon has been started on the given port
+   * @throws IOException if the token file exists, but cannot be read
+   */
+  static String readToken(int port) throws IOException {
+    File tokenFile = getTokenFile(port);
+    if (!tokenFile.exists()) {
+      return null;
+    }
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(tokenFile), "UTF-8"));
+    try {
+      return reader.readLine();
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static String createToken(File tokenFile) throws IOException {
+    byte[] randomBytes = new byte[TOKEN_LENGTH];
+    new SecureRandom().nextBytes(randomBytes);
+    StringBuilder token = new StringBuilder();
+    for (byte randomByte : randomBytes) {
+      token.append(String.format("%02x", randomByte));
+    }
+    File tokenDir = tokenFile.getParentFile();
+    if (!tokenDir.exists() && !(tokenDir.mkdirs() && restrictToOwner(tokenDir))) {
+      throw new IOException("cannot create directory " + tokenDir);
+    }
+    // re-create the token file, so that only the owner can read it before the token is written:
+    if (tokenFile.exists() && !tokenFile.delete()) {
+      throw new IOException("cannot delete outdated token file " + tokenFile);
+    }
+    if (!tokenFile.createNewFile() || !restrictToOwner(tokenFile)) {
+      throw new IOException("cannot create token file " + tokenFile + " only readable by its owner");
+    }
+    tokenFile.deleteOnExit();
+    Writer writer = new OutputStreamWriter(new FileOutputStream(tokenFile), "UTF-8");
+    try {
+      writer.write(token.toString());
+    } finally {
+      writer.close();
+    }
+    return token.toString();
+  }
+
+  private static boolean restrictToOwner(File file) {
+    return file.setReadable(false, false) && file.setReadable(true, true)
+            && file.setWritable(false, false) && file.setWritable(true, true)
+            && file.setExecutable(false, false) && (file.isFile() || file.setExecutable(true, true));
+  }
+
+  private CompilationResult compile(JoocConfiguration config, CompileLog log) {
+    ClassPathUnitCache classPathUnitCache = getClassPathUnitCache(config);
+    synchronized (classPathUnitCache) {
+      Jooc jooc = new Jooc(config, log);
+      jooc.setClassPathUnitCache(classPathUnitCache);
+      return jooc.run();
+    }
+  }
+
+  /**
+   * Caches are kept per class path, including the size and modification time of all jars, so that a changed jar
+   * leads to a new cache, while the outdated one is evicted when it is no longer used.
+   */
+  private synchronized ClassPathUnitCache getClassPathUnitCache(JoocConfiguration config) {
+    List<String> key = ClassPathUnitCache.computeJarFingerprints(config.getClassPath());
+    ClassPathUnitCache classPathUnitCache = classPathUnitCaches.get(key);
+    if (classPathUnitCache == null) {
+      classPathUnitCache = new ClassPathUnitCache(config.getClassPath());
+      classPathUnitCaches.put(key, classPathUnitCache);
+    }
+    return classPathUnitCache;
+  }
+
+  /**
+   * Create a copy of the given configuration, with all relative files resolved against the working directory of
+   * the client.
+   */
+  private static JoocConfiguration resolveFiles(JoocConfiguration clientConfig, File clientWorkingDirectory) throws IOException {
+    JoocConfiguration config = new JoocConfiguration(clientConfig);
+    // never delegate back to a daemon:
+    config.setDaemonPort(0);
+    config.setSourceFiles(resolveFiles(config.getSourceFiles(), clientWorkingDirectory));
+    config.setSourcePath(resolveFiles(config.getSourcePath(), clientWorkingDirectory));
+    config.setClassPath(resolveFiles(config.getClassPath(), clientWorkingDirectory));
+    config.setOutputDirectory(resolveFile(config.getOutputDirectory(), clientWorkingDirectory));
+    config.setApiOutputDirectory(resolveFile(config.getApiOutputDirectory(), clientWorkingDirectory));
+    config.setDependencyCacheFile(resolveFile(config.getDependencyCacheFile(), clientWorkingDirectory));
+    config.setMetricsReportFile(resolveFile(config.getMetricsReportFile(), clientWorkingDirectory));
+    if (config.getOutputFileName() != null) {
+      config.setOutputFileName(resolveFile(config.getOutputFile(), clientWorkingDirectory).getPath());
+    }
+    return config;
+  }
+
+  private static List<File> resolveFiles(List<File> files, File clientWorkingDirectory) {
+    List<File> resolvedFiles = new ArrayList<File>(files.size());
+    for (File file : files) {
+      resolvedFiles.add(resolveFile(file, clientWorkingDirectory));
+    }
+    return resolvedFiles;
+  }
+
+  private static File resolveFile(File file, File clientWorkingDirectory) {
+    return file == null || file.isAbsolute() ? file : new File(clientWorkingDirectory, file.getPath());
+  }
+
+  /**
+   * Only deserializes the classes of the objects a request consists of, so that no other code can be executed
+   * by deserialization.
+   */
+  private static class RequestInputStream extends ObjectInputStream {
+    RequestInputStream(InputStream in) throws IOException {
+      super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      if (!REQUEST_CLASS_NAMES.contains(desc.getName())) {
+        throw new InvalidClassException(desc.getName(), "unexpected class in compilation request");
+      }
+      return super.resolveClass(desc);
+    }
+  }
+
+  /**
+   * Forwards all compiler messages to the client.
+   */
+  private static class RemoteCompileLog implements CompileLog {
+    private final ObjectOutputStream out;
+    private volatile boolean errors = false;
+
+    RemoteCompileLog(ObjectOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void error(FilePosition position, String msg) {
+      errors = true;
+      send(ERROR_AT, position, msg);
+    }
+
+    @Override
+    public void error(String msg) {
+      errors = true;
+      send(ERROR, null, msg);
+    }
+
+    @Override
+    public void warning(FilePosition position, String msg) {
+      send(WARNING_AT, position, msg);
+    }
+
+    @Override
+    public void warning(String msg) {
+      send(WARNING, null, msg);
+    }
+
+    @Override
+    public boolean hasErrors() {
+      return errors;
+    }
+
+    private void send(byte type, FilePosition position, String msg) {
+      // messages may be logged by several compiler threads:
+      synchronized (out) {
+        try {
+          out.writeByte(type);
+          if (position != null) {
+            out.writeObject(position.getFileName());
+            out.writeInt(position.getLine());
+            out.writeInt(position.getColumn());
+          }
+          out.writeObject(msg);
+        } catch (IOException e) {
+          throw new IllegalStateException("cannot send compiler message to client", e);
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      System.out.println("usage: JoocDaemon PORT [MAX_CACHED_CLASS_PATHS]"); // NOSONAR this is a cmd line tool
+      System.exit(1);
+    }
+    int maxCachedClassPaths = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_CACHED_CLASS_PATHS;
+    new JoocDaemon(Integer.parseInt(args[0]), maxCachedClassPaths).run();
+  }
+}
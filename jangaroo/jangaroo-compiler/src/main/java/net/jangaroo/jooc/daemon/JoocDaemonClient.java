@@ -0,0 +1,113 @@
+package net.jangaroo.jooc.daemon;
+
+import net.jangaroo.jooc.CompilationResultImpl;
+import net.jangaroo.jooc.api.CompilationMetrics;
+import net.jangaroo.jooc.api.CompilationResult;
+import net.jangaroo.jooc.api.CompileLog;
+import net.jangaroo.jooc.api.FilePosition;
+import net.jangaroo.jooc.config.JoocConfiguration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Map;
+
+/**
+ * Thin client that delegates a compilation to a {@link JoocDaemon} running on the local machine.
+ * The client authenticates by sending the token the daemon has written to its token file.
+ */
+public class JoocDaemonClient {
+
+  private final int port;
+
+  public JoocDaemonClient(int port) {
+    this.port = port;
+  }
+
+  /**
+   * Let the daemon compile according to the given configuration, reporting all compiler messages to the given log.
+   *
+   * @param config the compiler configuration
+   * @param log the log to report errors and warnings to
+   * @return the compilation result, or null if no daemon is listening on the port of this client
+   * @throws IOException if communication with the daemon fails
+   */
+  public CompilationResult compile(JoocConfiguration config, CompileLog log) throws IOException {
+    String token = JoocDaemon.readToken(port);
+    if (token == null) {
+      return null;
+    }
+    Socket socket;
+    try {
+      socket = new Socket(InetAddress.getByName(null), port);
+    } catch (ConnectException e) {
+      return null;
+    }
+    try {
+      ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeUTF(token);
+      out.writeObject(new File("").getAbsoluteFile());
+      // send a copy, as it only contains the list classes the daemon accepts:
+      out.writeObject(new JoocConfiguration(config));
+      out.flush();
+      ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+      while (true) {
+        byte type = in.readByte();
+        switch (type) {
+          case JoocDaemon.ERROR:
+            log.error((String) in.readObject());
+            break;
+          case JoocDaemon.ERROR_AT:
+            log.error(readFilePosition(in), (String) in.readObject());
+            break;
+          case JoocDaemon.WARNING:
+            log.warning((String) in.readObject());
+            break;
+          case JoocDaemon.WARNING_AT:
+            log.warning(readFilePosition(in), (String) in.readObject());
+            break;
+          case JoocDaemon.RESULT:
+            int resultCode = in.readInt();
+            @SuppressWarnings("unchecked")
+            Map<File, File> outputFileMap = (Map<File, File>) in.readObject();
+            CompilationMetrics metrics = (CompilationMetrics) in.readObject();
+            return new CompilationResultImpl(resultCode, outputFileMap, metrics);
+          default:
+            throw new IOException("unexpected response from compiler daemon: " + type);
+        }
+      }
+    } catch (ClassNotFoundException e) {
+      throw new IOException("incompatible compiler daemon on port " + port, e);
+    } finally {
+      socket.close();
+    }
+  }
+
+  private static FilePosition readFilePosition(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    final String fileName = (String) in.readObject();
+    final int line = in.readInt();
+    final int column = in.readInt();
+    return new FilePosition() {
+      @Override
+      public String getFileName() {
+        return fileName;
+      }
+
+      @Override
+      public int getLine() {
+        return line;
+      }
+
+      @Override
+      public int getColumn() {
+        return column;
+      }
+    };
+  }
+}
@@ -0,0 +1,142 @@
+package net.jangaroo.jooc.daemon;
+
+import net.jangaroo.jooc.ClassPathUnitCache;
+import net.jangaroo.jooc.Jooc;
+import net.jangaroo.jooc.SourceUnitCache;
+import net.jangaroo.jooc.api.CompilationResult;
+import net.jangaroo.jooc.api.CompileLog;
+import net.jangaroo.jooc.config.JoocConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the Jangaroo compiler running and recompiles source files as soon as they are changed.
+ * The source path is polled for added, changed, and deleted ActionScript files. Compilation is incremental, so
+ * only changed source files and source files depending on a changed public API are recompiled and their output
+ * files rewritten. The declarations of compilation units parsed from class path jars and from unchanged source
+ * files are kept between compilations.
+ */
+public class JoocWatcher {
+
+  public static final long DEFAULT_POLL_INTERVAL_MILLIS = 250;
+
+  private final JoocConfiguration config;
+  private final List<File> sourceFiles;
+  private final CompileLog log;
+  private ClassPathUnitCache classPathUnitCache;
+  private final SourceUnitCache sourceUnitCache = new SourceUnitCache();
+  private Map<File, Long> sourceFileStamps = new HashMap<File, Long>();
+
+  /**
+   * Create a watcher for the given configuration. The watcher compiles a copy of the configuration, whose
+   * source files are replaced by the changed files for each compilation, so the given configuration is not
+   * modified. If the configuration does not specify a dependency cache file, a temporary one is used, as
+   * incremental compilation needs it.
+   *
+   * @param config the compiler configuration
+   * @param log the log to report errors and warnings of all compilations to
+   * @throws IOException if the temporary dependency cache file cannot be created
+   */
+  public JoocWatcher(JoocConfiguration config, CompileLog log) throws IOException {
+    this.config = new JoocConfiguration(config);
+    this.sourceFiles = new ArrayList<File>(config.getSourceFiles());
+    this.log = log;
+    // the watcher compiles in-process to keep the class path and source compilation units:
+    this.config.setDaemonPort(0);
+    if (this.config.getDependencyCacheFile() == null) {
+      File dependencyCacheFile = File.createTempFile("jooc-dependencies", ".txt");
+      dependencyCacheFile.deleteOnExit();
+      //noinspection ResultOfMethodCallIgnored
+      dependencyCacheFile.delete(); // an empty file is no valid dependency cache
+      this.config.setDependencyCacheFile(dependencyCacheFile);
+    }
+  }
+
+  /**
+   * Compile the source files of the configuration, then recompile changed source files until interrupted.
+   *
+   * @param pollIntervalMillis the time to wait between two checks for changed source files
+   * @throws InterruptedException if the current thread is interrupted while waiting for changes
+   */
+  public void run(long pollIntervalMillis) throws InterruptedException {
+    compile();
+    System.out.println("Watching " + config.getSourcePath() + " for changes..."); // NOSONAR this is a cmd line tool
+    while (!Thread.currentThread().isInterrupted()) {
+      Thread.sleep(pollIntervalMillis);
+      compileChanges();
+    }
+  }
+
+  /**
+   * Compile the source files of the configuration, and remember the state of all source files in the source path.
+   *
+   * @return the compilation result
+   */
+  public CompilationResult compile() {
+    sourceFileStamps = scanSourcePath();
+    return compile(sourceFiles);
+  }
+
+  /**
+   * Compile all source files that have been added or changed since the last compilation. Deleted source files
+   * do not have to be compiled, but classes depending on them are recompiled to report errors.
+   *
+   * @return the compilation result, or null if no source file has been added, changed, or deleted
+   */
+  public CompilationResult compileChanges() {
+    Map<File, Long> currentSourceFileStamps = scanSourcePath();
+    List<File> changedSourceFiles = new ArrayList<File>();
+    for (Map.Entry<File, Long> entry : currentSourceFileStamps.entrySet()) {
+      if (!entry.getValue().equals(sourceFileStamps.get(entry.getKey()))) {
+        changedSourceFiles.add(entry.getKey());
+      }
+    }
+    boolean deleted = !currentSourceFileStamps.keySet().containsAll(sourceFileStamps.keySet());
+    sourceFileStamps = currentSourceFileStamps;
+    if (changedSourceFiles.isEmpty() && !deleted) {
+      return null;
+    }
+    return compile(changedSourceFiles);
+  }
+
+  private CompilationResult compile(List<File> sourceFiles) {
+    long startTime = System.currentTimeMillis();
+    config.setSourceFiles(new ArrayList<File>(sourceFiles));
+    if (classPathUnitCache == null || !classPathUnitCache.isUpToDate(config.getClassPath())) {
+      classPathUnitCache = new ClassPathUnitCache(config.getClassPath());
+    }
+    Jooc jooc = new Jooc(config, log);
+    jooc.setClassPathUnitCache(classPathUnitCache);
+    jooc.setSourceUnitCache(sourceUnitCache);
+    CompilationResult result = jooc.run();
+    System.out.println("Compiled " + result.getOutputFileMap().size() + " source file(s) in " // NOSONAR this is a cmd line tool
+            + (System.currentTimeMillis() - startTime) + " ms: " + Jooc.getResultCodeDescription(result.getResultCode()));
+    return result;
+  }
+
+  private Map<File, Long> scanSourcePath() {
+    Map<File, Long> sourceFileStamps = new HashMap<File, Long>();
+    for (File sourceDir : config.getSourcePath()) {
+      scanDirectory(sourceDir, sourceFileStamps);
+    }
+    return sourceFileStamps;
+  }
+
+  private static void scanDirectory(File directory, Map<File, Long> sourceFileStamps) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory()) {
+          scanDirectory(file, sourceFileStamps);
+        } else if (file.getName().endsWith(Jooc.AS_SUFFIX)) {
+          sourceFileStamps.put(file, SourceUnitCache.computeStamp(file));
+        }
+      }
+    }
+  }
+}
@@ -2,32 +2,98 @@ package net.jangaroo.jooc.input;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class PathInputSource extends DirectoryInputSource {
 
   private String name;
   private List<InputSource> entries;
   private boolean inSourcePath;
+  // composite children are looked up over and over again while resolving imports, so create them only once:
+  private final Map<String, InputSource> childrenByPath = new HashMap<String, InputSource>();
 
   public static PathInputSource fromFiles(List<File> files, String[] rootDirs, boolean inSourcePath) throws IOException {
+    return fromFiles(files, rootDirs, inSourcePath, null);
+  }
+
+  /**
+   * Create a path input source from the given directories and zip or jar files. Opening a zip file means to read
+   * and index all its entries, so if an executor is given, all zip files are opened concurrently.
+   *
+   * @param files the directories and zip or jar files of the path, in lookup order
+   * @param rootDirs the directories inside zip files to accept as roots
+   * @param inSourcePath whether the path is the source path
+   * @param executor the executor to open zip files with, or null to open them on the calling thread
+   * @return the path input source
+   * @throws IOException if a zip file cannot be opened
+   */
+  public static PathInputSource fromFiles(List<File> files, final String[] rootDirs, boolean inSourcePath,
+                                          ExecutorService executor) throws IOException {
     List<InputSource> entries = new ArrayList<InputSource>();
+    List<Future<ZipFileInputSource>> zipFileInputSources = new ArrayList<Future<ZipFileInputSource>>();
     StringBuilder name = new StringBuilder();
-    for (File file : files) {
+    for (final File file : files) {
       if (file.isDirectory()) {
         entries.add(new FileInputSource(file, file, inSourcePath));
       } else if (file.getName().endsWith(".jar") || file.getName().endsWith(".zip")) {
-        entries.add(new ZipFileInputSource(file, rootDirs));
+        if (executor == null) {
+          entries.add(new ZipFileInputSource(file, rootDirs));
+        } else {
+          // remember the position of the zip file, to be replaced by its input source once opened:
+          entries.add(null);
+          zipFileInputSources.add(executor.submit(new Callable<ZipFileInputSource>() {
+            public ZipFileInputSource call() throws IOException {
+              return new ZipFileInputSource(file, rootDirs);
+            }
+          }));
+        }
       }
       if (!(name.length() == 0)) {
         name.append(File.pathSeparatorChar);
       }
       name.append(file.getAbsolutePath());
     }
+    if (!zipFileInputSources.isEmpty()) {
+      Iterator<Future<ZipFileInputSource>> zipFileInputSourceIterator = zipFileInputSources.iterator();
+      for (int i = 0; i < entries.size(); i++) {
+        if (entries.get(i) == null) {
+          entries.set(i, get(zipFileInputSourceIterator.next()));
+        }
+      }
+    }
     return new PathInputSource(name.toString(), entries, inSourcePath);
   }
 
+  private static ZipFileInputSource get(Future<ZipFileInputSource> zipFileInputSource) throws IOException {
+    try {
+      return zipFileInputSource.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while opening class path zip files");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException("cannot open zip file", cause);
+    }
+  }
+
   public PathInputSource(final String name, final List<InputSource> entries, boolean inSourcePath) {
     super();
     this.name = name;
@@ -65,7 +131,16 @@ public class PathInputSource extends DirectoryInputSource {
   }
 
   @Override
-  public InputSource getChild(final String path) {
+  public synchronized InputSource getChild(final String path) {
+    if (childrenByPath.containsKey(path)) {
+      return childrenByPath.get(path);
+    }
+    InputSource child = findChild(path);
+    childrenByPath.put(path, child);
+    return child;
+  }
+
+  private InputSource findChild(final String path) {
     List<InputSource> result = null;
     for (InputSource entry : entries) {
       final InputSource child = entry.getChild(path);
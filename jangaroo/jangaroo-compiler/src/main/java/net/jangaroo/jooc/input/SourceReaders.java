@@ -0,0 +1,105 @@
+package net.jangaroo.jooc.input;
+
+import net.jangaroo.utils.BOMStripperInputStream;
+
+import java.io.CharArrayReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Creates readers for the source code of input sources that decode the UTF-8 source code in one go into a
+ * single char array, instead of decoding and buffering it piece by piece through a chain of streams.
+ */
+public final class SourceReaders {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+  /**
+   * Each (parser) thread reuses its byte buffer for reading files and zip entries.
+   */
+  private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[16 * 1024];
+    }
+  };
+
+  private SourceReaders() {
+  }
+
+  /**
+   * Create a reader for the UTF-8 encoded source code of the given input source, skipping a byte order mark.
+   *
+   * @param in the input source to read
+   * @return a reader of the decoded source code
+   * @throws IOException if the input source cannot be read
+   */
+  public static Reader createReader(InputSource in) throws IOException {
+    if (in instanceof FileInputSource) {
+      // do not memory-map files: a mapping is only released on garbage collection and locks the file on Windows
+      FileInputStream fileInputStream = new FileInputStream(((FileInputSource) in).getFile());
+      try {
+        long size = fileInputStream.getChannel().size();
+        if (size <= Integer.MAX_VALUE) {
+          return decode(read(fileInputStream, (int) size));
+        }
+      } finally {
+        fileInputStream.close();
+      }
+    }
+    if (in instanceof ZipEntryInputSource) {
+      long size = ((ZipEntryInputSource) in).getSize();
+      if (size >= 0 && size <= Integer.MAX_VALUE) {
+        InputStream inputStream = in.getInputStream();
+        try {
+          return decode(read(inputStream, (int) size));
+        } finally {
+          inputStream.close();
+        }
+      }
+    }
+    return new InputStreamReader(new BOMStripperInputStream(in.getInputStream()), UTF_8);
+  }
+
+  /**
+   * Read the given stream completely into the (possibly grown) buffer of the current thread.
+   */
+  private static ByteBuffer read(InputStream inputStream, int expectedSize) throws IOException {
+    byte[] buffer = BUFFER.get();
+    if (buffer.length < expectedSize + 1) {
+      buffer = new byte[expectedSize + 1];
+      BUFFER.set(buffer);
+    }
+    int length = 0;
+    int count;
+    // the file may have grown since its size was determined, so read until the end of the stream:
+    while ((count = inputStream.read(buffer, length, buffer.length - length)) >= 0) {
+      length += count;
+      if (length == buffer.length) {
+        byte[] largerBuffer = new byte[buffer.length * 2];
+        System.arraycopy(buffer, 0, largerBuffer, 0, length);
+        buffer = largerBuffer;
+        BUFFER.set(buffer);
+      }
+    }
+    return ByteBuffer.wrap(buffer, 0, length);
+  }
+
+  private static Reader decode(ByteBuffer bytes) {
+    CharBuffer chars = UTF_8.decode(bytes);
+    int offset = chars.arrayOffset() + chars.position();
+    int length = chars.remaining();
+    if (length > 0 && chars.get(chars.position()) == BYTE_ORDER_MARK) {
+      ++offset;
+      --length;
+    }
+    return new CharArrayReader(chars.array(), offset, length);
+  }
+}
@@ -78,6 +78,31 @@ public class ZipEntryInputSource implements InputSource {
     return zipFileInputSource.getChild(p);
   }
 
+  /**
+   * Get the entry with the given name in the same directory as this entry.
+   *
+   * @param name the file name of the sibling entry
+   * @return the sibling entry, or null if there is no such entry
+   */
+  public ZipEntryInputSource getSibling(String name) {
+    int lastSlash = relativePath.lastIndexOf('/');
+    return (ZipEntryInputSource) zipFileInputSource.getChild(relativePath.substring(0, lastSlash + 1) + name);
+  }
+
+  /**
+   * @return the CRC-32 checksum of the uncompressed entry data as stored in the zip file, or -1 if not known
+   */
+  public long getCrc() {
+    return zipEntry.getCrc();
+  }
+
+  /**
+   * @return the uncompressed size of the entry, or -1 if not known
+   */
+  public long getSize() {
+    return zipEntry.getSize();
+  }
+
   @Override
   public String getRelativePath() {
     return relativePath;
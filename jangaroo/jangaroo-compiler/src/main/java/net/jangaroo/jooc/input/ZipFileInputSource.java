@@ -3,7 +3,9 @@ package net.jangaroo.jooc.input;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +18,8 @@ public class ZipFileInputSource extends DirectoryInputSource {
   private ZipFile zipFile;
   private String[] rootDirs;
   private Map<String, ZipEntryInputSource> entries = new LinkedHashMap<String, ZipEntryInputSource>();
+  // the direct children of each directory, built once, so that listing a package does not scan the whole zip file
+  private Map<String, List<InputSource>> childrenByDirectory = new HashMap<String, List<InputSource>>();
 
   /**
    * Create an InputSource directory from the given zip or jar file, providing a "union view" over the zip file
@@ -35,11 +39,24 @@ public class ZipFileInputSource extends DirectoryInputSource {
       ZipEntry entry = zipEntryEnum.nextElement();
       final String relativePath = getRelativePath(entry.getName());
       if (relativePath != null && !entries.containsKey(relativePath)) {
-        this.entries.put(relativePath, new ZipEntryInputSource(this, entry, relativePath));
+        ZipEntryInputSource entryInputSource = new ZipEntryInputSource(this, entry, relativePath);
+        this.entries.put(relativePath, entryInputSource);
+        if (relativePath.length() > 0) {
+          addToDirectory(relativePath.substring(0, Math.max(0, relativePath.lastIndexOf('/'))), entryInputSource);
+        }
       }
     }
   }
 
+  private void addToDirectory(String directoryPath, ZipEntryInputSource entry) {
+    List<InputSource> children = childrenByDirectory.get(directoryPath);
+    if (children == null) {
+      children = new ArrayList<InputSource>();
+      childrenByDirectory.put(directoryPath, children);
+    }
+    children.add(entry);
+  }
+
   private String getRelativePath(final String name) {
     // find the root dir with maximal length
     String foundRoot = null;
@@ -107,20 +124,8 @@ public class ZipFileInputSource extends DirectoryInputSource {
   }
 
   private List<InputSource> list(final String relativePath) {
-    List<InputSource> result = new ArrayList<InputSource>();
-    for (Map.Entry<String, ZipEntryInputSource> entry : entries.entrySet()) {
-      String p2 = entry.getValue().getRelativePath();
-      for (String root : rootDirs) {
-        String p = root + relativePath;
-        if (p2.startsWith(p) &&
-                p2.length() > p.length() &&
-                p2.lastIndexOf('/') == (p.isEmpty() ? -1 : p.length())) {
-          result.add(entry.getValue());
-          break;
-        }
-      }
-    }
-    return result;
+    List<InputSource> children = childrenByDirectory.get(relativePath);
+    return children == null ? Collections.<InputSource>emptyList() : Collections.unmodifiableList(children);
   }
 
 }
\ No newline at end of file
@@ -1,9 +1,25 @@
 package net.jangaroo.jooc;
 
+import net.jangaroo.jooc.api.CompilationMetrics;
+import net.jangaroo.jooc.api.CompilationResult;
 import net.jangaroo.jooc.api.CompileLog;
+import net.jangaroo.jooc.ast.ClassDeclaration;
+import net.jangaroo.jooc.ast.CompilationUnit;
+import net.jangaroo.jooc.ast.Directive;
+import net.jangaroo.jooc.ast.FunctionDeclaration;
+import net.jangaroo.jooc.ast.LiteralExpr;
+import net.jangaroo.jooc.ast.PrefixOpExpr;
+import net.jangaroo.jooc.ast.VariableDeclaration;
 import net.jangaroo.jooc.config.DebugMode;
 import net.jangaroo.jooc.api.FilePosition;
 import net.jangaroo.jooc.config.JoocConfiguration;
+import net.jangaroo.jooc.daemon.JoocWatcher;
+import net.jangaroo.jooc.input.FileInputSource;
+import net.jangaroo.jooc.input.InputSource;
+import net.jangaroo.jooc.input.PathInputSource;
+import net.jangaroo.jooc.input.SourceReaders;
+import net.jangaroo.jooc.input.ZipEntryInputSource;
+import net.jangaroo.jooc.input.ZipFileInputSource;
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Rule;
@@ -11,13 +27,30 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 
 /**
@@ -221,6 +254,870 @@ public class JoocTest {
     assertApiCompilationResult("package1/someOtherPackage/NamespacedMembers");
   }
 
+  @Test
+  public void testParallelCompilation() throws Exception {
+    config.setThreads(2);
+    String[] relativeClassFileNames = {
+            "package1/WithStaticReference",
+            "package1/NoMultipleThisAliases",
+            "package1/ChainedConstants",
+            "package1/AuxVarConfusion",
+            "package1/somePackageGlobal"
+    };
+    for (String relativeClassFileName : relativeClassFileNames) {
+      config.addSourceFile(getFile("/" + relativeClassFileName + ".as"));
+    }
+    jooc.run();
+    for (String relativeClassFileName : relativeClassFileNames) {
+      assertOutputEquals(relativeClassFileName, new File(outputFolder, relativeClassFileName + ".js"));
+    }
+  }
+
+  @Test
+  public void testParallelCompilationIsDeterministic() throws Exception {
+    File sourceDir = tmpFolder.newFolder("determinism-src");
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, sourceDir);
+    config.setSourcePath(sourcepath);
+    config.setApiOutputDirectory(null);
+    List<File> sourceFiles = new ArrayList<File>();
+    sourceFiles.add(writeSource(sourceDir, "shapes", "Shape", "public class Shape {\n" +
+            "  public static const ORIGIN:int = 0;\n" +
+            "  private var id:int;\n" +
+            "  public function area():Number { return id; }\n}"));
+    sourceFiles.add(writeSource(sourceDir, "shapes.util", "Geometry", "public class Geometry {\n" +
+            "  public static function square(x:Number):Number { return x * x; }\n}"));
+    sourceFiles.add(writeSource(sourceDir, "shapes", "Polygon", "import shapes.util.*;\npublic class Polygon extends Shape {\n" +
+            "  private var sides:int;\n" +
+            "  override public function area():Number { return Geometry.square(sides) + super.area(); }\n}"));
+    // many classes in several packages share the same super classes, star imports, and package references:
+    for (int i = 0; i < 48; i++) {
+      String superClass = i % 2 == 0 ? "Polygon" : "Shape";
+      String neighbor = "shapes.kind" + ((i + 1) % 3) + ".Kind" + ((i + 1) % 48);
+      sourceFiles.add(writeSource(sourceDir, "shapes.kind" + (i % 3), "Kind" + i, "import shapes.*;\n" +
+              "import shapes.util.Geometry;\n" +
+              "import " + neighbor + ";\n" +
+              "public class Kind" + i + " extends " + superClass + " {\n" +
+              "  private var scale:Number = Shape.ORIGIN + " + i + ";\n" +
+              "  override public function area():Number { return Geometry.square(scale) + super.area(); }\n" +
+              "  public function next():Shape { return new " + neighbor.substring(neighbor.lastIndexOf('.') + 1) + "(); }\n}"));
+    }
+    config.setSourceFiles(sourceFiles);
+    config.setThreads(1);
+    assertEquals(CompilationResult.RESULT_CODE_OK, new Jooc(config, testLog).run().getResultCode());
+
+    for (int run = 0; run < 3; run++) {
+      File parallelOutputFolder = tmpFolder.newFolder("determinism-output-" + run);
+      config.setOutputDirectory(parallelOutputFolder);
+      config.setThreads(4);
+      assertEquals(CompilationResult.RESULT_CODE_OK, new Jooc(config, testLog).run().getResultCode());
+      for (File sourceFile : sourceFiles) {
+        String relativeOutputPath = sourceFile.getPath().substring(sourceDir.getPath().length() + 1).replace(".as", ".js");
+        assertEquals("parallel compilation must produce the same output as sequential compilation: " + relativeOutputPath,
+                readFileToString(new File(outputFolder, relativeOutputPath)),
+                readFileToString(new File(parallelOutputFolder, relativeOutputPath)));
+      }
+    }
+    assertFalse(testLog.hasErrors());
+  }
+
+  @Test
+  public void testJsWriter() throws Exception {
+    config.setDebugMode(DebugMode.SOURCE);
+    StringWriter code = new StringWriter();
+    JsWriter out = new JsWriter(code);
+    out.setOptions(config);
+    for (String token : new String[]{"a", "b", "+", "+", "<", "=", "\u00e4", "1"}) {
+      out.writeToken(token);
+    }
+    out.beginComment();
+    out.write("/c*/");
+    out.endComment();
+    out.close();
+    assertEquals("a b+ +< =\u00e4 1/* /c* /*/", code.toString());
+
+    config.setDebugMode(DebugMode.LINES);
+    code = new StringWriter();
+    out = new JsWriter(code);
+    out.setOptions(config);
+    out.beginComment();
+    out.write("x\ny\n");
+    out.write("p\nq".toCharArray(), 0, 3);
+    out.endComment();
+    out.write("z");
+    out.close();
+    assertEquals("\n\n\nz", code.toString());
+  }
+
+  @Test
+  public void testSourceMaps() throws Exception {
+    StringBuilder vlq = new StringBuilder();
+    for (int value : new int[]{0, 1, -1, 16, 123}) {
+      SourceMapGenerator.encodeVlq(vlq, value);
+      vlq.append(' ');
+    }
+    assertEquals("A C D gB 2H ", vlq.toString());
+
+    SourceMapGenerator sourceMap = new SourceMapGenerator();
+    config.setDebugMode(DebugMode.NONE);
+    StringWriter code = new StringWriter();
+    JsWriter out = new JsWriter(code);
+    out.setOptions(config);
+    out.setSourceMap(sourceMap);
+    out.writeSymbol(new JooSymbol(sym.IDE, "a", 1, 1, "", "foo"));
+    out.writeToken("(");
+    out.writeSymbol(new JooSymbol(sym.IDE, "a", 2, 3, "\n  ", "bar"));
+    out.writeToken(")");
+    out.writeToken("\n\n");
+    out.writeSymbol(new JooSymbol(sym.IDE, "b", 1, 1, "", "baz"));
+    out.close();
+    assertEquals("foo(\nbar)\n\nbaz", code.toString());
+    StringWriter json = new StringWriter();
+    sourceMap.write(json, "out.js");
+    assertEquals("{\"version\":3,\"file\":\"out.js\",\"sources\":[\"a\",\"b\"],\"sourcesContent\":[null,null]," +
+            "\"names\":[],\"mappings\":\"AAAA;AACE;;ACDF\"}\n", json.toString());
+
+    File sourceDir = tmpFolder.newFolder("sourcemap-src");
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, sourceDir);
+    config.setSourcePath(sourcepath);
+    config.setApiOutputDirectory(null);
+    config.setGenerateSourceMaps(true);
+    config.addSourceFile(writeSource(sourceDir, "Mapped", "public class Mapped {\n  public function foo():Object { return 1; }\n}"));
+    assertEquals(CompilationResult.RESULT_CODE_OK, jooc.run().getResultCode());
+    String output = readFileToString(new File(outputFolder, "incremental/Mapped.js"));
+    assertTrue(output.endsWith("//# sourceMappingURL=Mapped.js.map\n"));
+    String sourceMapJson = readFileToString(new File(outputFolder, "incremental/Mapped.js.map"));
+    assertTrue(sourceMapJson.startsWith("{\"version\":3,\"file\":\"Mapped.js\",\"sources\":[\"incremental/Mapped.as\"],"));
+    assertTrue(sourceMapJson.contains("public function foo():Object { return 1; }"));
+  }
+
+  @Test
+  public void testMinify() throws Exception {
+    config.setMinify(true);
+    StringWriter code = new StringWriter();
+    JsWriter out = new JsWriter(code);
+    out.setOptions(config);
+    out.writeSymbol(new JooSymbol(sym.IDE, "foo", 1, 1, "", "foo"));
+    out.writeSymbol(new JooSymbol(sym.IDE, "bar", 2, 3, "\n  /* bar */\n  ", "bar"));
+    out.writeSymbol(new JooSymbol(sym.SEMICOLON, "", 2, 6, "", ";"));
+    out.close();
+    assertEquals("minified code must not keep source whitespace, even in debug mode", "foo bar;", code.toString());
+
+    File sourceDir = tmpFolder.newFolder("minify-src");
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, sourceDir);
+    config.setSourcePath(sourcepath);
+    config.setApiOutputDirectory(null);
+    config.addSourceFile(writeSource(sourceDir, "Minified", "public class Minified {\n" +
+            "  public function sum(first:Number, second:Number):Number {\n" +
+            "    var total:Number = first + second;\n" +
+            "    return total;\n" +
+            "  }\n" +
+            "}"));
+    assertEquals(CompilationResult.RESULT_CODE_OK, jooc.run().getResultCode());
+    String output = readFileToString(new File(outputFolder, "incremental/Minified.js"));
+    assertTrue(output, output.contains("(a,b){var c=a+b;return c;}"));
+    assertTrue("member declarations must be compact if source code is not kept",
+            output.contains("3,\"sum\",function(a,b){"));
+    assertFalse(output, output.contains("total"));
+
+    // an inherited static member is accessed through the qualified name of its class, whose top-level package
+    // name must not be shadowed by a short name:
+    writeSource(sourceDir, "c", "Base", "public class Base {\n  public static const ONE:Number = 1;\n}");
+    writeSource(sourceDir, "b", "Mid", "import c.Base;\npublic class Mid extends Base {\n}");
+    config.setSourceFiles(Collections.singletonList(writeSource(sourceDir, "Inheriting", "import b.Mid;\n" +
+            "public class Inheriting extends Mid {\n" +
+            "  public function sum(first:Number, second:Number):Number {\n" +
+            "    return first + second + ONE;\n" +
+            "  }\n" +
+            "}")));
+    assertEquals(CompilationResult.RESULT_CODE_OK, new Jooc(config, testLog).run().getResultCode());
+    output = readFileToString(new File(outputFolder, "incremental/Inheriting.js"));
+    assertTrue(output, output.contains("c.Base.ONE"));
+    assertFalse(output, output.contains("(a,c)"));
+  }
+
+  @Test
+  public void testMergedOutput() throws Exception {
+    String[] relativeClassFileNames = {
+            "package1/WithStaticReference",
+            "package1/NoMultipleThisAliases",
+            "package1/ChainedConstants",
+            "package1/AuxVarConfusion",
+            "package1/somePackageGlobal"
+    };
+    for (String relativeClassFileName : relativeClassFileNames) {
+      config.addSourceFile(getFile("/" + relativeClassFileName + ".as"));
+    }
+    File sequentialOutputFile = new File(outputFolder, "sequential.js");
+    config.setThreads(1);
+    config.setOutputFileName(sequentialOutputFile.getPath());
+    assertEquals(CompilationResult.RESULT_CODE_OK, new Jooc(config, testLog).run().getResultCode());
+    File parallelOutputFile = new File(outputFolder, "parallel.js");
+    config.setThreads(4);
+    config.setOutputFileName(parallelOutputFile.getPath());
+    assertEquals(CompilationResult.RESULT_CODE_OK, new Jooc(config, testLog).run().getResultCode());
+
+    String mergedOutput = readFileToString(sequentialOutputFile);
+    StringBuilder expectedOutput = new StringBuilder();
+    for (String relativeClassFileName : relativeClassFileNames) {
+      expectedOutput.append(readFileToString(getFile("/expected/" + relativeClassFileName + ".js")));
+    }
+    assertEquals(expectedOutput.toString()
+            .replace("@runtimeVersion", JoocProperties.getRuntimeVersion())
+            .replace("@version", JoocProperties.getVersion()), mergedOutput);
+    assertEquals("parallel code generation must not change merged output", mergedOutput, readFileToString(parallelOutputFile));
+    assertFalse(new File(outputFolder, "parallel.js.tmp").exists());
+  }
+
+  @Test
+  public void testMergedOutputSourceMap() throws Exception {
+    SourceMapGenerator firstSourceMap = new SourceMapGenerator();
+    firstSourceMap.addMapping(0, 0, "a", 0, 0);
+    SourceMapGenerator secondSourceMap = new SourceMapGenerator();
+    secondSourceMap.addMapping(0, 2, "b", 0, 0);
+    secondSourceMap.addMapping(1, 1, "b", 1, 0);
+    SourceMapGenerator mergedSourceMap = new SourceMapGenerator();
+    mergedSourceMap.append(firstSourceMap, 0, 0);
+    mergedSourceMap.append(secondSourceMap, 0, 5);
+    StringWriter json = new StringWriter();
+    mergedSourceMap.write(json, "out.js");
+    assertTrue("only mappings in the first line of appended code are shifted by the column offset: " + json,
+            json.toString().contains("\"mappings\":\"AAAA,OCAA;CACA\""));
+
+    File sourceDir = tmpFolder.newFolder("merged-sourcemap-src");
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, sourceDir);
+    config.setSourcePath(sourcepath);
+    config.setApiOutputDirectory(null);
+    config.setGenerateSourceMaps(true);
+    File firstSourceFile = writeSource(sourceDir, "MergedFirst",
+            "public class MergedFirst {\n  public function first(firstParam:Number):Number { return firstParam; }\n}");
+    File secondSourceFile = writeSource(sourceDir, "MergedSecond",
+            "public class MergedSecond {\n\n  public function second(secondParam:Number):Number { return secondParam; }\n}");
+    config.addSourceFile(firstSourceFile);
+    config.addSourceFile(secondSourceFile);
+    File outputFile = new File(outputFolder, "merged.js");
+    config.setOutputFileName(outputFile.getPath());
+    assertEquals(CompilationResult.RESULT_CODE_OK, jooc.run().getResultCode());
+
+    String output = readFileToString(outputFile);
+    assertTrue(output.endsWith("//# sourceMappingURL=merged.js.map\n"));
+    String sourceMapJson = readFileToString(new File(outputFolder, "merged.js.map"));
+    List<String> sources = Arrays.asList(substringBetween(sourceMapJson, "\"sources\":[", "]").split(","));
+    List<int[]> mappings = decodeMappings(substringBetween(sourceMapJson, "\"mappings\":\"", "\""));
+    assertMappedIdentifier(output, mappings, sources.indexOf("\"incremental/MergedFirst.as\""),
+            readFileToString(firstSourceFile), "firstParam");
+    assertMappedIdentifier(output, mappings, sources.indexOf("\"incremental/MergedSecond.as\""),
+            readFileToString(secondSourceFile), "secondParam");
+  }
+
+  /**
+   * Assert that the given identifier is mapped at least once, and that each of its mappings
+   * points to the same identifier in the generated code.
+   */
+  private static void assertMappedIdentifier(String output, List<int[]> mappings, int sourceIndex, String source,
+                                             String identifier) {
+    assertTrue(sourceIndex >= 0);
+    String[] sourceLines = source.split("\n", -1);
+    String[] outputLines = output.split("\n", -1);
+    int mappedCount = 0;
+    for (int[] mapping : mappings) {
+      if (mapping[2] == sourceIndex && sourceLines[mapping[3]].startsWith(identifier, mapping[4])) {
+        assertTrue("mapping of " + identifier + " points to '" + outputLines[mapping[0]].substring(mapping[1]) + "'",
+                outputLines[mapping[0]].startsWith(identifier, mapping[1]));
+        mappedCount++;
+      }
+    }
+    assertTrue(identifier + " is not mapped", mappedCount > 0);
+  }
+
+  /**
+   * Decode the given source map mappings into generated line, generated column, source index, source line,
+   * and source column of each mapping.
+   */
+  private static List<int[]> decodeMappings(String encodedMappings) {
+    List<int[]> mappings = new ArrayList<int[]>();
+    int[] previous = new int[5];
+    String[] lines = encodedMappings.split(";", -1);
+    for (int line = 0; line < lines.length; line++) {
+      previous[1] = 0;
+      for (String segment : lines[line].split(",")) {
+        if (segment.length() > 0) {
+          int[] mapping = new int[5];
+          mapping[0] = line;
+          int position = 0;
+          for (int field = 1; field < mapping.length; field++) {
+            int value = 0;
+            int shift = 0;
+            int digit;
+            do {
+              digit = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".indexOf(segment.charAt(position++));
+              value += (digit & 31) << shift;
+              shift += 5;
+            } while ((digit & 32) != 0);
+            mapping[field] = previous[field] + ((value & 1) == 0 ? value >> 1 : -(value >> 1));
+          }
+          System.arraycopy(mapping, 1, previous, 1, 4);
+          mappings.add(mapping);
+        }
+      }
+    }
+    return mappings;
+  }
+
+  private static String substringBetween(String str, String open, String close) {
+    int start = str.indexOf(open) + open.length();
+    return str.substring(start, str.indexOf(close, start));
+  }
+
+  @Test
+  public void testIncrementalCompilation() throws Exception {
+    File sourceDir = tmpFolder.newFolder("incremental-src");
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, sourceDir);
+    config.setSourcePath(sourcepath);
+    config.setApiOutputDirectory(null);
+    config.setDependencyCacheFile(new File(tmpFolder.getRoot(), "jooc-dependencies.txt"));
+    File base = writeSource(sourceDir, "Base", "public class Base {\n  public function foo():Object { return 1; }\n}");
+    File sub = writeSource(sourceDir, "Sub", "public class Sub extends Base {\n}");
+    File user = writeSource(sourceDir, "User", "public class User {\n  public function bar(sub:Sub):Object { return sub.foo(); }\n}");
+    File other = writeSource(sourceDir, "Other", "public class Other {\n}");
+    for (File sourceFile : new File[]{base, sub, user, other}) {
+      config.addSourceFile(sourceFile);
+    }
+    assertEquals(4, new Jooc(config, testLog).run().getOutputFileMap().size());
+    assertTrue(config.getDependencyCacheFile().exists());
+
+    // changing the implementation of Base must not recompile any other class:
+    config.setSourceFiles(new ArrayList<File>());
+    config.addSourceFile(writeSource(sourceDir, "Base", "public class Base {\n  public function foo():Object { return 2; }\n}"));
+    assertEquals(Collections.singleton(base.getCanonicalFile()),
+            canonicalize(new Jooc(config, testLog).run().getOutputFileMap().keySet()));
+
+    // changing the public API of Base must recompile its sub class and all classes using Base or its sub class:
+    config.setSourceFiles(new ArrayList<File>());
+    config.addSourceFile(writeSource(sourceDir, "Base", "public class Base {\n  public function foo():Object { return 2; }\n  public function baz():void {}\n}"));
+    Set<File> recompiledSourceFiles = canonicalize(new Jooc(config, testLog).run().getOutputFileMap().keySet());
+    assertEquals(canonicalize(Arrays.asList(base, sub, user)), recompiledSourceFiles);
+    assertFalse(testLog.hasErrors());
+  }
+
+  @Test
+  public void testIncrementalCompilationAfterError() throws Exception {
+    File sourceDir = tmpFolder.newFolder("incremental-error-src");
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, sourceDir);
+    config.setSourcePath(sourcepath);
+    config.setApiOutputDirectory(null);
+    config.setDependencyCacheFile(new File(tmpFolder.getRoot(), "jooc-dependencies.txt"));
+    File base = writeSource(sourceDir, "Base", "public class Base {\n  public function foo():Object { return 1; }\n}");
+    File user = writeSource(sourceDir, "User", "public class User {\n  public function bar(base:Base):Object { return base.foo(); }\n}");
+    File other = writeSource(sourceDir, "Other", "public class Other {\n}");
+    for (File sourceFile : new File[]{base, user, other}) {
+      config.addSourceFile(sourceFile);
+    }
+    assertEquals(CompilationResult.RESULT_CODE_OK, new Jooc(config, testLog).run().getResultCode());
+
+    // changing the public API of Base together with an erroneous class fails before User is recompiled:
+    config.setSourceFiles(new ArrayList<File>());
+    config.addSourceFile(writeSource(sourceDir, "Base", "public class Base {\n  public function foo():Object { return 2; }\n  public function baz():void {}\n}"));
+    File broken = writeSource(sourceDir, "Broken", "public class Broken {\n  public var broken:UnknownType;\n}");
+    config.addSourceFile(broken);
+    assertEquals(CompilationResult.RESULT_CODE_COMPILATION_FAILED, new Jooc(config, testLog).run().getResultCode());
+
+    // after fixing the error, the next compilation must still recompile Base and its dependent User:
+    assertTrue(broken.delete());
+    testLog = new TestLog();
+    config.setSourceFiles(new ArrayList<File>());
+    config.addSourceFile(other);
+    CompilationResult result = new Jooc(config, testLog).run();
+    assertEquals(CompilationResult.RESULT_CODE_OK, result.getResultCode());
+    assertEquals(canonicalize(Arrays.asList(base, user, other)), canonicalize(result.getOutputFileMap().keySet()));
+    assertEquals(2, result.getMetrics().getRecompiledDependentUnitCount());
+    assertEquals(Collections.singleton(other.getCanonicalFile()),
+            canonicalize(new Jooc(config, testLog).run().getOutputFileMap().keySet()));
+  }
+
+  @Test
+  public void testWatchMode() throws Exception {
+    File sourceDir = tmpFolder.newFolder("watch-src");
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, sourceDir);
+    config.setSourcePath(sourcepath);
+    config.setApiOutputDirectory(null);
+    File base = writeSource(sourceDir, "Base", "public class Base {\n  public function foo():Object { return 1; }\n}");
+    File user = writeSource(sourceDir, "User", "public class User {\n  public function bar(base:Base):Object { return base.foo(); }\n}");
+    File other = writeSource(sourceDir, "Other", "public class Other {\n}");
+    for (File sourceFile : new File[]{base, user, other}) {
+      config.addSourceFile(sourceFile);
+    }
+    int daemonPort = config.getDaemonPort();
+    JoocWatcher watcher = new JoocWatcher(config, testLog);
+    assertEquals(3, watcher.compile().getOutputFileMap().size());
+    assertNull("nothing changed", watcher.compileChanges());
+
+    // changing the public API of Base must recompile Base and User, but not Other:
+    writeSource(sourceDir, "Base", "public class Base {\n  public function foo():Object { return 2; }\n  public function baz():void {}\n}");
+    assertTrue(base.setLastModified(base.lastModified() + 2000));
+    CompilationResult result = watcher.compileChanges();
+    assertNotNull(result);
+    assertEquals(canonicalize(Arrays.asList(base, user)), canonicalize(result.getOutputFileMap().keySet()));
+    assertNull("nothing changed", watcher.compileChanges());
+
+    // changing the implementation of User must reuse the declarations of the unchanged Base:
+    writeSource(sourceDir, "User", "public class User {\n  public function bar(base:Base):Object { return base.baz(); }\n}");
+    assertTrue(user.setLastModified(user.lastModified() + 2000));
+    result = watcher.compileChanges();
+    assertNotNull(result);
+    assertEquals(Collections.singleton(user.getCanonicalFile()), canonicalize(result.getOutputFileMap().keySet()));
+    assertTrue("Base is not parsed again", result.getMetrics().getCachedSourceUnitCount() > 0);
+    assertFalse(testLog.hasErrors());
+
+    // the watcher compiles a copy of the configuration:
+    assertEquals(canonicalize(Arrays.asList(base, user, other)), canonicalize(config.getSourceFiles()));
+    assertNull(config.getDependencyCacheFile());
+    assertEquals(daemonPort, config.getDaemonPort());
+  }
+
+  @Test
+  public void testInheritedMemberResolution() throws Exception {
+    File sourceDir = tmpFolder.newFolder("inheritance-src");
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, sourceDir);
+    config.setSourcePath(sourcepath);
+    config.setApiOutputDirectory(null);
+    config.addSourceFile(writeSource(sourceDir, "IBase", "public interface IBase {\n  function getLabel():String;\n}"));
+    config.addSourceFile(writeSource(sourceDir, "Base", "public class Base implements IBase {\n  public var count:int;\n" +
+            "  public function getLabel():String { return \"base\"; }\n}"));
+    config.addSourceFile(writeSource(sourceDir, "Sub", "public class Sub extends Base {\n" +
+            "  public function describe():String { return getLabel() + count; }\n}"));
+    config.addSourceFile(writeSource(sourceDir, "SubSub", "public class SubSub extends Sub {\n  public var label:String;\n" +
+            "  override public function getLabel():String { return label || describe(); }\n}"));
+    assertEquals(CompilationResult.RESULT_CODE_OK, jooc.run().getResultCode());
+    assertFalse(testLog.hasErrors());
+
+    String subCode = readFileToString(new File(outputFolder, "incremental/Sub.js"));
+    assertTrue(subCode.contains("this.getLabel()"));
+    assertTrue(subCode.contains("this.count"));
+    String subSubCode = readFileToString(new File(outputFolder, "incremental/SubSub.js"));
+    assertTrue(subSubCode.contains("this.label"));
+    assertTrue(subSubCode.contains("this.describe()"));
+  }
+
+  @Test
+  public void testStarImports() throws Exception {
+    File sourceDir = tmpFolder.newFolder("star-src");
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, sourceDir);
+    config.setSourcePath(sourcepath);
+    config.setApiOutputDirectory(null);
+    FileUtils.writeStringToFile(new File(sourceDir, "star1/A.as"), "package star1 {\npublic class A {\n}\n}\n");
+    FileUtils.writeStringToFile(new File(sourceDir, "star1/B.as"), "package star1 {\npublic class B {\n}\n}\n");
+    FileUtils.writeStringToFile(new File(sourceDir, "star2/B.as"), "package star2 {\npublic class B {\n}\n}\n");
+    File user = new File(sourceDir, "staruser/User.as");
+    FileUtils.writeStringToFile(user, "package staruser {\nimport star1.*;\nimport star2.*;\npublic class User {\n" +
+            "  public function foo():Object { return new A(); }\n}\n}\n");
+    config.addSourceFile(user);
+    assertEquals(CompilationResult.RESULT_CODE_OK, jooc.run().getResultCode());
+    assertFalse(testLog.hasErrors());
+    assertTrue(new File(outputFolder, "staruser/User.js").exists());
+    Set<String> packageIdes = jooc.getPackageIdeSet("star1");
+    assertEquals(new HashSet<String>(Arrays.asList("A", "B")), packageIdes);
+    assertSame(packageIdes, jooc.getPackageIdeSet("star1"));
+
+    // a class that is contained in two star-imported packages is still ambiguous:
+    FileUtils.writeStringToFile(user, "package staruser {\nimport star1.*;\nimport star2.*;\npublic class User {\n" +
+            "  public function foo():Object { return new B(); }\n}\n}\n");
+    assertEquals(CompilationResult.RESULT_CODE_COMPILATION_FAILED, new Jooc(config, testLog).run().getResultCode());
+  }
+
+  @Test
+  public void testClassPathUnitCache() throws Exception {
+    File jar = new File(tmpFolder.getRoot(), "lib.jar");
+    writeIndexedJar(jar, "cached", "Lib", "public class Lib {\n  public function foo():void {}\n}");
+    List<File> classPath = Collections.singletonList(jar);
+    config.setClassPath(classPath);
+    config.setApiOutputDirectory(null);
+    File sourceDir = tmpFolder.newFolder("cache-src");
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, sourceDir);
+    config.setSourcePath(sourcepath);
+    File sourceFile = new File(sourceDir, "usecache/User.as");
+    FileUtils.writeStringToFile(sourceFile, "package usecache {\nimport cached.Lib;\npublic class User {\n" +
+            "  public function bar(lib:Lib):void { lib.foo(); }\n}\n}\n");
+    config.addSourceFile(sourceFile);
+
+    ClassPathUnitCache classPathUnitCache = new ClassPathUnitCache(classPath);
+    jooc.setClassPathUnitCache(classPathUnitCache);
+    CompilationResult result = jooc.run();
+    assertEquals(CompilationResult.RESULT_CODE_OK, result.getResultCode());
+    assertEquals(0, result.getMetrics().getCachedClassPathUnitCount());
+    ApiDeclarationIndex cachedDeclarations = classPathUnitCache.get("cached.Lib");
+    assertNotNull(cachedDeclarations);
+    assertEquals(1, classPathUnitCache.size());
+    InputSource classPathInputSource = classPathUnitCache.getClassPathInputSource();
+    assertNotNull(classPathInputSource);
+    CompilationUnit firstUnit = jooc.getCompilationsUnit("cached.Lib");
+
+    // a second compilation must reuse the already opened class path and the read declarations,
+    // but create and scope its own compilation unit:
+    Jooc secondJooc = new Jooc(config, testLog);
+    secondJooc.setClassPathUnitCache(classPathUnitCache);
+    result = secondJooc.run();
+    assertEquals(CompilationResult.RESULT_CODE_OK, result.getResultCode());
+    assertEquals(1, result.getMetrics().getCachedClassPathUnitCount());
+    assertSame(classPathInputSource, classPathUnitCache.getClassPathInputSource());
+    assertSame(cachedDeclarations, classPathUnitCache.get("cached.Lib"));
+    CompilationUnit secondUnit = secondJooc.getCompilationsUnit("cached.Lib");
+    assertNotSame(firstUnit, secondUnit);
+    assertSame(jooc, firstUnit.getCompiler());
+    assertSame(secondJooc, secondUnit.getCompiler());
+    assertTrue(new File(outputFolder, "usecache/User.js").exists());
+
+    assertTrue(classPathUnitCache.isUpToDate(classPath));
+    writeJar(jar, "cached/Lib.as", "package cached {\npublic class Lib {\n  public function foo():void {}\n  public function baz():void {}\n}\n}\n");
+    assertFalse(classPathUnitCache.isUpToDate(classPath));
+  }
+
+  @Test
+  public void testClassPathUnitsKeepDeclarationsOnly() throws Exception {
+    File jar = new File(tmpFolder.getRoot(), "decl.jar");
+    writeJar(jar, "decl/Lib.as", "package decl {\npublic class Lib {\n" +
+            "  public function Lib() {\n    super();\n    count = 1;\n  }\n" +
+            "  public var count:int;\n" +
+            "  public function foo(x:int):String {\n    var y:int = x * count;\n    return String(y);\n  }\n}\n}\n");
+    List<File> classPath = Collections.singletonList(jar);
+    config.setClassPath(classPath);
+    config.setApiOutputDirectory(null);
+    File sourceDir = tmpFolder.newFolder("decl-src");
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, sourceDir);
+    config.setSourcePath(sourcepath);
+    File sourceFile = new File(sourceDir, "usedecl/User.as");
+    FileUtils.writeStringToFile(sourceFile, "package usedecl {\nimport decl.Lib;\npublic class User extends Lib {\n" +
+            "  public function User() {\n    super();\n  }\n" +
+            "  override public function foo(x:int):String { return super.foo(x + count); }\n}\n}\n");
+    config.addSourceFile(sourceFile);
+
+    ClassPathUnitCache classPathUnitCache = new ClassPathUnitCache(classPath);
+    jooc.setClassPathUnitCache(classPathUnitCache);
+    assertEquals(CompilationResult.RESULT_CODE_OK, jooc.run().getResultCode());
+    assertFalse(testLog.hasErrors());
+
+    // API stubs without an index are parsed, not cached:
+    assertEquals(0, classPathUnitCache.size());
+    ClassDeclaration libClass = (ClassDeclaration) jooc.getCompilationsUnit("decl.Lib").getPrimaryDeclaration();
+    assertNotNull(libClass.getMemberDeclaration("count"));
+    FunctionDeclaration foo = (FunctionDeclaration) libClass.getMemberDeclaration("foo");
+    assertTrue(foo.hasBody());
+    assertTrue(foo.getBody().getDirectives().isEmpty());
+    assertTrue(libClass.getConstructor().getBody().getDirectives().isEmpty());
+  }
+
+  @Test
+  public void testApiDeclarationIndex() throws Exception {
+    File libSourceDir = tmpFolder.newFolder("index-lib-src");
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, libSourceDir);
+    config.setSourcePath(sourcepath);
+    config.addSourceFile(writeSource(libSourceDir, "indexed", "Lib", "[Event(name=\"change\")]\npublic class Lib {\n" +
+            "  public static const ANSWER:int = -42;\n" +
+            "  public function Lib(name:String) {}\n" +
+            "  public function foo(x:int = 42, ...rest):String { return null; }\n" +
+            "  public function get bar():Lib { return null; }\n}"));
+    assertEquals(CompilationResult.RESULT_CODE_OK, jooc.run().getResultCode());
+    File apiStubFile = new File(apiOutputFolder, "indexed/Lib.as");
+    File indexFile = ApiDeclarationIndex.getIndexFile(apiStubFile);
+    assertEquals("Lib" + ApiDeclarationIndex.SUFFIX, indexFile.getName());
+    assertTrue("index must be written with the API stub", indexFile.exists());
+    byte[] apiStub = FileUtils.readFileToByteArray(apiStubFile);
+    byte[] index = FileUtils.readFileToByteArray(indexFile);
+
+    File jar = new File(tmpFolder.newFolder("index-jar"), "indexed.jar");
+    writeJar(jar, new String[]{"META-INF/joo-api/indexed/Lib.as", "META-INF/joo-api/indexed/Lib.asi"},
+            new byte[][]{apiStub, index});
+    ApiDeclarationIndex apiDeclarationIndex = readApiDeclarationIndex(jar, "indexed/Lib.as");
+    assertNotNull(apiDeclarationIndex);
+    CompilationUnit indexedUnit = apiDeclarationIndex.createCompilationUnit("indexed/Lib.as");
+    assertEquals("indexed", indexedUnit.getPackageDeclaration().getQualifiedNameStr());
+    assertNotNull(indexedUnit.getAnnotation("Event"));
+    ClassDeclaration libClass = (ClassDeclaration) indexedUnit.getPrimaryDeclaration();
+    assertEquals("Lib", libClass.getName());
+    assertEquals("indexed/Lib.as", libClass.getIde().getSymbol().getFileName());
+    List<Directive> members = libClass.getBody().getDirectives();
+    assertEquals(4, members.size());
+    VariableDeclaration answer = (VariableDeclaration) members.get(0);
+    assertTrue(answer.isConst());
+    assertTrue(answer.isStatic());
+    assertTrue(answer.getOptInitializer().getValue() instanceof PrefixOpExpr);
+    FunctionDeclaration constructor = (FunctionDeclaration) members.get(1);
+    assertFalse(constructor.isNative());
+    FunctionDeclaration foo = (FunctionDeclaration) members.get(2);
+    assertEquals("foo", foo.getName());
+    assertTrue(foo.isNative());
+    assertEquals(42L, ((LiteralExpr) foo.getParams().getHead().getOptInitializer().getValue()).getValue().getJooValue());
+    assertTrue(foo.getParams().getTail().getHead().isRest());
+    assertTrue(((FunctionDeclaration) members.get(3)).isGetter());
+
+    // a class imported from the jar is created from the index:
+    File sourceDir = tmpFolder.newFolder("index-src");
+    sourcepath.set(0, sourceDir);
+    config.setSourcePath(sourcepath);
+    config.setSourceFiles(new ArrayList<File>());
+    config.setApiOutputDirectory(null);
+    config.addSourceFile(writeSource(sourceDir, "useindex", "User", "import indexed.Lib;\npublic class User {\n" +
+            "  public function bar(lib:Lib):String { return lib.foo(Lib.ANSWER) + lib.bar.foo(); }\n}"));
+    config.setClassPath(Collections.singletonList(jar));
+    assertEquals(CompilationResult.RESULT_CODE_OK, new Jooc(config, testLog).run().getResultCode());
+
+    // an index that does not match the API stub must be ignored, so the stub with a syntax error is parsed:
+    byte[] changedApiStub = (new String(apiStub, "UTF-8") + "\n}").getBytes("UTF-8");
+    writeJar(jar, new String[]{"META-INF/joo-api/indexed/Lib.as", "META-INF/joo-api/indexed/Lib.asi"},
+            new byte[][]{changedApiStub, index});
+    assertNull(readApiDeclarationIndex(jar, "indexed/Lib.as"));
+    new Jooc(config, testLog).run();
+    assertTrue("the changed API stub must have been parsed", testLog.hasErrors());
+  }
+
+  private static ApiDeclarationIndex readApiDeclarationIndex(File jar, String path) throws Exception {
+    ZipFileInputSource zipFileInputSource = new ZipFileInputSource(jar, new String[]{"", JangarooParser.JOO_API_IN_JAR_DIRECTORY_PREFIX});
+    try {
+      return ApiDeclarationIndex.read((ZipEntryInputSource) zipFileInputSource.getChild(path));
+    } finally {
+      zipFileInputSource.close();
+    }
+  }
+
+  @Test
+  public void testTokenTextsAreShared() throws Exception {
+    String source = "package shared {\npublic class Shared {\n  public var value:int;\n}\n}\n";
+    File sourceFile = new File(tmpFolder.newFolder("shared-src"), "Shared.as");
+    List<JooSymbol> tokens1 = scan(source, sourceFile);
+    List<JooSymbol> tokens2 = scan(new String(source.toCharArray()), sourceFile);
+    assertEquals(tokens1.size(), tokens2.size());
+    for (int i = 0; i < tokens1.size(); i++) {
+      JooSymbol token1 = tokens1.get(i);
+      JooSymbol token2 = tokens2.get(i);
+      assertEquals(token1.getText(), token2.getText());
+      assertSame("token text must be shared: " + token1, token1.getText(), token2.getText());
+      assertSame("whitespace must be shared: " + token1, token1.getWhitespace(), token2.getWhitespace());
+      if (token1.sym == sym.IDE) {
+        assertSame(token1.getText(), token1.getJooValue());
+      }
+    }
+    String longText = new String(new char[TokenTexts.MAX_INTERNED_LENGTH + 1]).replace('\0', 'x');
+    assertEquals(longText, TokenTexts.intern(longText));
+  }
+
+  private static List<JooSymbol> scan(String source, File sourceFile) throws IOException {
+    Scanner scanner = new Scanner(new StringReader(source));
+    scanner.setInputSource(new FileInputSource(sourceFile, true));
+    List<JooSymbol> tokens = new ArrayList<JooSymbol>();
+    JooSymbol token;
+    do {
+      token = (JooSymbol) scanner.next_token();
+      tokens.add(token);
+    } while (token.sym != sym.EOF);
+    return tokens;
+  }
+
+  @Test
+  public void testSkipUnchangedOutput() throws Exception {
+    config.setSkipUnchangedOutput(true);
+    File destFile = compile("package1/ChainedConstants");
+    assertOutputEquals("package1/ChainedConstants", destFile);
+    long pastTime = System.currentTimeMillis() - 3600 * 1000L;
+    assertTrue(destFile.setLastModified(pastTime));
+    long lastModified = destFile.lastModified();
+
+    assertEquals(CompilationResult.RESULT_CODE_OK, new Jooc(config, testLog).run().getResultCode());
+    assertEquals("unchanged output must not be rewritten", lastModified, destFile.lastModified());
+
+    FileUtils.writeStringToFile(destFile, "outdated");
+    assertTrue(destFile.setLastModified(pastTime));
+    assertEquals(CompilationResult.RESULT_CODE_OK, new Jooc(config, testLog).run().getResultCode());
+    assertOutputEquals("package1/ChainedConstants", destFile);
+  }
+
+  @Test
+  public void testCompilationMetrics() throws Exception {
+    File metricsReportFile = new File(tmpFolder.newFolder("metrics"), "jooc-metrics.json");
+    config.setMetricsReportFile(metricsReportFile);
+    File sourceFile = getFile("/package1/ChainedConstants.as");
+    config.addSourceFile(sourceFile);
+    CompilationResult result = jooc.run();
+    assertEquals(CompilationResult.RESULT_CODE_OK, result.getResultCode());
+
+    CompilationMetrics metrics = result.getMetrics();
+    assertNotNull(metrics);
+    assertEquals(1, metrics.getCompiledUnitCount());
+    assertEquals(0, metrics.getCachedClassPathUnitCount());
+    assertTrue(metrics.getTotalTime() > 0);
+    for (String phase : Arrays.asList(CompilationMetrics.PHASE_READ, CompilationMetrics.PHASE_PARSE,
+            CompilationMetrics.PHASE_SCOPE, CompilationMetrics.PHASE_ANALYZE,
+            CompilationMetrics.PHASE_GENERATE_CODE, CompilationMetrics.PHASE_GENERATE_API, CompilationMetrics.PHASE_WRITE)) {
+      assertTrue("missing phase " + phase, metrics.getPhaseTimes().containsKey(phase));
+    }
+    assertTrue(metrics.getPeakHeapUsage() > 0);
+    assertTrue(metrics.getFileTimes().containsKey(sourceFile.getAbsolutePath()));
+
+    String report = FileUtils.readFileToString(metricsReportFile, "UTF-8");
+    assertTrue(report.contains("\"phaseTimesMillis\""));
+    assertTrue(report.contains("\"compiledUnits\": 1,"));
+  }
+
+  @Test
+  public void testZipFileInputSourceListing() throws Exception {
+    File jar = new File(tmpFolder.newFolder("listing-jar"), "listing.jar");
+    writeJar(jar, new String[]{"META-INF/joo-api/", "META-INF/joo-api/foo/", "META-INF/joo-api/foo/A.as",
+            "META-INF/joo-api/foo/bar/", "META-INF/joo-api/foo/bar/B.as", "foo/C.js"},
+            new byte[6][0]);
+    ZipFileInputSource zipFileInputSource = new ZipFileInputSource(jar, new String[]{"", JangarooParser.JOO_API_IN_JAR_DIRECTORY_PREFIX});
+    try {
+      assertEquals(Arrays.asList("foo"), getRelativePaths(zipFileInputSource.list()));
+      InputSource fooDir = zipFileInputSource.getChild("foo");
+      assertNotNull(fooDir);
+      assertEquals(Arrays.asList("foo/A.as", "foo/bar", "foo/C.js"), getRelativePaths(fooDir.list()));
+      assertEquals(Arrays.asList("foo/bar/B.as"), getRelativePaths(fooDir.getChild("bar").list()));
+      assertNull(zipFileInputSource.getChild("baz"));
+
+      PathInputSource pathInputSource = new PathInputSource("path", Collections.<InputSource>singletonList(zipFileInputSource), false);
+      InputSource compositeFooDir = pathInputSource.getChild("foo");
+      assertSame(compositeFooDir, pathInputSource.getChild("foo"));
+      assertEquals(3, compositeFooDir.list().size());
+    } finally {
+      zipFileInputSource.close();
+    }
+  }
+
+  @Test
+  public void testConcurrentClassPathOpening() throws Exception {
+    File jarDir = tmpFolder.newFolder("concurrent-jars");
+    List<File> classPath = new ArrayList<File>();
+    for (int i = 0; i < 8; i++) {
+      File jar = new File(jarDir, "lib" + i + ".jar");
+      writeJar(jar, new String[]{"concurrent/Shared.as", "concurrent/Lib" + i + ".as"},
+              new byte[][]{String.valueOf(i).getBytes("UTF-8"), new byte[0]});
+      classPath.add(jar);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      PathInputSource pathInputSource = PathInputSource.fromFiles(classPath, new String[]{""}, false, executor);
+      // jars must be looked up in class path order, regardless of which one has been opened first:
+      assertEquals("0", readFully(SourceReaders.createReader(pathInputSource.getChild("concurrent/Shared.as"))));
+      for (int i = 0; i < 8; i++) {
+        assertNotNull(pathInputSource.getChild("concurrent/Lib" + i + ".as"));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSourceReaders() throws Exception {
+    File sourceDir = tmpFolder.newFolder("reader-src");
+    File smallFile = new File(sourceDir, "Small.as");
+    FileUtils.writeStringToFile(smallFile, "\uFEFFvar s = '\u00e4\u20ac';", "UTF-8");
+    assertEquals("var s = '\u00e4\u20ac';", readFully(SourceReaders.createReader(new FileInputSource(smallFile, true))));
+
+    // large files exceed the initial read buffer:
+    StringBuilder largeSource = new StringBuilder("\uFEFF");
+    while (largeSource.length() < 100 * 1024) {
+      largeSource.append("// \u00fcber-long generated comment\n");
+    }
+    File largeFile = new File(sourceDir, "Large.as");
+    FileUtils.writeStringToFile(largeFile, largeSource.toString(), "UTF-8");
+    assertEquals(largeSource.substring(1), readFully(SourceReaders.createReader(new FileInputSource(largeFile, true))));
+    // reading must not keep the file open or locked:
+    assertTrue(largeFile.delete());
+
+    File jar = new File(tmpFolder.newFolder("reader-jar"), "reader.jar");
+    writeJar(jar, "reader/Entry.as", "\uFEFFpackage reader {}");
+    ZipFileInputSource zipFileInputSource = new ZipFileInputSource(jar, new String[]{""});
+    try {
+      assertEquals("package reader {}", readFully(SourceReaders.createReader(zipFileInputSource.getChild("reader/Entry.as"))));
+    } finally {
+      zipFileInputSource.close();
+    }
+  }
+
+  private static String readFully(Reader reader) throws IOException {
+    StringBuilder result = new StringBuilder();
+    char[] buffer = new char[1024];
+    int count;
+    while ((count = reader.read(buffer)) >= 0) {
+      result.append(buffer, 0, count);
+    }
+    return result.toString();
+  }
+
+  private static List<String> getRelativePaths(List<? extends InputSource> inputSources) {
+    List<String> relativePaths = new ArrayList<String>();
+    for (InputSource inputSource : inputSources) {
+      relativePaths.add(inputSource.getRelativePath());
+    }
+    return relativePaths;
+  }
+
+  private static void writeJar(File jar, String entryName, String content) throws IOException {
+    writeJar(jar, new String[]{entryName}, new byte[][]{content.getBytes("UTF-8")});
+  }
+
+  private static void writeJar(File jar, String[] entryNames, byte[][] contents) throws IOException {
+    ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(jar));
+    try {
+      for (int i = 0; i < entryNames.length; i++) {
+        zipOutputStream.putNextEntry(new ZipEntry(entryNames[i]));
+        zipOutputStream.write(contents[i]);
+        zipOutputStream.closeEntry();
+      }
+    } finally {
+      zipOutputStream.close();
+    }
+  }
+
+  /**
+   * Compile the given class and package its API stub and API declaration index into the given jar.
+   */
+  private void writeIndexedJar(File jar, String packageName, String className, String classCode) throws IOException {
+    File sourceDir = tmpFolder.newFolder(className + "-lib-src");
+    File libApiOutputFolder = tmpFolder.newFolder(className + "-lib-api");
+    JoocConfiguration libConfig = new JoocConfiguration(config);
+    List<File> sourcepath = new ArrayList<File>(config.getSourcePath());
+    sourcepath.add(0, sourceDir);
+    libConfig.setSourcePath(sourcepath);
+    libConfig.setSourceFiles(Collections.singletonList(writeSource(sourceDir, packageName, className, classCode)));
+    libConfig.setOutputDirectory(tmpFolder.newFolder(className + "-lib-output"));
+    libConfig.setApiOutputDirectory(libApiOutputFolder);
+    assertEquals(CompilationResult.RESULT_CODE_OK, new Jooc(libConfig, testLog).run().getResultCode());
+    String path = packageName.replace('.', '/') + "/" + className;
+    writeJar(jar, new String[]{"META-INF/joo-api/" + path + Jooc.AS_SUFFIX, "META-INF/joo-api/" + path + ApiDeclarationIndex.SUFFIX},
+            new byte[][]{
+                    FileUtils.readFileToByteArray(new File(libApiOutputFolder, path + Jooc.AS_SUFFIX)),
+                    FileUtils.readFileToByteArray(new File(libApiOutputFolder, path + ApiDeclarationIndex.SUFFIX))
+            });
+  }
+
+  private static Set<File> canonicalize(Collection<File> files) throws IOException {
+    Set<File> canonicalFiles = new HashSet<File>();
+    for (File file : files) {
+      canonicalFiles.add(file.getCanonicalFile());
+    }
+    return canonicalFiles;
+  }
+
+  private static File writeSource(File sourceDir, String className, String classCode) throws IOException {
+    return writeSource(sourceDir, "incremental", className, classCode);
+  }
+
+  private static File writeSource(File sourceDir, String packageName, String className, String classCode) throws IOException {
+    File sourceFile = new File(sourceDir, packageName.replace('.', '/') + "/" + className + ".as");
+    FileUtils.writeStringToFile(sourceFile, "package " + packageName + " {\n" + classCode + "\n}\n");
+    return sourceFile;
+  }
+
   private void assertApiCompilationResult(String path) throws URISyntaxException, IOException {
     assertApiCompilationResult(path, "");
   }
@@ -243,6 +1140,10 @@ public class JoocTest {
 
   private void assertCompilationResult(String relativeClassFileName) throws URISyntaxException, IOException {
     File destFile = compile(relativeClassFileName);
+    assertOutputEquals(relativeClassFileName, destFile);
+  }
+
+  private void assertOutputEquals(String relativeClassFileName, File destFile) throws URISyntaxException, IOException {
     assertTrue("the output file " + destFile + " should exist, but doesn't", destFile.exists());
 
     String result = readFileToString(destFile);
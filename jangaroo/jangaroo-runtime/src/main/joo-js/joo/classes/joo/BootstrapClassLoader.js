@@ -142,13 +142,30 @@
           var memberDeclaration = members[i];
           switch (typeof memberDeclaration) {
             case "function": staticInitializers.push(memberDeclaration); break;
+            case "number":
             case "string":
-              var isStatic = memberDeclaration.match(/\bstatic\b/);
-              var isPrivate = memberDeclaration.match(/\bprivate\b/);
+              var isStatic, isPrivate, methodName = null;
+              if (typeof memberDeclaration == "number") {
+                // compact member flags, see joo.MemberDeclaration.FLAG_*:
+                // namespace mask 3 (private: 1), static 4, native 16, var 64, const 128
+                if (memberDeclaration & 16) {
+                  ++i; // skip member name, native members have no definition
+                  break;
+                }
+                isStatic = memberDeclaration & 4;
+                isPrivate = (memberDeclaration & 3) === 1;
+                if (!(memberDeclaration & (64 | 128))) {
+                  // a compact method declaration is followed by the method name:
+                  methodName = members[++i];
+                }
+              } else {
+                isStatic = memberDeclaration.match(/\bstatic\b/);
+                isPrivate = memberDeclaration.match(/\bprivate\b/);
+              }
               var target = isStatic ? isPrivate ? privateStatics : constructor : prototype;
               var member = members[++i];
               if (typeof member == "function") {
-                var methodName = memberDeclaration.match(/function\s+([a-zA-Z$_0-9]+)/)[1];
+                methodName = methodName || memberDeclaration.match(/function\s+([a-zA-Z$_0-9]+)/)[1];
                 if (methodName == className) { // found constructor!
                   // add collected public static members to the real constructor
                   copyFromTo(constructor, member);
@@ -33,6 +33,9 @@ joo.resolveUrl = function resolveUrl(url/*:String*/) {
 joo.loadScript = function loadScript(standardSrc/*:String*/, debugSrc/*:String = undefined*/) {
   var url = arguments.length > 1 && joo.debug ? debugSrc : standardSrc;
   if (url) {
+    if (typeof joo.scriptManifest === "object" && joo.scriptManifest.hasOwnProperty(url)) {
+      url = joo.scriptManifest[url];
+    }
     joo._loadScript(joo.resolveUrl(url));
   }
 };
@@ -222,8 +222,12 @@ public class JooClassDeclaration extends NativeClassDeclaration {
         case "function":
           this.staticInitializers.push(item);
           break;
+        case "number":
         case "string":
-          var memberDeclaration:MemberDeclaration = MemberDeclaration.create(item);
+          // a compact member declaration is followed by the member name, except for fields:
+          var memberDeclaration:MemberDeclaration = typeof item === "number"
+            ? MemberDeclaration.createFromFlags(item, item & (MemberDeclaration.FLAG_VAR | MemberDeclaration.FLAG_CONST) ? null : memberDeclarations[++i])
+            : MemberDeclaration.create(item);
           if (memberDeclaration) {
             memberDeclaration.metadata = metadata;
             metadata = {};
@@ -38,10 +38,27 @@ public class MemberDeclaration {
           OVERRIDE : String = "override",
           VIRTUAL : String = "virtual";
 
+  /**
+   * Bit flags of compact member declarations, as generated by the compiler instead of modifier strings.
+   * The two lowest bits encode the namespace, the member type is encoded by FLAG_VAR or FLAG_CONST, with
+   * no flag meaning "function".
+   */
+  public static const
+          FLAG_NAMESPACE_MASK : int = 3,
+          FLAG_STATIC : int = 4,
+          FLAG_FINAL : int = 8,
+          FLAG_NATIVE : int = 16,
+          FLAG_OVERRIDE : int = 32,
+          FLAG_VAR : int = 64,
+          FLAG_CONST : int = 128,
+          FLAG_GET : int = 256,
+          FLAG_SET : int = 512;
+
   private static var SUPPORTS_GETTERS_SETTERS : Boolean;
   private static var SUPPORTS_PROPERTIES : Boolean;
   private static var DEFINE_METHOD : Object;
   private static var LOOKUP_METHOD : Object;
+  private static var NAMESPACES_BY_FLAG : Array;
 
 {
   // no static initializers in system classes, use static block:
@@ -63,6 +80,7 @@ public class MemberDeclaration {
     "get": "__lookupGetter__",
     "set": "__lookupSetter__"
   };
+  NAMESPACES_BY_FLAG = [NAMESPACE_INTERNAL, NAMESPACE_PRIVATE, NAMESPACE_PROTECTED, NAMESPACE_PUBLIC];
 }
 
   public static function create(memberDeclarationStr : String) : MemberDeclaration {
@@ -72,6 +90,29 @@ public class MemberDeclaration {
            : new MemberDeclaration(tokens);
   }
 
+  /**
+   * Create a member declaration from its compact form, avoiding to parse a modifier string.
+   * @param flags the bit flags of the member declaration, see FLAG_*
+   * @param memberName the name of the member, or null for fields, whose names are given by their values
+   * @return the member declaration
+   */
+  public static function createFromFlags(flags : int, memberName : String) : MemberDeclaration {
+    var memberDeclaration : MemberDeclaration = new MemberDeclaration(null);
+    memberDeclaration._namespace = NAMESPACES_BY_FLAG[flags & FLAG_NAMESPACE_MASK];
+    memberDeclaration._static = (flags & FLAG_STATIC) !== 0;
+    memberDeclaration._final = (flags & FLAG_FINAL) !== 0;
+    memberDeclaration._native = (flags & FLAG_NATIVE) !== 0;
+    memberDeclaration._override = (flags & FLAG_OVERRIDE) !== 0;
+    memberDeclaration.memberType = flags & FLAG_VAR ? MEMBER_TYPE_VAR
+            : flags & FLAG_CONST ? MEMBER_TYPE_CONST
+            : MEMBER_TYPE_FUNCTION;
+    if (flags & (FLAG_GET | FLAG_SET)) {
+      memberDeclaration.getterOrSetter = flags & FLAG_GET ? METHOD_TYPE_GET : METHOD_TYPE_SET;
+    }
+    memberDeclaration.memberName = memberName;
+    return memberDeclaration;
+  }
+
   internal var
           _namespace : String = NAMESPACE_INTERNAL,
           _static : Boolean = false,
@@ -91,6 +132,9 @@ public class MemberDeclaration {
   public var metadata : Object = {};
 
   public function MemberDeclaration(tokens : Array) {
+    if (!tokens) {
+      return; // compact member declaration, see createFromFlags()
+    }
     for (var j:int=0; j<tokens.length; ++j) {
       var token : String = tokens[j];
       if (!this.memberType) {
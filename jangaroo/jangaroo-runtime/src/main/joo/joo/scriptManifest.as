@@ -0,0 +1,31 @@
+/*
+ * Copyright 2009 CoreMedia AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 
+ *
+ * Unless required by applicable law or agreed to in writing, 
+ * software distributed under the License is distributed on an "AS
+ * IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either 
+ * express or implied. See the License for the specific language 
+ * governing permissions and limitations under the License.
+ */
+package joo {
+
+/**
+ * Maps the URLs of scripts, relative to <code>joo.baseUrl</code>, to the URLs of copies of these scripts
+ * whose names contain a hash of their content, so that these copies can be cached forever.
+ * <code>joo.loadScript()</code> and <code>joo.loadModule()</code> load the copy instead of a script
+ * found in this map.
+ * <p>When the Jangaroo Maven plugin is configured to hash script names, jangaroo-application.js starts
+ * by setting this manifest.</p>
+ *
+ * @see joo.loadScript
+ * @see joo.loadModule
+ */
+[Native]
+public var scriptManifest:Object;
+
+}